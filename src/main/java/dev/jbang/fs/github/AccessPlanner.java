@@ -0,0 +1,196 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Decides how the data an operation needs is fetched: path by path from the
+ * {@code /contents} endpoint, by loading the whole tree with one recursive
+ * request, or, to read many files, as one archive. The estimate is based on
+ * what is known at that point: how many per-path requests the filesystem
+ * already needed, the entry counts of listed directories, the size of the
+ * tree and the remaining rate limit budget. Decisions are logged at FINE
+ * level under this class' name and can be forced per operation with the
+ * {@code statStrategy}, {@code walkStrategy} and {@code readStrategy} env
+ * keys.
+ */
+class AccessPlanner {
+
+	private static final Logger LOGGER = Logger.getLogger(AccessPlanner.class.getName());
+
+	/**
+	 * Per-path requests after which loading the tree (about two requests,
+	 * when it isn't truncated) is expected to pay off for the rest of the
+	 * filesystem's life.
+	 */
+	static final int TREE_AFTER_REQUESTS = 20;
+
+	/**
+	 * Remaining rate limit below which every request counts, and the tree is
+	 * loaded rather than spending the budget path by path.
+	 */
+	static final long LOW_BUDGET = 100;
+
+	enum Operation {
+		/** Existence, type and size of single paths, and directory listings. */
+		STAT,
+		/** Everything below a directory. */
+		WALK,
+		/** The content of many files at once. */
+		READ
+	}
+
+	enum Strategy {
+		CONTENTS,
+		TREE,
+		ARCHIVE;
+
+		/**
+		 * Parses an env value, null for "auto".
+		 */
+		@Nullable
+		static Strategy parse(String key, String value) {
+			if (value.equalsIgnoreCase("auto")) {
+				return null;
+			}
+			try {
+				return valueOf(value.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid " + key + ": " + value);
+			}
+		}
+	}
+
+	private final RateLimit rateLimit;
+
+	AccessPlanner(RateLimit rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	/**
+	 * Plans a stat or a listing that the caches can't answer while the tree
+	 * index isn't loaded: {@link Strategy#CONTENTS} or {@link Strategy#TREE}.
+	 * The tree is only loaded for a single path while it is expected to come
+	 * back in one recursive request, a truncated one is fetched path by path.
+	 */
+	Strategy planStat(GitHubFileSystem fs, GitHubPath path) {
+		Strategy forced = fs.getStrategy(Operation.STAT);
+		if (forced != null) {
+			return log(fs, Operation.STAT, path, forced, "forced");
+		}
+		if (!fs.isTreeLoadableAtOnce()) {
+			// Too common to log at FINE
+			return Strategy.CONTENTS;
+		}
+		long remaining = rateLimit.getRemaining();
+		if (remaining >= 0 && remaining < LOW_BUDGET) {
+			return log(fs, Operation.STAT, path, Strategy.TREE, remaining + " requests left");
+		}
+		int requests = fs.getContentsRequests();
+		if (requests >= TREE_AFTER_REQUESTS) {
+			return log(fs, Operation.STAT, path, Strategy.TREE, requests + " per-path requests so far");
+		}
+		// Too common to log at FINE
+		return Strategy.CONTENTS;
+	}
+
+	/**
+	 * Plans a walk while the tree index isn't loaded. A walk lists every
+	 * directory below the path, one request each, so the tree pays off for
+	 * the whole repository and for subtrees known to have many directories.
+	 * Below a subdirectory of unknown size the rest of a big repository
+	 * isn't worth fetching, it is walked directory by directory.
+	 */
+	Strategy planWalk(GitHubFileSystem fs, GitHubPath path) {
+		Strategy forced = fs.getStrategy(Operation.WALK);
+		if (forced != null) {
+			return log(fs, Operation.WALK, path, forced, "forced");
+		}
+		GitHubPath absPath = (GitHubPath) path.toAbsolutePath();
+		ContentInfo info = fs.getContentInfoCache().get(absPath.getPathString());
+		int subdirectories = info == null || info.getChildren() == null ? -1 : subdirectories(fs, absPath, info);
+		if (info != null && (!info.isDirectory() || subdirectories == 0)) {
+			return log(fs, Operation.WALK, path, Strategy.CONTENTS, "no subdirectories");
+		}
+		if (!fs.isTreeLoadableAtOnce()) {
+			return log(fs, Operation.WALK, path, Strategy.CONTENTS, "tree not loadable at once");
+		}
+		if (absPath.getNameCount() == 0) {
+			return log(fs, Operation.WALK, path, Strategy.TREE, "whole tree");
+		}
+		long remaining = rateLimit.getRemaining();
+		if (remaining >= 0 && remaining < LOW_BUDGET) {
+			return log(fs, Operation.WALK, path, Strategy.TREE, remaining + " requests left");
+		}
+		int requests = fs.getContentsRequests() + Math.max(0, subdirectories);
+		if (requests >= TREE_AFTER_REQUESTS) {
+			return log(fs, Operation.WALK, path, Strategy.TREE,
+					requests + " per-path requests with the known subdirectories");
+		}
+		return log(fs, Operation.WALK, path, Strategy.CONTENTS,
+				subdirectories < 0 ? "subtree size unknown" : subdirectories + " subdirectories");
+	}
+
+	/**
+	 * Counts the children of a listed directory that are or may be
+	 * directories, each of them at least one more request for a walk.
+	 */
+	private static int subdirectories(GitHubFileSystem fs, GitHubPath dir, ContentInfo info) {
+		int count = 0;
+		for (String name : info.getChildren()) {
+			String childPath = ((GitHubPath) dir.resolve(name)).getPathString();
+			ContentInfo child = fs.getContentInfoCache().get(childPath);
+			if ((child == null || child.isDirectory()) && fs.getPathFilter().accepts(childPath, true)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Plans reading the given files of a tree: {@link Strategy#CONTENTS} to
+	 * download each file, {@link Strategy#ARCHIVE} for one archive of the
+	 * whole commit. The archive costs one request but holds the whole tree,
+	 * so it is only worth it for many files that make up a good part of it.
+	 * With include or exclude patterns it also holds what the filesystem
+	 * leaves out, of unknown size, so files are downloaded one by one.
+	 *
+	 * @param archiveThreshold the fewest files worth an archive
+	 */
+	Strategy planRead(GitHubFileSystem fs, GitHubPath path, GitHubTreeIndex index, int files, long bytes,
+			int archiveThreshold) throws IOException {
+		Strategy forced = fs.getStrategy(Operation.READ);
+		if (forced != null) {
+			return log(fs, Operation.READ, path, forced, "forced");
+		}
+		if (files < archiveThreshold) {
+			return log(fs, Operation.READ, path, Strategy.CONTENTS, files + " files");
+		}
+		if (!fs.getPathFilter().isEmpty()) {
+			return log(fs, Operation.READ, path, Strategy.CONTENTS, "filtered by " + fs.getPathFilter());
+		}
+		long totalBytes = totalSize(index, index.getRootTreeSha());
+		String reason = files + " files, " + bytes + " of " + totalBytes + " bytes";
+		return log(fs, Operation.READ, path, bytes * 4 >= totalBytes ? Strategy.ARCHIVE : Strategy.CONTENTS, reason);
+	}
+
+	private static long totalSize(GitHubTreeIndex index, String treeSha) throws IOException {
+		long size = 0;
+		for (GitTreeEntry entry : index.getStore().get(treeSha).getEntries()) {
+			size += entry.isTree() ? totalSize(index, entry.getSha()) : Math.max(0, entry.getSize());
+		}
+		return size;
+	}
+
+	private static Strategy log(GitHubFileSystem fs, Operation operation, GitHubPath path, Strategy strategy,
+			String reason) {
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine(String.format("%s %s %s: %s (%s)", fs.getRepoInfo(), operation, path, strategy, reason));
+		}
+		return strategy;
+	}
+}
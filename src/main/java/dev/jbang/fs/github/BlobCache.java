@@ -0,0 +1,134 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Content addressed on-disk cache of git blobs. Files are stored by their
+ * blob SHA, so an entry never becomes stale and can be shared by all
+ * filesystems and refs.
+ */
+class BlobCache {
+
+	/**
+	 * System property to override the cache directory.
+	 */
+	static final String CACHE_DIR_PROPERTY = "github.fs.cacheDir";
+
+	private final Path blobsDir;
+
+	BlobCache(Path cacheDir) {
+		this.blobsDir = cacheDir.resolve("blobs");
+	}
+
+	static Path defaultCacheDir() {
+		String dir = System.getProperty(CACHE_DIR_PROPERTY);
+		if (dir != null) {
+			return Paths.get(dir);
+		}
+		return Paths.get(System.getProperty("java.io.tmpdir"), "github-fs-cache");
+	}
+
+	/**
+	 * Returns the cached file for the blob, or null if it isn't cached.
+	 */
+	@Nullable
+	Path get(String sha) {
+		Path file = fileFor(sha);
+		return Files.isRegularFile(file) ? file : null;
+	}
+
+	/**
+	 * Moves a downloaded file into the cache and returns its new location.
+	 */
+	Path put(String sha, Path downloaded) throws IOException {
+		Path file = fileFor(sha);
+		Files.createDirectories(file.getParent());
+		try {
+			Files.move(downloaded, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			// Different file stores, copy next to the target first so it appears atomically
+			Path tmp = Files.createTempFile(file.getParent(), sha, ".tmp");
+			Files.copy(downloaded, tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(downloaded);
+		}
+		return file;
+	}
+
+	/**
+	 * Stores content that is already in memory and returns its location.
+	 */
+	Path putContent(String sha, byte[] content) throws IOException {
+		Path file = fileFor(sha);
+		if (Files.isRegularFile(file)) {
+			return file;
+		}
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), sha, ".tmp");
+		Files.write(tmp, content);
+		return put(sha, tmp);
+	}
+
+	/**
+	 * Computes the git blob SHA of a local file, the same way
+	 * {@code git hash-object} does.
+	 */
+	static String computeBlobSha(Path file) throws IOException {
+		MessageDigest digest = sha1();
+		digest.update(("blob " + Files.size(file) + "\0").getBytes(StandardCharsets.US_ASCII));
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Returns the hex SHA-1 of some bytes, e.g. to derive a file name.
+	 */
+	static String sha1Hex(byte[] bytes) {
+		return hex(sha1().digest(bytes));
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+	}
+
+	private static String hex(byte[] digest) {
+		StringBuilder sha = new StringBuilder();
+		for (byte b : digest) {
+			sha.append(String.format("%02x", b));
+		}
+		return sha.toString();
+	}
+
+	/**
+	 * Returns where a download of the blob in progress is kept until it is
+	 * complete.
+	 */
+	Path partFileFor(String sha) {
+		return fileFor(sha).resolveSibling(sha + ".part");
+	}
+
+	Path fileFor(String sha) {
+		return blobsDir.resolve(sha.substring(0, 2)).resolve(sha);
+	}
+}
@@ -0,0 +1,204 @@
+package dev.jbang.fs.github;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a large blob as byte ranges over several connections at once.
+ * The ranges are written at their offsets into a preallocated partial file
+ * next to the cache entry, and every completed range is recorded in a
+ * checkpoint file, so a download that was interrupted (even by a restart)
+ * only fetches the missing ranges the next time. The result is checked
+ * against the blob SHA before it is handed out.
+ */
+class ChunkedDownload {
+
+	/**
+	 * Thrown when a server answers a range request with something other
+	 * than the requested range, the caller should download in one go.
+	 */
+	static class RangesNotSupportedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		RangesNotSupportedException(String url, int status) {
+			super("Range request not supported by " + url + " (HTTP " + status + ")");
+		}
+	}
+
+	private final ResilientHttpClient httpClient;
+	private final List<String> urls;
+	private final String sha;
+	private final long size;
+	private final int chunkSize;
+	private final int connections;
+
+	ChunkedDownload(ResilientHttpClient httpClient, List<String> urls, String sha, long size, int chunkSize,
+			int connections) {
+		this.httpClient = httpClient;
+		this.urls = urls;
+		this.sha = sha;
+		this.size = size;
+		this.chunkSize = chunkSize;
+		this.connections = connections;
+	}
+
+	/**
+	 * Downloads the blob into the given partial file, resuming from its
+	 * checkpoint if there is one, and returns it once it is complete and
+	 * verified.
+	 */
+	Path download(Path partFile) throws IOException {
+		Path checkpoint = checkpointFor(partFile);
+		int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+		String header = size + " " + chunkSize;
+		BitSet done = readCheckpoint(partFile, checkpoint, header);
+
+		Files.createDirectories(partFile.getParent());
+		try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw");
+				FileChannel log = FileChannel.open(checkpoint, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.APPEND)) {
+			file.setLength(size);
+			if (log.size() == 0) {
+				log.write(ByteBuffer.wrap((header + "\n").getBytes(StandardCharsets.US_ASCII)));
+			}
+			fetchMissing(file.getChannel(), log, chunks, done);
+		} catch (RangesNotSupportedException e) {
+			// The caller downloads it in one go, nothing would ever resume this
+			discard(partFile);
+			throw e;
+		}
+
+		if (!sha.equals(BlobCache.computeBlobSha(partFile))) {
+			// Start over next time, something handed out the wrong bytes
+			discard(partFile);
+			throw new IOException("Downloaded content doesn't match blob " + sha);
+		}
+		Files.deleteIfExists(checkpoint);
+		return partFile;
+	}
+
+	/**
+	 * Deletes a partial file and its checkpoint.
+	 */
+	static void discard(Path partFile) throws IOException {
+		Files.deleteIfExists(partFile);
+		Files.deleteIfExists(checkpointFor(partFile));
+	}
+
+	private static Path checkpointFor(Path partFile) {
+		return partFile.resolveSibling(partFile.getFileName() + ".done");
+	}
+
+	@SuppressWarnings("try")
+	private void fetchMissing(FileChannel channel, FileChannel log, int chunks, BitSet done) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(connections, chunks)), r -> {
+			Thread t = new Thread(r, "github-fs-download-" + sha.substring(0, 7));
+			t.setDaemon(true);
+			return t;
+		});
+		// The workers download on behalf of the caller, with its priority
+		RequestContext context = RequestContext.current();
+		try {
+			List<Future<Void>> pending = new ArrayList<>();
+			for (int chunk = done.nextClearBit(0); chunk < chunks; chunk = done.nextClearBit(chunk + 1)) {
+				int index = chunk;
+				pending.add(executor.submit(() -> {
+					try (RequestContext.Scope scope = context.enter()) {
+						fetchChunk(channel, log, index);
+					}
+					return null;
+				}));
+			}
+			for (Future<Void> future : pending) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException("Download of blob " + sha + " failed", cause);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while downloading blob " + sha);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void fetchChunk(FileChannel channel, FileChannel log, int index) throws IOException {
+		long start = (long) index * chunkSize;
+		long end = Math.min(size, start + chunkSize) - 1;
+		byte[] content = httpClient.firstAvailable(urls, url -> fetchRange(url, start, end));
+		ByteBuffer buffer = ByteBuffer.wrap(content);
+		long position = start;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		// Only record the chunk once its bytes are on disk
+		channel.force(false);
+		synchronized (log) {
+			log.write(ByteBuffer.wrap((index + "\n").getBytes(StandardCharsets.US_ASCII)));
+		}
+	}
+
+	private byte[] fetchRange(String url, long start, long end) throws IOException {
+		HttpResponse response = httpClient.send(HttpRequest.get(url).header("Range", "bytes=" + start + "-" + end));
+		if (response.getStatusCode() == 404) {
+			throw new FileNotFoundException("Resource not found: " + url);
+		}
+		if (!response.isSuccessful()) {
+			throw new HttpStatusException(response.getStatusCode(), url);
+		}
+		String contentRange = response.header("Content-Range");
+		if (response.getStatusCode() != 206 || contentRange == null
+				|| !contentRange.startsWith("bytes " + start + "-" + end + "/")
+				|| response.getBody().length != end - start + 1) {
+			throw new RangesNotSupportedException(url, response.getStatusCode());
+		}
+		return response.getBody();
+	}
+
+	/**
+	 * Returns the chunks a previous attempt completed, or nothing if there
+	 * is no usable checkpoint.
+	 */
+	private static BitSet readCheckpoint(Path partFile, Path checkpoint, String header) throws IOException {
+		BitSet done = new BitSet();
+		if (!Files.isRegularFile(partFile) || !Files.isRegularFile(checkpoint)) {
+			Files.deleteIfExists(checkpoint);
+			return done;
+		}
+		List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.US_ASCII);
+		if (lines.isEmpty() || !lines.get(0).equals(header)) {
+			// Written for another size or chunk size, can't be trusted
+			Files.deleteIfExists(checkpoint);
+			return done;
+		}
+		for (String line : lines.subList(1, lines.size())) {
+			try {
+				done.set(Integer.parseInt(line.trim()));
+			} catch (NumberFormatException e) {
+				// A torn write of the last line, that chunk is fetched again
+			}
+		}
+		return done;
+	}
+}
@@ -0,0 +1,69 @@
+package dev.jbang.fs.github;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails fast when an endpoint is down. After a number of consecutive
+ * failures the breaker opens and rejects requests for a while, then lets a
+ * single probe through: if it succeeds the breaker closes again, otherwise
+ * it stays open for twice as long.
+ */
+class CircuitBreaker {
+
+	private final int failureThreshold;
+	private final long minOpenNanos;
+	private final long maxOpenNanos;
+
+	// Guarded by "this"
+	private int failures;
+	private long openNanos;
+	private long openUntil;
+	private boolean open;
+	private boolean probing;
+
+	CircuitBreaker(int failureThreshold, long minOpenMillis, long maxOpenMillis) {
+		this.failureThreshold = failureThreshold;
+		this.minOpenNanos = TimeUnit.MILLISECONDS.toNanos(minOpenMillis);
+		this.maxOpenNanos = TimeUnit.MILLISECONDS.toNanos(maxOpenMillis);
+		this.openNanos = minOpenNanos;
+	}
+
+	/**
+	 * Whether a request may be sent now. When this returns true the caller
+	 * must report the outcome with {@link #recordSuccess()} or
+	 * {@link #recordFailure()}.
+	 */
+	synchronized boolean allowRequest() {
+		if (!open) {
+			return true;
+		}
+		if (!probing && System.nanoTime() - openUntil >= 0) {
+			probing = true;
+			return true;
+		}
+		return false;
+	}
+
+	synchronized void recordSuccess() {
+		failures = 0;
+		open = false;
+		probing = false;
+		openNanos = minOpenNanos;
+	}
+
+	synchronized void recordFailure() {
+		failures++;
+		if (probing) {
+			probing = false;
+			openNanos = Math.min(maxOpenNanos, openNanos * 2);
+			openUntil = System.nanoTime() + openNanos;
+		} else if (!open && failures >= failureThreshold) {
+			open = true;
+			openUntil = System.nanoTime() + openNanos;
+		}
+	}
+
+	synchronized boolean isOpen() {
+		return open;
+	}
+}
@@ -0,0 +1,237 @@
+package dev.jbang.fs.github;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Adaptive limit on the number of concurrent requests, using additive
+ * increase / multiplicative decrease. Every successful request grows the
+ * limit by about one per round trip, while throttling responses, connection
+ * errors and latency rising well above the observed baseline shrink it.
+ * This keeps the request rate close to what the network and GitHub's
+ * secondary rate limits allow without configuring fixed thread counts.
+ * <p>
+ * Requests waiting for a slot are queued per {@link RequestPriority} and,
+ * within a priority, per owner. Free slots go to the highest priority class
+ * first and round-robin across the owners of that class, skipping owners
+ * that already use their full quota. Background requests never take the
+ * last free slot, so an interactive request doesn't have to wait for a bulk
+ * job's request to finish.
+ */
+class ConcurrencyLimiter {
+
+	enum Outcome {
+		/** The request completed normally, its latency is a valid sample. */
+		SUCCESS,
+		/** The request completed but its latency says nothing about congestion (e.g. a large download). */
+		IGNORED,
+		/** The server throttled the request or the connection failed. */
+		DROPPED
+	}
+
+	/** A slot handed out by {@link #acquire}, to be given back to {@link #release}. */
+	static final class Permit {
+		private final Object owner;
+		private final int quota;
+		private boolean granted;
+
+		private Permit(Object owner, int quota) {
+			this.owner = owner;
+			this.quota = quota;
+		}
+	}
+
+	private static final Object SHARED_OWNER = new Object();
+
+	private static final double BACKOFF_RATIO = 0.5;
+	private static final double LATENCY_BACKOFF_RATIO = 0.9;
+	private static final double LATENCY_TOLERANCE = 4.0;
+	private static final long MIN_CONGESTION_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	// Guarded by "lock"
+	private double limit;
+	private int inFlight;
+	private long baselineNanos = Long.MAX_VALUE;
+	private long lastDecreaseNanos;
+	private final Map<RequestPriority, LinkedHashMap<Object, ArrayDeque<Permit>>> waiting = new EnumMap<>(
+			RequestPriority.class);
+	private final Map<Object, Integer> inFlightByOwner = new HashMap<>();
+
+	ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		for (RequestPriority priority : RequestPriority.values()) {
+			waiting.put(priority, new LinkedHashMap<>());
+		}
+	}
+
+	/**
+	 * Waits until a request on behalf of the given context may be started.
+	 */
+	Permit acquire(RequestContext context) throws InterruptedIOException {
+		Object owner = context.getOwner() != null ? context.getOwner() : SHARED_OWNER;
+		Permit permit = new Permit(owner, context.getQuota());
+		lock.lock();
+		try {
+			waiting.get(context.getPriority()).computeIfAbsent(owner, o -> new ArrayDeque<>()).add(permit);
+			dispatch();
+			while (!permit.granted) {
+				available.await();
+			}
+			return permit;
+		} catch (InterruptedException e) {
+			if (permit.granted) {
+				returnSlot(permit);
+			} else {
+				Map<Object, ArrayDeque<Permit>> queues = waiting.get(context.getPriority());
+				ArrayDeque<Permit> queue = queues.get(owner);
+				queue.remove(permit);
+				if (queue.isEmpty()) {
+					queues.remove(owner);
+				}
+			}
+			dispatch();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a request slot");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Releases the slot taken by {@link #acquire} and adjusts the limit
+	 * based on how the request went.
+	 */
+	void release(Permit permit, Outcome outcome, long latencyNanos) {
+		lock.lock();
+		try {
+			returnSlot(permit);
+			long now = System.nanoTime();
+			switch (outcome) {
+			case DROPPED:
+				decrease(now, BACKOFF_RATIO);
+				break;
+			case SUCCESS:
+				if (latencyNanos < baselineNanos) {
+					baselineNanos = latencyNanos;
+				} else {
+					// Let the baseline drift up slowly so a route change doesn't pin us low forever
+					baselineNanos += (latencyNanos - baselineNanos) / 100;
+				}
+				if (latencyNanos > baselineNanos * LATENCY_TOLERANCE
+						&& latencyNanos - baselineNanos > MIN_CONGESTION_NANOS) {
+					decrease(now, LATENCY_BACKOFF_RATIO);
+				} else {
+					increase();
+				}
+				break;
+			default:
+				increase();
+				break;
+			}
+			dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void returnSlot(Permit permit) {
+		inFlight--;
+		int owned = inFlightByOwner.get(permit.owner) - 1;
+		if (owned == 0) {
+			inFlightByOwner.remove(permit.owner);
+		} else {
+			inFlightByOwner.put(permit.owner, owned);
+		}
+	}
+
+	/**
+	 * Hands out free slots to waiting requests, in priority order and
+	 * round-robin across owners.
+	 */
+	private void dispatch() {
+		boolean granted = false;
+		Permit next;
+		while (inFlight < (int) limit && (next = nextWaiting()) != null) {
+			next.granted = true;
+			inFlight++;
+			inFlightByOwner.merge(next.owner, 1, Integer::sum);
+			granted = true;
+		}
+		if (granted) {
+			available.signalAll();
+		}
+	}
+
+	private @Nullable Permit nextWaiting() {
+		for (RequestPriority priority : RequestPriority.values()) {
+			if (priority == RequestPriority.BACKGROUND && (int) limit > 1 && inFlight >= (int) limit - 1) {
+				// Keep the last slot for whoever is waiting on a result
+				break;
+			}
+			LinkedHashMap<Object, ArrayDeque<Permit>> queues = waiting.get(priority);
+			for (Iterator<Map.Entry<Object, ArrayDeque<Permit>>> it = queues.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<Object, ArrayDeque<Permit>> entry = it.next();
+				ArrayDeque<Permit> queue = entry.getValue();
+				if (inFlightByOwner.getOrDefault(entry.getKey(), 0) >= queue.peek().quota) {
+					continue;
+				}
+				Permit permit = queue.poll();
+				it.remove();
+				if (!queue.isEmpty()) {
+					// Move the owner to the back of the line
+					queues.put(entry.getKey(), queue);
+				}
+				return permit;
+			}
+		}
+		return null;
+	}
+
+	private void increase() {
+		limit = Math.min(maxLimit, limit + 1.0 / limit);
+	}
+
+	private void decrease(long now, double ratio) {
+		// Requests that were in flight together all fail together, only count that once
+		if (now - lastDecreaseNanos > MIN_DECREASE_INTERVAL_NANOS) {
+			limit = Math.max(minLimit, limit * ratio);
+			lastDecreaseNanos = now;
+		}
+	}
+
+	int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
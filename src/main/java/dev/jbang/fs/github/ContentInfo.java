@@ -0,0 +1,114 @@
+package dev.jbang.fs.github;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.jspecify.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * What is known about a single path: its type, size and blob SHA and, for
+ * small files whose content came along with a metadata response, the decoded
+ * content itself.
+ */
+class ContentInfo {
+
+	static final String TYPE_FILE = "file";
+	static final String TYPE_DIR = "dir";
+	static final String TYPE_SYMLINK = "symlink";
+	static final String TYPE_SUBMODULE = "submodule";
+
+	private final String type;
+	private final long size;
+	private final @Nullable String sha;
+	private final @Nullable List<String> children;
+
+	ContentInfo(String type, long size, @Nullable String sha, @Nullable List<String> children) {
+		this.type = type;
+		this.size = size;
+		this.sha = sha;
+		this.children = children == null ? null : Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Builds the info for an entry of a {@code /contents} response: an object
+	 * for a file (or a listed child) and an array for a directory.
+	 */
+	static ContentInfo fromJson(JsonElement json) {
+		if (json.isJsonArray()) {
+			List<String> children = new ArrayList<>();
+			for (JsonElement element : json.getAsJsonArray()) {
+				children.add(element.getAsJsonObject().get("name").getAsString());
+			}
+			return new ContentInfo(TYPE_DIR, 0, null, children);
+		}
+		JsonObject item = json.getAsJsonObject();
+		String type = item.has("type") ? item.get("type").getAsString() : TYPE_FILE;
+		long size = item.has("size") ? item.get("size").getAsLong() : 0;
+		String sha = item.has("sha") && !item.get("sha").isJsonNull() ? item.get("sha").getAsString() : null;
+		return new ContentInfo(type, TYPE_DIR.equals(type) ? 0 : size, TYPE_DIR.equals(type) ? null : sha, null);
+	}
+
+	static ContentInfo fromTreeEntry(GitTreeEntry entry) {
+		String type;
+		if (entry.isTree()) {
+			type = TYPE_DIR;
+		} else if (GitTreeEntry.TYPE_COMMIT.equals(entry.getType())) {
+			type = TYPE_SUBMODULE;
+		} else if ("120000".equals(entry.getMode())) {
+			type = TYPE_SYMLINK;
+		} else {
+			type = TYPE_FILE;
+		}
+		return new ContentInfo(type, Math.max(0, entry.getSize()), entry.isTree() ? null : entry.getSha(), null);
+	}
+
+	/**
+	 * Decodes the base64 {@code content} of a file response, null if the
+	 * response doesn't carry the content.
+	 */
+	static byte @Nullable [] decodeContent(JsonElement json) {
+		if (!json.isJsonObject()) {
+			return null;
+		}
+		JsonObject item = json.getAsJsonObject();
+		if (!item.has("content") || !item.has("encoding") || !"base64".equals(item.get("encoding").getAsString())) {
+			return null;
+		}
+		return Base64.getMimeDecoder().decode(item.get("content").getAsString());
+	}
+
+	String getType() {
+		return type;
+	}
+
+	boolean isDirectory() {
+		return TYPE_DIR.equals(type);
+	}
+
+	boolean isRegularFile() {
+		return TYPE_FILE.equals(type);
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	@Nullable
+	String getSha() {
+		return sha;
+	}
+
+	/**
+	 * Names of the directory entries if the directory was listed, null
+	 * otherwise.
+	 */
+	@Nullable
+	List<String> getChildren() {
+		return children;
+	}
+}
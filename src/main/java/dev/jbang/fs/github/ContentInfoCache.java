@@ -0,0 +1,101 @@
+package dev.jbang.fs.github;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Per filesystem cache of path metadata, including negative entries for
+ * paths known not to exist, and of the content of small files that came
+ * along with a metadata response. Content is kept in LRU order within a
+ * total size budget, metadata is cheap and kept until invalidated.
+ */
+class ContentInfoCache {
+
+	private static final ContentInfo MISSING = new ContentInfo("missing", 0, null, null);
+
+	private final Map<String, ContentInfo> infos = new ConcurrentHashMap<>();
+	private final LinkedHashMap<String, byte[]> contents = new LinkedHashMap<>(16, 0.75f, true);
+	private final long maxContentBytes;
+	private long contentBytes;
+
+	ContentInfoCache(long maxContentBytes) {
+		this.maxContentBytes = maxContentBytes;
+	}
+
+	/**
+	 * Returns true if anything, including non-existence, is known about the
+	 * path.
+	 */
+	boolean contains(String path) {
+		return infos.containsKey(path);
+	}
+
+	/**
+	 * Returns the cached info, null if the path is unknown or known to be
+	 * missing; use {@link #contains(String)} to tell the two apart.
+	 */
+	@Nullable
+	ContentInfo get(String path) {
+		ContentInfo info = infos.get(path);
+		return info == MISSING ? null : info;
+	}
+
+	void put(String path, ContentInfo info) {
+		infos.put(path, info);
+	}
+
+	void putMissing(String path) {
+		infos.put(path, MISSING);
+		removeContent(path);
+	}
+
+	synchronized byte @Nullable [] getContent(String path) {
+		return contents.get(path);
+	}
+
+	synchronized void putContent(String path, byte[] content) {
+		if (content.length > maxContentBytes) {
+			return;
+		}
+		byte[] previous = contents.put(path, content);
+		if (previous != null) {
+			contentBytes -= previous.length;
+		}
+		contentBytes += content.length;
+		Iterator<byte[]> it = contents.values().iterator();
+		while (contentBytes > maxContentBytes && it.hasNext()) {
+			contentBytes -= it.next().length;
+			it.remove();
+		}
+	}
+
+	void invalidate(String path) {
+		infos.remove(path);
+		removeContent(path);
+		// The listings of the parents may have changed as well
+		String parent = path;
+		int lastSlash;
+		while ((lastSlash = parent.lastIndexOf('/')) > 0) {
+			parent = parent.substring(0, lastSlash);
+			infos.remove(parent);
+		}
+		infos.remove("/");
+	}
+
+	synchronized void invalidateAll() {
+		infos.clear();
+		contents.clear();
+		contentBytes = 0;
+	}
+
+	private synchronized void removeContent(String path) {
+		byte[] previous = contents.remove(path);
+		if (previous != null) {
+			contentBytes -= previous.length;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package dev.jbang.fs.github;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * HttpClient that sends all requests through a {@link GitHubCacheDaemon},
+ * so that the JVMs on a host share its cache, tokens and request budget.
+ * The default provider uses it when the {@code github.fs.daemon} system
+ * property holds the daemon's URL.
+ */
+public class DaemonHttpClient implements HttpClient {
+
+	/** System property with the URL of the daemon to use by default. */
+	public static final String DAEMON_PROPERTY = "github.fs.daemon";
+
+	private final String daemonUrl;
+	private final HttpClient transport;
+	/** Tells the daemon which requests come from the same filesystem. */
+	private final String clientId = UUID.randomUUID().toString();
+
+	public DaemonHttpClient(@NonNull String daemonUrl) {
+		this(daemonUrl, new SimpleHttpClient());
+	}
+
+	DaemonHttpClient(String daemonUrl, HttpClient transport) {
+		this.daemonUrl = daemonUrl.endsWith("/") ? daemonUrl.substring(0, daemonUrl.length() - 1) : daemonUrl;
+		this.transport = transport;
+	}
+
+	@Override
+	public String downloadString(String url) throws IOException {
+		return check(send(HttpRequest.get(url)), url).getBodyAsString();
+	}
+
+	@Override
+	public Path downloadAndCacheFile(String url) throws IOException {
+		return download(HttpRequest.get(url));
+	}
+
+	@Override
+	public Path download(HttpRequest request) throws IOException {
+		// Streamed to disk on both ends, archives and big blobs are never held in memory
+		return transport.download(proxied(request).header(GitHubCacheDaemon.DOWNLOAD_HEADER, "true"));
+	}
+
+	private static HttpResponse check(HttpResponse response, String url) throws IOException {
+		if (response.getStatusCode() == 404) {
+			throw new FileNotFoundException("Resource not found: " + url);
+		}
+		if (response.getStatusCode() != 200) {
+			throw new HttpStatusException(response.getStatusCode(), url);
+		}
+		return response;
+	}
+
+	@Override
+	public HttpResponse send(HttpRequest request) throws IOException {
+		return transport.send(proxied(request));
+	}
+
+	private HttpRequest proxied(HttpRequest request) throws IOException {
+		HttpRequest proxied = new HttpRequest(request.getMethod(),
+				daemonUrl + "/proxy?url=" + URLEncoder.encode(request.getUrl(), "UTF-8"));
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			proxied.header(header.getKey(), header.getValue());
+		}
+		RequestContext context = RequestContext.current();
+		Object owner = context.getOwner();
+		proxied.header(GitHubCacheDaemon.CLIENT_HEADER,
+				owner != null ? clientId + "/" + System.identityHashCode(owner) : clientId);
+		proxied.header(GitHubCacheDaemon.PRIORITY_HEADER, context.getPriority().name());
+		return proxied.body(request.getBody())
+			.timeout(request.getTimeoutMillis())
+			.onResponse(request::responseStarted);
+	}
+}
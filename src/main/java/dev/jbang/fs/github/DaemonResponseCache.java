@@ -0,0 +1,202 @@
+package dev.jbang.fs.github;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The {@link GitHubCacheDaemon}'s cache of GET responses, shared by all its
+ * clients. Git objects and raw content addressed by SHA never change and are
+ * kept on disk for good. Other responses are kept in memory with their ETag,
+ * to be revalidated with a conditional request, which doesn't count against
+ * the rate limit.
+ */
+class DaemonResponseCache {
+
+	/**
+	 * Trees, blobs and commits by SHA from the API, and raw content at a
+	 * commit SHA.
+	 */
+	private static final Pattern IMMUTABLE = Pattern
+		.compile("https?://[^?]*/(git/(trees|blobs|commits)/[0-9a-f]{40}(\\?.*)?|[0-9a-f]{40}/[^?]+)");
+
+	/** The most body bytes kept in memory for revalidation, in total. */
+	private static final long MAX_BYTES = 64 * 1024 * 1024;
+	private static final int MAX_ENTRY_BYTES = 1024 * 1024;
+	/** Response headers worth keeping, the rest is per response. */
+	private static final String[] KEPT_HEADERS = { "Content-Type", "ETag", "Last-Modified" };
+
+	private final Path dir;
+	// Guarded by this, in LRU order
+	private final LinkedHashMap<String, HttpResponse> revalidated = new LinkedHashMap<>(16, 0.75f, true);
+	private long revalidatedBytes;
+
+	DaemonResponseCache(Path cacheDir) {
+		this.dir = cacheDir.resolve("responses");
+	}
+
+	static boolean isImmutable(String url) {
+		return IMMUTABLE.matcher(url).matches();
+	}
+
+	/**
+	 * Returns a cached response that is still valid without asking GitHub,
+	 * null if there is none.
+	 */
+	@Nullable
+	HttpResponse getImmutable(String key) throws IOException {
+		Path file = fileFor(key);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			Map<String, String> headers = readHeaders(in);
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			return new HttpResponse(200, headers, body.toByteArray());
+		}
+	}
+
+	/**
+	 * Opens the body of a cached response that is still valid without asking
+	 * GitHub, to stream it, null if there is none.
+	 */
+	@Nullable
+	InputStream openImmutable(String key) throws IOException {
+		Path file = fileFor(key);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		InputStream in = Files.newInputStream(file);
+		try {
+			readHeaders(in);
+			return in;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private Path fileFor(String key) {
+		return dir.resolve(BlobCache.sha1Hex(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static Map<String, String> readHeaders(InputStream in) throws IOException {
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		String line;
+		while (!(line = readLine(in)).isEmpty()) {
+			int colon = line.indexOf(':');
+			headers.put(line.substring(0, colon), line.substring(colon + 1).trim());
+		}
+		return headers;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1 && b != '\n') {
+			line.write(b);
+		}
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the last response with an ETag, to revalidate, null if there
+	 * is none.
+	 */
+	@Nullable
+	synchronized HttpResponse getRevalidatable(String key) {
+		return revalidated.get(key);
+	}
+
+	/**
+	 * Keeps a successful response of a GET request.
+	 */
+	void put(String key, String url, HttpResponse response) throws IOException {
+		if (response.getStatusCode() != 200) {
+			return;
+		}
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (String name : KEPT_HEADERS) {
+			String value = response.header(name);
+			if (value != null) {
+				headers.put(name, value);
+			}
+		}
+		if (isImmutable(url)) {
+			write(key, headers, response.getBody());
+		} else if (response.header("ETag") != null && response.getBody().length <= MAX_ENTRY_BYTES) {
+			synchronized (this) {
+				HttpResponse previous = revalidated.put(key, new HttpResponse(200, headers, response.getBody()));
+				if (previous != null) {
+					revalidatedBytes -= previous.getBody().length;
+				}
+				revalidatedBytes += response.getBody().length;
+				Iterator<HttpResponse> it = revalidated.values().iterator();
+				while (revalidatedBytes > MAX_BYTES && it.hasNext()) {
+					revalidatedBytes -= it.next().getBody().length;
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps the downloaded body of an immutable URL, copying it from the
+	 * file without reading it into memory.
+	 */
+	void putFile(String key, Path body) throws IOException {
+		write(key, Collections.emptyMap(), out -> Files.copy(body, out));
+	}
+
+	private interface BodyWriter {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	private void write(String key, Map<String, String> headers, byte[] body) throws IOException {
+		write(key, headers, out -> out.write(body));
+	}
+
+	private void write(String key, Map<String, String> headers, BodyWriter body) throws IOException {
+		Files.createDirectories(dir);
+		Path file = fileFor(key);
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			StringBuilder head = new StringBuilder();
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				head.append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+			}
+			head.append('\n');
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+				out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+				body.writeTo(out);
+			}
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
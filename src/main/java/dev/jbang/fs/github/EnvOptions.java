@@ -0,0 +1,99 @@
+package dev.jbang.fs.github;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers for reading typed options from the environment map passed to
+ * {@link GitHubFileSystemProvider#newFileSystem(java.net.URI, Map)}. Values
+ * may be given either as their natural type or as strings.
+ */
+final class EnvOptions {
+
+	private EnvOptions() {
+	}
+
+	/**
+	 * Reads a duration in milliseconds. Accepts a {@link Duration}, a number of
+	 * milliseconds or a string holding either a number of milliseconds or an
+	 * ISO-8601 duration like {@code PT5S}.
+	 */
+	static long getMillis(Map<String, ?> env, String key, long defaultValue) {
+		Object value = env.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if (value instanceof Duration) {
+			return ((Duration) value).toMillis();
+		}
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		String str = value.toString().trim();
+		try {
+			return str.startsWith("P") || str.startsWith("p") ? Duration.parse(str).toMillis() : Long.parseLong(str);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid duration for '" + key + "': " + value, e);
+		}
+	}
+
+	static long getLong(Map<String, ?> env, String key, long defaultValue) {
+		Object value = env.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		try {
+			return Long.parseLong(value.toString().trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for '" + key + "': " + value, e);
+		}
+	}
+
+	static int getInt(Map<String, ?> env, String key, int defaultValue) {
+		return (int) getLong(env, key, defaultValue);
+	}
+
+	static boolean getBoolean(Map<String, ?> env, String key, boolean defaultValue) {
+		Object value = env.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		return Boolean.parseBoolean(value.toString().trim());
+	}
+
+	static String getString(Map<String, ?> env, String key, String defaultValue) {
+		Object value = env.get(key);
+		return value == null ? defaultValue : value.toString();
+	}
+
+	/**
+	 * Reads a list of strings. Accepts a collection or a comma separated
+	 * string, blank elements are skipped.
+	 */
+	static List<String> getList(Map<String, ?> env, String key) {
+		Object value = env.get(key);
+		List<String> result = new ArrayList<>();
+		if (value == null) {
+			return result;
+		}
+		Collection<?> items = value instanceof Collection ? (Collection<?>) value
+				: Arrays.asList(value.toString().split(","));
+		for (Object item : items) {
+			String str = item.toString().trim();
+			if (!str.isEmpty()) {
+				result.add(str);
+			}
+		}
+		return result;
+	}
+}
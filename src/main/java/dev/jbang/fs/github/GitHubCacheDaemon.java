@@ -0,0 +1,594 @@
+package dev.jbang.fs.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A caching proxy for the GitHub requests of all JVMs on a host, started
+ * with {@code java -jar} on the filesystem's jar. Clients talk to it through
+ * {@link DaemonHttpClient}. It keeps Git objects addressed by SHA on disk and
+ * revalidates everything else with conditional requests, runs all requests
+ * through one concurrency budget that is queued fairly per client
+ * filesystem, and adds a token from its pool to API requests that come
+ * without one, always the one with the most requests left.
+ *
+ * Only GitHub hosts are proxied: github.com, its API and raw content hosts,
+ * and the Enterprise Server hosts it is configured for. A pool token is only
+ * ever sent to the API of the host it was configured for.
+ */
+public final class GitHubCacheDaemon implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GitHubCacheDaemon.class.getName());
+
+	static final int DEFAULT_PORT = 7878;
+	/** Identifies the client filesystem, to queue requests fairly. */
+	static final String CLIENT_HEADER = "X-GitHub-Fs-Client";
+	/** The {@link RequestPriority} of a request. */
+	static final String PRIORITY_HEADER = "X-GitHub-Fs-Priority";
+	/** Marks a GET whose body is streamed through instead of buffered. */
+	static final String DOWNLOAD_HEADER = "X-GitHub-Fs-Download";
+	/** Environment variable with comma-separated tokens for the pool. */
+	public static final String TOKENS_VARIABLE = "GITHUB_FS_TOKENS";
+
+	/** The host of github.com tokens that are given without one. */
+	static final String DEFAULT_HOST = "github.com";
+	private static final List<String> DOT_COM_HOSTS = Arrays.asList("github.com", "api.github.com",
+			"raw.githubusercontent.com");
+
+	/** Request and response headers that only concern one connection. */
+	private static final Set<String> HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+	static {
+		HOP_HEADERS.addAll(Arrays.asList("Host", "Connection", "Keep-Alive", "Content-Length", "Transfer-Encoding",
+				CLIENT_HEADER, PRIORITY_HEADER, DOWNLOAD_HEADER));
+	}
+
+	private final HttpClient upstream;
+	private final DaemonResponseCache cache;
+	private final TokenPool tokens;
+	private final Set<String> enterpriseHosts = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong revalidated = new AtomicLong();
+	private final AtomicLong upstreamRequests = new AtomicLong();
+	private @Nullable HttpServer server;
+	private @Nullable ExecutorService executor;
+
+	public GitHubCacheDaemon(@NonNull Path cacheDir, @NonNull List<String> tokens) {
+		this(cacheDir, tokens, Collections.emptyList());
+	}
+
+	/**
+	 * @param cacheDir where to keep immutable responses
+	 * @param tokens pool tokens, each either plain for github.com or as
+	 *        {@code host=token} for an Enterprise Server host
+	 * @param enterpriseHosts the Enterprise Server hosts to proxy besides
+	 *        github.com
+	 */
+	public GitHubCacheDaemon(@NonNull Path cacheDir, @NonNull List<String> tokens,
+			@NonNull List<String> enterpriseHosts) {
+		this(new SimpleHttpClient(), cacheDir, tokens, enterpriseHosts);
+	}
+
+	GitHubCacheDaemon(HttpClient upstream, Path cacheDir, List<String> tokens, List<String> enterpriseHosts) {
+		// One budget for all clients, like a provider has for its filesystems
+		this.upstream = new ResilientHttpClient(
+				new LimitedHttpClient(upstream, new ConcurrencyLimiter(8, 1, 64)));
+		this.cache = new DaemonResponseCache(cacheDir);
+		this.tokens = new TokenPool(tokens);
+		this.enterpriseHosts.addAll(enterpriseHosts);
+	}
+
+	/**
+	 * Starts listening on the given address.
+	 *
+	 * @return this daemon
+	 */
+	public synchronized GitHubCacheDaemon start(@NonNull InetSocketAddress address) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Already started");
+		}
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext("/proxy", this::handleProxy);
+		server.createContext("/status", this::handleStatus);
+		ExecutorService executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "github-fs-daemon");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.start();
+		this.server = server;
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * The URL to pass to {@link DaemonHttpClient}.
+	 */
+	@NonNull
+	public synchronized String getUrl() {
+		if (server == null) {
+			throw new IllegalStateException("Not started");
+		}
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getHostString() + ":" + address.getPort();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+			executor = null;
+		}
+	}
+
+	@SuppressWarnings("try")
+	private void handleProxy(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			String url = queryParameter(exchange.getRequestURI().getRawQuery(), "url");
+			if (url == null) {
+				respond(exchange, error(400, "Missing url parameter"));
+				return;
+			}
+			if (!isAllowed(url)) {
+				respond(exchange, error(403, "Not a GitHub URL: " + url));
+				return;
+			}
+			HttpRequest request = new HttpRequest(exchange.getRequestMethod(), url);
+			exchange.getRequestHeaders().forEach((name, values) -> {
+				if (!HOP_HEADERS.contains(name) && !values.isEmpty()) {
+					request.header(name, values.get(0));
+				}
+			});
+			String client = exchange.getRequestHeaders().getFirst(CLIENT_HEADER);
+			RequestContext context = new RequestContext(client != null ? client : "anonymous",
+					priority(exchange.getRequestHeaders().getFirst(PRIORITY_HEADER)), Integer.MAX_VALUE);
+			if ("GET".equals(request.getMethod()) && exchange.getRequestHeaders().containsKey(DOWNLOAD_HEADER)) {
+				try (RequestContext.Scope scope = context.enter()) {
+					download(exchange, request);
+				}
+				return;
+			}
+			byte[] body = readAll(exchange.getRequestBody());
+			if (body.length > 0) {
+				request.body(body);
+			}
+			HttpResponse response;
+			try (RequestContext.Scope scope = context.enter()) {
+				response = forward(request);
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Request failed: " + url, e);
+				response = error(502, e.toString());
+			}
+			respond(exchange, response);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static RequestPriority priority(@Nullable String name) {
+		if (name != null) {
+			try {
+				return RequestPriority.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				// Unknown to this version, treat like no priority
+			}
+		}
+		return RequestPriority.NORMAL;
+	}
+
+	/**
+	 * Answers a request from the cache where possible, and sends it on
+	 * otherwise.
+	 */
+	HttpResponse forward(HttpRequest request) throws IOException {
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		headers.putAll(request.getHeaders());
+		String url = request.getUrl();
+		String key = cacheKey(request);
+		boolean get = "GET".equals(request.getMethod());
+		boolean immutable = get && DaemonResponseCache.isImmutable(url);
+		if (immutable) {
+			HttpResponse cached = cache.getImmutable(key);
+			if (cached != null) {
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		}
+		HttpResponse stored = null;
+		if (get && !immutable && !headers.containsKey("If-None-Match") && !headers.containsKey("If-Modified-Since")) {
+			stored = cache.getRevalidatable(key);
+			if (stored != null) {
+				request.header("If-None-Match", stored.header("ETag"));
+			}
+		}
+		String token = authorizeFromPool(request);
+		upstreamRequests.incrementAndGet();
+		HttpResponse response = upstream.send(request);
+		if (token != null) {
+			tokens.update(token, response);
+		}
+		if (stored != null && response.getStatusCode() == 304) {
+			revalidated.incrementAndGet();
+			// The stored body with the current rate limit headers
+			Map<String, String> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			merged.putAll(response.getHeaders());
+			merged.putAll(stored.getHeaders());
+			return new HttpResponse(200, merged, stored.getBody());
+		}
+		if (get) {
+			cache.put(key, url, response);
+		}
+		return response;
+	}
+
+	/**
+	 * Answers a download by streaming the body through, from the disk cache
+	 * or from the temporary file it is downloaded to, so that archives and
+	 * big blobs never sit in memory. Immutable ones are kept on disk. Ranged
+	 * downloads go through {@link #forward(HttpRequest)}, they are small.
+	 */
+	private void download(HttpExchange exchange, HttpRequest request) throws IOException {
+		String url = request.getUrl();
+		String key = cacheKey(request);
+		boolean immutable = DaemonResponseCache.isImmutable(url);
+		if (immutable) {
+			InputStream cached = cache.openImmutable(key);
+			if (cached != null) {
+				cacheHits.incrementAndGet();
+				try (InputStream in = cached) {
+					stream(exchange, in, -1);
+				}
+				return;
+			}
+		}
+		// Without the response headers, so the token's rate limit isn't updated
+		authorizeFromPool(request);
+		upstreamRequests.incrementAndGet();
+		Path file;
+		try {
+			file = upstream.download(request);
+		} catch (FileNotFoundException e) {
+			respond(exchange, error(404, e.getMessage()));
+			return;
+		} catch (HttpStatusException e) {
+			respond(exchange, error(e.getStatusCode(), e.getMessage()));
+			return;
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Download failed: " + url, e);
+			respond(exchange, error(502, e.toString()));
+			return;
+		}
+		try {
+			if (immutable) {
+				cache.putFile(key, file);
+			}
+			try (InputStream in = Files.newInputStream(file)) {
+				stream(exchange, in, Files.size(file));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * The key of a GET in the cache. Clients with their own token may see
+	 * what others can't, so they get their own entries, and a range is a
+	 * different response than the whole body.
+	 */
+	private static String cacheKey(HttpRequest request) {
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		headers.putAll(request.getHeaders());
+		String authorization = headers.get("Authorization");
+		String range = headers.get("Range");
+		return request.getMethod() + " " + request.getUrl() + " " + headers.getOrDefault("Accept", "") + " "
+				+ (authorization != null
+						? BlobCache.sha1Hex(authorization.getBytes(StandardCharsets.UTF_8))
+						: "")
+				+ (range != null ? " " + range : "");
+	}
+
+	/**
+	 * Adds a pool token to an API request that comes without one.
+	 *
+	 * @return the token, null if none was added
+	 */
+	@Nullable
+	private String authorizeFromPool(HttpRequest request) {
+		String apiHost = apiHost(request.getUrl());
+		boolean authorized = request.getHeaders()
+			.keySet()
+			.stream()
+			.anyMatch(name -> name.equalsIgnoreCase("Authorization"));
+		if (authorized || apiHost == null) {
+			return null;
+		}
+		String token = tokens.pick(apiHost);
+		if (token != null) {
+			request.header("Authorization", "Bearer " + token);
+		}
+		return token;
+	}
+
+	/**
+	 * Whether the URL is on one of the GitHub hosts the daemon serves, so
+	 * that it can't be used to reach anything else.
+	 */
+	boolean isAllowed(String url) {
+		URI uri;
+		try {
+			uri = new URI(url);
+		} catch (URISyntaxException e) {
+			return false;
+		}
+		String host = uri.getHost();
+		return ("https".equalsIgnoreCase(uri.getScheme()) || "http".equalsIgnoreCase(uri.getScheme()))
+				&& host != null && uri.getUserInfo() == null
+				&& (DOT_COM_HOSTS.contains(host.toLowerCase(Locale.ROOT)) || enterpriseHosts.contains(host));
+	}
+
+	/**
+	 * Returns the host whose tokens may authorize the URL, null if it isn't
+	 * an API URL: github.com for api.github.com, and an Enterprise Server
+	 * host for its {@code /api/} path.
+	 */
+	@Nullable
+	String apiHost(String url) {
+		URI uri = URI.create(url);
+		String host = uri.getHost();
+		if (host == null || !"https".equalsIgnoreCase(uri.getScheme())) {
+			return null;
+		}
+		if (host.equalsIgnoreCase("api.github.com")) {
+			return DEFAULT_HOST;
+		}
+		String path = uri.getPath();
+		return enterpriseHosts.contains(host) && path != null && path.startsWith("/api/")
+				? host.toLowerCase(Locale.ROOT)
+				: null;
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		try {
+			// Written by hand, so that the plain jar runs without Gson on the class path
+			String status = String.format(
+					"{\"requests\":%d,\"cacheHits\":%d,\"revalidated\":%d,\"upstreamRequests\":%d,\"tokens\":%d}",
+					requests.get(), cacheHits.get(), revalidated.get(), upstreamRequests.get(), tokens.size());
+			respond(exchange, new HttpResponse(200, Collections.singletonMap("Content-Type", "application/json"),
+					status.getBytes(StandardCharsets.UTF_8)));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static HttpResponse error(int status, String message) {
+		return new HttpResponse(status, Collections.singletonMap("Content-Type", "text/plain"),
+				message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void respond(HttpExchange exchange, HttpResponse response) throws IOException {
+		response.getHeaders().forEach((name, value) -> {
+			if (!HOP_HEADERS.contains(name)) {
+				exchange.getResponseHeaders().set(name, value);
+			}
+		});
+		int status = response.getStatusCode();
+		byte[] body = response.getBody();
+		boolean empty = "HEAD".equals(exchange.getRequestMethod()) || status == 204 || status == 304
+				|| body.length == 0;
+		exchange.sendResponseHeaders(status, empty ? -1 : body.length);
+		if (!empty) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	/**
+	 * Sends a 200 with the body copied from the stream.
+	 *
+	 * @param length the length of the body, -1 if unknown
+	 */
+	private static void stream(HttpExchange exchange, InputStream in, long length) throws IOException {
+		// 0 tells the server to send chunks, -1 that there is no body
+		exchange.sendResponseHeaders(200, length < 0 ? 0 : length == 0 ? -1 : length);
+		if (length != 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			}
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	@Nullable
+	private static String queryParameter(@Nullable String query, String name) throws UnsupportedEncodingException {
+		if (query == null) {
+			return null;
+		}
+		for (String param : query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0 && param.substring(0, eq).equals(name)) {
+				return URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The daemon's tokens by the host they were configured for, with the
+	 * rate limit GitHub last reported for each.
+	 */
+	static final class TokenPool {
+
+		private final Map<String, Map<String, RateLimit>> limitsByHost = new LinkedHashMap<>();
+		private final Map<String, RateLimit> limits = new LinkedHashMap<>();
+
+		/**
+		 * @param tokens plain tokens for github.com, or {@code host=token}
+		 */
+		TokenPool(List<String> tokens) {
+			for (String spec : tokens) {
+				String token = spec.trim();
+				String host = DEFAULT_HOST;
+				int eq = token.indexOf('=');
+				if (eq > 0) {
+					host = token.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+					token = token.substring(eq + 1).trim();
+				}
+				if (!token.isEmpty()) {
+					RateLimit limit = new RateLimit();
+					limits.put(token, limit);
+					limitsByHost.computeIfAbsent(host, h -> new LinkedHashMap<>()).put(token, limit);
+				}
+			}
+		}
+
+		int size() {
+			return limits.size();
+		}
+
+		/**
+		 * Returns the host's token with the most requests left, one that
+		 * wasn't used yet if there is any, or null if it has none.
+		 */
+		@Nullable
+		String pick(String host) {
+			Map<String, RateLimit> hostLimits = limitsByHost.get(host.toLowerCase(Locale.ROOT));
+			if (hostLimits == null) {
+				return null;
+			}
+			String best = null;
+			long bestRemaining = Long.MIN_VALUE;
+			for (Map.Entry<String, RateLimit> entry : hostLimits.entrySet()) {
+				long remaining = entry.getValue().getRemaining();
+				if (remaining < 0) {
+					return entry.getKey();
+				}
+				if (remaining > bestRemaining) {
+					best = entry.getKey();
+					bestRemaining = remaining;
+				}
+			}
+			return best;
+		}
+
+		void update(String token, HttpResponse response) {
+			RateLimit limit = limits.get(token);
+			if (limit != null) {
+				limit.update(response);
+			}
+		}
+	}
+
+	/**
+	 * Runs the daemon until the JVM is stopped.
+	 *
+	 * <pre>
+	 * java -jar jbang-filesystems.jar [--port 7878] [--bind 127.0.0.1] [--cache-dir dir]
+	 *     [--enterprise-host host]... [--token [host=]token]...
+	 * </pre>
+	 *
+	 * More tokens can be given comma-separated in the {@code GITHUB_FS_TOKENS}
+	 * environment variable. Tokens without a host are for github.com.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		String bind = "127.0.0.1";
+		Path cacheDir = BlobCache.defaultCacheDir();
+		List<String> tokens = new ArrayList<>();
+		List<String> enterpriseHosts = new ArrayList<>();
+		String fromEnv = System.getenv(TOKENS_VARIABLE);
+		if (fromEnv != null) {
+			tokens.addAll(Arrays.asList(fromEnv.split(",")));
+		}
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				usage("Missing value for " + arg);
+			}
+			switch (arg) {
+			case "--port":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "--bind":
+				bind = args[++i];
+				break;
+			case "--cache-dir":
+				cacheDir = Paths.get(args[++i]);
+				break;
+			case "--enterprise-host":
+				enterpriseHosts.add(args[++i]);
+				break;
+			case "--token":
+				tokens.add(args[++i]);
+				break;
+			default:
+				usage("Unknown option " + arg);
+			}
+		}
+		GitHubCacheDaemon daemon = new GitHubCacheDaemon(cacheDir, tokens, enterpriseHosts)
+			.start(new InetSocketAddress(bind, port));
+		Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+		System.out.println("Listening on " + daemon.getUrl() + ", pass -D" + DaemonHttpClient.DAEMON_PROPERTY + "="
+				+ daemon.getUrl() + " to clients");
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println(
+				"Usage: java -jar jbang-filesystems.jar [--port 7878] [--bind 127.0.0.1] [--cache-dir dir]"
+						+ " [--enterprise-host host]... [--token [host=]token]...");
+		System.exit(2);
+	}
+}
@@ -0,0 +1,84 @@
+package dev.jbang.fs.github;
+
+import java.nio.file.Path;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A single difference between two GitHub filesystem trees as reported by
+ * {@link GitHubFileSystems#diff(Path, Path)}.
+ */
+public class GitHubDiffEntry {
+
+	public enum Type {
+		ADDED, REMOVED, MODIFIED
+	}
+
+	private final Type type;
+	private final String relativePath;
+	private final @Nullable Path oldPath;
+	private final @Nullable Path newPath;
+	private final @Nullable String oldSha;
+	private final @Nullable String newSha;
+
+	GitHubDiffEntry(Type type, String relativePath, @Nullable Path oldPath, @Nullable Path newPath,
+			@Nullable String oldSha, @Nullable String newSha) {
+		this.type = type;
+		this.relativePath = relativePath;
+		this.oldPath = oldPath;
+		this.newPath = newPath;
+		this.oldSha = oldSha;
+		this.newSha = newSha;
+	}
+
+	@NonNull
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The path relative to the compared directories, using "/" as separator.
+	 */
+	@NonNull
+	public String getRelativePath() {
+		return relativePath;
+	}
+
+	/**
+	 * The path on the old side, null for added entries.
+	 */
+	@Nullable
+	public Path getOldPath() {
+		return oldPath;
+	}
+
+	/**
+	 * The path on the new side, null for removed entries.
+	 */
+	@Nullable
+	public Path getNewPath() {
+		return newPath;
+	}
+
+	/**
+	 * The git blob SHA on the old side, null for added entries.
+	 */
+	@Nullable
+	public String getOldSha() {
+		return oldSha;
+	}
+
+	/**
+	 * The git blob SHA on the new side, null for removed entries.
+	 */
+	@Nullable
+	public String getNewSha() {
+		return newSha;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + relativePath;
+	}
+}
@@ -3,8 +3,11 @@ package dev.jbang.fs.github;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 /**
  * Directory stream implementation for GitHub filesystem.
@@ -16,7 +19,7 @@ class GitHubDirectoryStream implements DirectoryStream<Path> {
 
 	GitHubDirectoryStream(GitHubPath dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
 		this.filter = filter;
-		GitHubFileSystemProvider provider = (GitHubFileSystemProvider) dir.getFileSystem().provider();
+		GitHubFileSystemProvider provider = dir.getFileSystem().provider();
 		this.children = provider.listDirectory(dir);
 	}
 
@@ -57,6 +60,18 @@ class GitHubDirectoryStream implements DirectoryStream<Path> {
 		};
 	}
 
+	/**
+	 * Returns a sized spliterator over the (filtered) entries, which splits
+	 * evenly for parallel streams, unlike the default one over the iterator.
+	 */
+	@Override
+	public Spliterator<Path> spliterator() {
+		List<Path> accepted = new ArrayList<>(children.size());
+		iterator().forEachRemaining(accepted::add);
+		return Spliterators.spliterator(accepted,
+				Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+	}
+
 	@Override
 	public void close() throws IOException {
 		// Nothing to close
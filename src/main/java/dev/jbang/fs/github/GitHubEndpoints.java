@@ -0,0 +1,89 @@
+package dev.jbang.fs.github;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The base URLs a filesystem talks to: the REST API, the raw content
+ * endpoint and the archive endpoint, plus optional mirrors of the raw
+ * content endpoint. Defaults follow the host of the filesystem URI, using
+ * the public GitHub URLs for {@code github.com} and the GitHub Enterprise
+ * Server layout ({@code https://host/api/v3} and {@code https://host/raw})
+ * for any other host. Each can be overridden through the env map.
+ */
+class GitHubEndpoints {
+
+	static final String DEFAULT_HOST = "github.com";
+
+	private final String apiBase;
+	private final String archiveBase;
+	private final List<String> rawBases;
+
+	GitHubEndpoints(String apiBase, String rawBase, String archiveBase, List<String> mirrors) {
+		this.apiBase = stripSlash(apiBase);
+		this.archiveBase = stripSlash(archiveBase);
+		List<String> bases = new ArrayList<>();
+		for (String mirror : mirrors) {
+			bases.add(stripSlash(mirror));
+		}
+		bases.add(stripSlash(rawBase));
+		this.rawBases = Collections.unmodifiableList(bases);
+	}
+
+	static GitHubEndpoints of(GitHubRepoInfo repoInfo, Map<String, ?> env) {
+		String host = repoInfo.getHost();
+		boolean dotCom = DEFAULT_HOST.equals(host);
+		String apiBase = EnvOptions.getString(env, GitHubFileSystem.ENV_API_URL,
+				dotCom ? "https://api.github.com" : "https://" + host + "/api/v3");
+		String rawBase = EnvOptions.getString(env, GitHubFileSystem.ENV_RAW_URL,
+				dotCom ? "https://raw.githubusercontent.com" : "https://" + host + "/raw");
+		String archiveBase = EnvOptions.getString(env, GitHubFileSystem.ENV_ARCHIVE_URL, apiBase);
+		return new GitHubEndpoints(apiBase, rawBase, archiveBase,
+				EnvOptions.getList(env, GitHubFileSystem.ENV_MIRRORS));
+	}
+
+	/**
+	 * Returns the REST API URL of the repository, e.g.
+	 * {@code https://api.github.com/repos/owner/repo}.
+	 */
+	String repoApi(GitHubRepoInfo repoInfo) {
+		return apiBase + "/repos/" + repoInfo.getOwner() + "/" + repoInfo.getRepo();
+	}
+
+	/**
+	 * Returns the GraphQL endpoint, which lives next to the REST API
+	 * ({@code https://host/api/graphql} on Enterprise Server).
+	 */
+	String graphql() {
+		String base = apiBase.endsWith("/v3") ? apiBase.substring(0, apiBase.length() - "/v3".length()) : apiBase;
+		return base + "/graphql";
+	}
+
+	String archive(GitHubRepoInfo repoInfo, String ref) {
+		return archiveBase + "/repos/" + repoInfo.getOwner() + "/" + repoInfo.getRepo() + "/zipball/" + ref;
+	}
+
+	/**
+	 * Returns the URL of a file on one of the raw content sources.
+	 *
+	 * @param repoPath the path in the repository, starting with a slash
+	 */
+	static String raw(String rawBase, GitHubRepoInfo repoInfo, String ref, String repoPath) {
+		return rawBase + "/" + repoInfo.getOwner() + "/" + repoInfo.getRepo() + "/" + ref + repoPath;
+	}
+
+	/**
+	 * Returns the raw content sources, mirrors first in the configured order
+	 * and the raw endpoint itself last.
+	 */
+	List<String> getRawBases() {
+		return rawBases;
+	}
+
+	private static String stripSlash(String url) {
+		String trimmed = url.trim();
+		return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+	}
+}
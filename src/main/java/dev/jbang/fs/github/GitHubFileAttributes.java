@@ -1,44 +1,102 @@
 package dev.jbang.fs.github;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Basic file attributes for GitHub files.
  */
 class GitHubFileAttributes implements BasicFileAttributes {
 
+	static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("lastModifiedTime",
+			"lastAccessTime", "creationTime", "size", "isRegularFile", "isDirectory", "isSymbolicLink", "isOther",
+			"fileKey"));
+
 	private final GitHubPath path;
 	private final boolean isDirectory;
 	private final long size;
+	private final @Nullable String sha;
+	private volatile @Nullable FileTime lastModifiedTime;
 
 	GitHubFileAttributes(GitHubPath path) throws IOException {
+		this(path, stat(path));
+	}
+
+	GitHubFileAttributes(GitHubPath path, ContentInfo info) {
 		this.path = path;
-		GitHubFileSystemProvider provider = (GitHubFileSystemProvider) path.getFileSystem().provider();
-		boolean dir;
-		try {
-			dir = provider.isDirectory(path);
-		} catch (IOException e) {
-			// If we can't determine, assume it's a file
-			dir = false;
-		}
-		this.isDirectory = dir;
-		this.size = isDirectory ? 0 : getFileSize();
+		this.isDirectory = info.isDirectory();
+		this.size = info.getSize();
+		this.sha = info.getSha();
 	}
 
-	private long getFileSize() {
-		// For now, we don't know the size without downloading
-		// Could be improved by using GitHub API which provides size
-		return 0;
+	private static ContentInfo stat(GitHubPath path) throws IOException {
+		ContentInfo info = path.getFileSystem().provider().stat(path);
+		if (info == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		return info;
 	}
 
+	/**
+	 * Returns the date of the last commit that touched the path, which is
+	 * only fetched when asked for, with {@link GitHubFileSystem#ENV_COMMIT_TIMES}
+	 * enabled. Otherwise it is the date of the commit the filesystem reads
+	 * from, which only changes when the ref moves.
+	 *
+	 * @throws UncheckedIOException if the commit history can't be fetched
+	 */
 	@Override
+	@SuppressWarnings("try")
 	public FileTime lastModifiedTime() {
-		// GitHub doesn't provide reliable modification times via API
-		return FileTime.fromMillis(System.currentTimeMillis());
+		FileTime time = lastModifiedTime;
+		if (time == null) {
+			GitHubFileSystem fs = path.getFileSystem();
+			LastModifiedTimes times = fs.getLastModifiedTimes();
+			try (RequestContext.Scope scope = fs.requestScope()) {
+				time = times != null ? times.get(path) : fs.getCommitTime();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			lastModifiedTime = time;
+		}
+		return time;
+	}
+
+	/**
+	 * Returns the value of one of the attributes in {@link #NAMES}.
+	 */
+	Object get(String name) {
+		switch (name) {
+		case "lastModifiedTime":
+			return lastModifiedTime();
+		case "lastAccessTime":
+			return lastAccessTime();
+		case "creationTime":
+			return creationTime();
+		case "size":
+			return size();
+		case "isRegularFile":
+			return isRegularFile();
+		case "isDirectory":
+			return isDirectory();
+		case "isSymbolicLink":
+			return isSymbolicLink();
+		case "isOther":
+			return isOther();
+		case "fileKey":
+			return fileKey();
+		default:
+			throw new IllegalArgumentException("Attribute '" + name + "' not recognized");
+		}
 	}
 
 	@Override
@@ -76,8 +134,13 @@ class GitHubFileAttributes implements BasicFileAttributes {
 		return size;
 	}
 
+	/**
+	 * Returns the git blob SHA of a file, which only changes with its
+	 * content. Paths without a known SHA (directories and files that were
+	 * only looked up on the raw endpoint) are keyed by their URI.
+	 */
 	@Override
 	public @NonNull Object fileKey() {
-		return path.toUri();
+		return sha != null ? sha : path.toUri();
 	}
 }
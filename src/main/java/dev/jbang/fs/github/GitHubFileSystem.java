@@ -3,27 +3,309 @@ package dev.jbang.fs.github;
 import java.io.IOException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 
 /**
  * A FileSystem implementation for GitHub repositories.
  */
 public class GitHubFileSystem extends FileSystem {
 
+	/**
+	 * Environment key for the shortest interval, in milliseconds or as an
+	 * ISO-8601 duration, between two polls of a {@link WatchService}. Must be
+	 * positive.
+	 */
+	public static final String ENV_WATCH_POLL_INTERVAL = "watchPollInterval";
+
+	/**
+	 * Environment key for the longest interval between two polls of a
+	 * {@link WatchService} when nothing changes.
+	 */
+	public static final String ENV_WATCH_MAX_POLL_INTERVAL = "watchMaxPollInterval";
+
+	/**
+	 * Environment key for the size in bytes up to which file content that
+	 * arrives with a metadata response is kept in memory to serve later reads.
+	 */
+	public static final String ENV_INLINE_CONTENT_THRESHOLD = "inlineContentThreshold";
+
+	/**
+	 * Environment key selecting how paths are looked up when the tree index
+	 * isn't loaded: {@value #ACCESS_MODE_API} (the default) uses the REST API
+	 * for everything, {@value #ACCESS_MODE_RAW} answers existence and size of
+	 * regular files from the raw content endpoint, which isn't subject to the
+	 * REST API rate limit, and only uses the API for directories.
+	 */
+	public static final String ENV_ACCESS_MODE = "accessMode";
+
+	public static final String ACCESS_MODE_API = "api";
+	public static final String ACCESS_MODE_RAW = "raw";
+
+	/**
+	 * Environment key for the priority of requests made through the Files API
+	 * on this filesystem: "interactive" (the default), "normal" or
+	 * "background". Filesystems used for bulk jobs can be set to background
+	 * so they don't slow down other filesystems of the same provider.
+	 */
+	public static final String ENV_REQUEST_PRIORITY = "requestPriority";
+
+	/**
+	 * Environment key for the most requests this filesystem may have in
+	 * flight at the same time, out of the limit shared by all filesystems of
+	 * the provider. Unlimited by default.
+	 */
+	public static final String ENV_MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+
+	/**
+	 * Environment key for the base URL of the REST API, e.g.
+	 * {@code https://ghe.example.com/api/v3}. Defaults to the public API for
+	 * {@code github.com} URIs and to the Enterprise Server layout otherwise.
+	 */
+	public static final String ENV_API_URL = "apiUrl";
+
+	/**
+	 * Environment key for the base URL of the raw content endpoint, serving
+	 * {@code {base}/{owner}/{repo}/{ref}/{path}}.
+	 */
+	public static final String ENV_RAW_URL = "rawUrl";
+
+	/**
+	 * Environment key for the base URL archives are downloaded from, using
+	 * the API layout {@code {base}/repos/{owner}/{repo}/zipball/{ref}}.
+	 * Defaults to the API URL.
+	 */
+	public static final String ENV_ARCHIVE_URL = "archiveUrl";
+
+	/**
+	 * Environment key for mirrors of the raw content endpoint, as a
+	 * collection or a comma separated string of base URLs in order of
+	 * preference. File content is read from the fastest healthy source, the
+	 * others take over when it fails.
+	 */
+	public static final String ENV_MIRRORS = "mirrors";
+
+	/**
+	 * Environment key for the size in bytes from which files are downloaded
+	 * as several byte ranges in parallel, which can resume after an
+	 * interruption. Defaults to 16 MiB.
+	 */
+	public static final String ENV_CHUNKED_DOWNLOAD_THRESHOLD = "chunkedDownloadThreshold";
+
+	/**
+	 * Environment key for the size in bytes of the ranges of a chunked
+	 * download. Defaults to 4 MiB.
+	 */
+	public static final String ENV_DOWNLOAD_CHUNK_SIZE = "downloadChunkSize";
+
+	/**
+	 * Environment key for a token to authenticate API requests with. Needed
+	 * for GraphQL, which lets last modified times be fetched for a whole
+	 * directory in a single request.
+	 */
+	public static final String ENV_TOKEN = "token";
+
+	/**
+	 * Environment key forcing how single paths are looked up while the tree
+	 * index isn't loaded: "contents" (path by path) or "tree" (load the
+	 * index). By default the choice is made from the number of lookups so far
+	 * and the remaining rate limit.
+	 */
+	public static final String ENV_STAT_STRATEGY = "statStrategy";
+
+	/**
+	 * Environment key forcing how {@link #walk(Path, int)} lists directories
+	 * while the tree index isn't loaded: "contents" or "tree".
+	 */
+	public static final String ENV_WALK_STRATEGY = "walkStrategy";
+
+	/**
+	 * Environment key forcing how {@link #materialize} fetches files in
+	 * {@link MaterializeOptions.Mode#AUTO} mode: "contents" (file by file) or
+	 * "archive".
+	 */
+	public static final String ENV_READ_STRATEGY = "readStrategy";
+
+	/**
+	 * Environment key for glob patterns of the paths to include, relative to
+	 * the filesystem root, as a collection or a comma separated string.
+	 * Everything else behaves as if it didn't exist and is never fetched.
+	 */
+	public static final String ENV_INCLUDE = "include";
+
+	/**
+	 * Environment key for glob patterns of the paths to exclude, see
+	 * {@link #ENV_INCLUDE}. Excludes win over includes.
+	 */
+	public static final String ENV_EXCLUDE = "exclude";
+
+	/**
+	 * Environment key enabling predictive prefetch: the provider learns
+	 * which files are read after which and fetches the likely next ones in
+	 * the background. Defaults to false.
+	 */
+	public static final String ENV_PREFETCH = "prefetch";
+
+	/**
+	 * Environment key for how long cached listings, attributes and content
+	 * of a branch or tag are used without checking whether it moved, in
+	 * milliseconds or as an ISO-8601 duration. Unset, the filesystem only
+	 * checks on {@link #refresh()}. Refs that are commit SHAs never change.
+	 */
+	public static final String ENV_MAX_AGE = "maxAge";
+
+	/**
+	 * Environment key for how long past {@link #ENV_MAX_AGE} cached data is
+	 * still returned right away, while a single conditional request in the
+	 * background checks the ref. Beyond that window reads wait for the
+	 * check. Defaults to 0.
+	 */
+	public static final String ENV_STALE_WHILE_REVALIDATE = "staleWhileRevalidate";
+
+	/**
+	 * Environment key enabling last modified times from the commit history:
+	 * the date of the last commit that touched a path, which costs a request
+	 * per path, or per directory with a {@link #ENV_TOKEN}. Defaults to
+	 * false, leaving the date of the commit the filesystem reads from, the
+	 * same for every path.
+	 */
+	public static final String ENV_COMMIT_TIMES = "commitTimes";
+
+	private static final Set<String> SUPPORTED_VIEWS = Collections
+		.unmodifiableSet(new java.util.LinkedHashSet<>(Arrays.asList("basic", GitHubObjectAttributes.VIEW)));
+
+	private static final Logger LOGGER = Logger.getLogger(GitHubFileSystem.class.getName());
+
+	private static final int TREE_FETCH_PARALLELISM = 8;
+
+	private static final Pattern COMMIT_SHA = Pattern.compile("[0-9a-f]{40}");
+
+	private static final long MAX_INLINE_CONTENT_BYTES = 32 * 1024 * 1024;
+
 	private final GitHubFileSystemProvider provider;
 	private final GitHubRepoInfo repoInfo;
+	private final GitHubEndpoints endpoints;
+	private final Map<String, ?> env;
+	private final GitTreeStore treeStore;
+	private final PathFilter pathFilter;
+	private final Prefetcher.@Nullable Session prefetchSession;
+	private final Set<GitHubWatchService> watchServices = new CopyOnWriteArraySet<>();
+	private final long watchPollInterval;
+	private final long watchMaxPollInterval;
+	private final long inlineContentThreshold;
+	private final boolean rawAccessMode;
+	private final long chunkedDownloadThreshold;
+	private final int downloadChunkSize;
+	private final RequestPriority requestPriority;
+	private final int maxConcurrentRequests;
+	private final @Nullable String token;
+	private final @Nullable LastModifiedTimes lastModifiedTimes;
+	private final Map<AccessPlanner.Operation, AccessPlanner.Strategy> strategies = new EnumMap<>(
+			AccessPlanner.Operation.class);
+	private final AtomicInteger contentsRequests = new AtomicInteger();
+	private final Map<String, Path> contentCache = new ConcurrentHashMap<>();
+	/** Files read at the ref without an index, kept under the max age policy. */
+	private final Map<String, Path> refContentCache = new ConcurrentHashMap<>();
+	private final ContentInfoCache contentInfoCache = new ContentInfoCache(MAX_INLINE_CONTENT_BYTES);
+	private final Object indexLock = new Object();
+	private volatile @Nullable GitHubTreeIndex index;
+	private @Nullable String indexEtag;
+	private final Object headLock = new Object();
+	/** The date of the commit {@link #commitTimeSha}, guarded by the head lock. */
+	private @Nullable FileTime commitTime;
+	private @Nullable String commitTimeSha;
+	private @Nullable String headEtag;
+	private @Nullable String headSha;
+	private final long maxAge;
+	private final long staleWhileRevalidate;
+	/** When the ref was last checked, 0 if it wasn't yet. */
+	private volatile long verifiedAt;
+	private final AtomicBoolean revalidating = new AtomicBoolean();
 	private volatile boolean open = true;
 
-	GitHubFileSystem(GitHubFileSystemProvider provider, GitHubRepoInfo repoInfo) {
+	GitHubFileSystem(GitHubFileSystemProvider provider, GitHubRepoInfo repoInfo, Map<String, ?> env) {
 		this.provider = provider;
 		this.repoInfo = repoInfo;
+		this.endpoints = GitHubEndpoints.of(repoInfo, env);
+		this.env = Collections.unmodifiableMap(new java.util.HashMap<>(env));
+		this.treeStore = provider.getTreeStore(this);
+		this.pathFilter = new PathFilter(this, EnvOptions.getList(env, ENV_INCLUDE),
+				EnvOptions.getList(env, ENV_EXCLUDE));
+		this.prefetchSession = EnvOptions.getBoolean(env, ENV_PREFETCH, false) ? new Prefetcher.Session() : null;
+		this.maxAge = COMMIT_SHA.matcher(repoInfo.getRef()).matches() ? -1 : EnvOptions.getMillis(env, ENV_MAX_AGE, -1);
+		this.staleWhileRevalidate = Math.max(0, EnvOptions.getMillis(env, ENV_STALE_WHILE_REVALIDATE, 0));
+		this.watchPollInterval = EnvOptions.getMillis(env, ENV_WATCH_POLL_INTERVAL, 2000);
+		this.watchMaxPollInterval = EnvOptions.getMillis(env, ENV_WATCH_MAX_POLL_INTERVAL, 60000);
+		if (watchPollInterval <= 0) {
+			throw new IllegalArgumentException("Invalid watch poll interval: " + watchPollInterval);
+		}
+		this.inlineContentThreshold = EnvOptions.getLong(env, ENV_INLINE_CONTENT_THRESHOLD, 1024 * 1024);
+		String accessMode = EnvOptions.getString(env, ENV_ACCESS_MODE, ACCESS_MODE_API);
+		if (!ACCESS_MODE_API.equals(accessMode) && !ACCESS_MODE_RAW.equals(accessMode)) {
+			throw new IllegalArgumentException("Invalid access mode: " + accessMode);
+		}
+		this.rawAccessMode = ACCESS_MODE_RAW.equals(accessMode);
+		String priority = EnvOptions.getString(env, ENV_REQUEST_PRIORITY, "interactive");
+		try {
+			this.requestPriority = RequestPriority.valueOf(priority.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid request priority: " + priority);
+		}
+		this.maxConcurrentRequests = EnvOptions.getInt(env, ENV_MAX_CONCURRENT_REQUESTS, Integer.MAX_VALUE);
+		this.chunkedDownloadThreshold = EnvOptions.getLong(env, ENV_CHUNKED_DOWNLOAD_THRESHOLD, 16 * 1024 * 1024);
+		this.downloadChunkSize = EnvOptions.getInt(env, ENV_DOWNLOAD_CHUNK_SIZE, 4 * 1024 * 1024);
+		if (downloadChunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid download chunk size: " + downloadChunkSize);
+		}
+		String token = EnvOptions.getString(env, ENV_TOKEN, "");
+		this.token = token.isEmpty() ? null : token;
+		this.lastModifiedTimes = EnvOptions.getBoolean(env, ENV_COMMIT_TIMES, false) ? new LastModifiedTimes(this)
+				: null;
+		putStrategy(env, ENV_STAT_STRATEGY, AccessPlanner.Operation.STAT, AccessPlanner.Strategy.CONTENTS,
+				AccessPlanner.Strategy.TREE);
+		putStrategy(env, ENV_WALK_STRATEGY, AccessPlanner.Operation.WALK, AccessPlanner.Strategy.CONTENTS,
+				AccessPlanner.Strategy.TREE);
+		putStrategy(env, ENV_READ_STRATEGY, AccessPlanner.Operation.READ, AccessPlanner.Strategy.CONTENTS,
+				AccessPlanner.Strategy.ARCHIVE);
+	}
+
+	private void putStrategy(Map<String, ?> env, String key, AccessPlanner.Operation operation,
+			AccessPlanner.Strategy... allowed) {
+		AccessPlanner.Strategy strategy = AccessPlanner.Strategy.parse(key, EnvOptions.getString(env, key, "auto"));
+		if (strategy != null) {
+			if (!Arrays.asList(allowed).contains(strategy)) {
+				throw new IllegalArgumentException("Invalid " + key + ": " + strategy.name().toLowerCase(Locale.ROOT));
+			}
+			strategies.put(operation, strategy);
+		}
 	}
 
 	@Override
@@ -35,6 +317,9 @@ public class GitHubFileSystem extends FileSystem {
 	public void close() throws IOException {
 		if (open) {
 			open = false;
+			for (GitHubWatchService watchService : watchServices) {
+				watchService.close();
+			}
 			provider.removeFileSystem(this);
 		}
 	}
@@ -66,7 +351,7 @@ public class GitHubFileSystem extends FileSystem {
 
 	@Override
 	public Set<String> supportedFileAttributeViews() {
-		return Collections.singleton("basic");
+		return SUPPORTED_VIEWS;
 	}
 
 	@Override
@@ -102,10 +387,648 @@ public class GitHubFileSystem extends FileSystem {
 
 	@Override
 	public WatchService newWatchService() throws IOException {
-		throw new UnsupportedOperationException("WatchService not supported");
+		if (!open) {
+			throw new java.nio.file.ClosedFileSystemException();
+		}
+		GitHubWatchService watchService = new GitHubWatchService(this, watchPollInterval, watchMaxPollInterval);
+		watchServices.add(watchService);
+		return watchService;
+	}
+
+	void removeWatchService(GitHubWatchService watchService) {
+		watchServices.remove(watchService);
 	}
 
 	GitHubRepoInfo getRepoInfo() {
 		return repoInfo;
 	}
+
+	ContentInfoCache getContentInfoCache() {
+		return contentInfoCache;
+	}
+
+	GitHubEndpoints getEndpoints() {
+		return endpoints;
+	}
+
+	long getChunkedDownloadThreshold() {
+		return chunkedDownloadThreshold;
+	}
+
+	int getDownloadChunkSize() {
+		return downloadChunkSize;
+	}
+
+	@Nullable
+	String getToken() {
+		return token;
+	}
+
+	/**
+	 * Returns the strategy forced for an operation, null to let the planner
+	 * decide.
+	 */
+	AccessPlanner.@Nullable Strategy getStrategy(AccessPlanner.Operation operation) {
+		return strategies.get(operation);
+	}
+
+	/**
+	 * Returns the number of per-path {@code /contents} requests made so far.
+	 */
+	int getContentsRequests() {
+		return contentsRequests.get();
+	}
+
+	void countContentsRequest() {
+		contentsRequests.incrementAndGet();
+	}
+
+	@Nullable
+	LastModifiedTimes getLastModifiedTimes() {
+		return lastModifiedTimes;
+	}
+
+	boolean isRawAccessMode() {
+		return rawAccessMode;
+	}
+
+	/**
+	 * Runs the requests of the calling thread on behalf of this filesystem,
+	 * with the priority configured for it, until the scope is closed.
+	 */
+	RequestContext.Scope requestScope() {
+		return requestScope(requestPriority);
+	}
+
+	RequestContext.Scope requestScope(RequestPriority priority) {
+		return newRequestContext(priority).enter();
+	}
+
+	RequestContext newRequestContext(RequestPriority priority) {
+		return new RequestContext(this, priority, maxConcurrentRequests);
+	}
+
+	long getInlineContentThreshold() {
+		return inlineContentThreshold;
+	}
+
+	GitTreeStore getTreeStore() {
+		return treeStore;
+	}
+
+	PathFilter getPathFilter() {
+		return pathFilter;
+	}
+
+	Prefetcher.@Nullable Session getPrefetchSession() {
+		return prefetchSession;
+	}
+
+	/**
+	 * Returns how many files were read and prefetched so far, and how many
+	 * of the prefetched ones were read. All zero unless {@link #ENV_PREFETCH}
+	 * is set.
+	 */
+	public PrefetchStats getPrefetchStats() {
+		return prefetchSession != null ? prefetchSession.stats() : new PrefetchStats(0, 0, 0);
+	}
+
+	/**
+	 * Opens a filesystem for another ref (branch, tag or commit) of the same
+	 * repository, with the same base path and options. The two share the
+	 * tree objects they load, so subtrees that didn't change between the
+	 * refs are held and fetched only once.
+	 *
+	 * @param ref the branch, tag or commit SHA
+	 * @return the new filesystem
+	 * @throws java.nio.file.FileSystemAlreadyExistsException if a filesystem
+	 *         for that ref is already open
+	 */
+	public GitHubFileSystem withRef(String ref) throws IOException {
+		GitHubRepoInfo sibling = new GitHubRepoInfo(repoInfo.getHost(), repoInfo.getOwner(), repoInfo.getRepo(), ref,
+				repoInfo.getBasePath());
+		return (GitHubFileSystem) provider.newFileSystem(GitHubFileSystemProvider.toGitHubUri(sibling), env);
+	}
+
+	/**
+	 * Brings the filesystem up to date with the current head of its ref.
+	 *
+	 * The first call loads the tree index, pinning the filesystem to the commit
+	 * the ref points to at that moment. Later calls check the head with a
+	 * conditional request and, when it moved, patch the index by comparing the
+	 * old and new trees: only subtrees whose SHA changed are fetched and only
+	 * the changed paths are evicted from the caches. Cached content of
+	 * unchanged files stays valid.
+	 *
+	 * @return the paths that were added, removed or modified since the last
+	 *         refresh
+	 * @throws IOException if the repository can't be reached
+	 */
+	@SuppressWarnings("try")
+	public List<Path> refresh() throws IOException {
+		long started = System.currentTimeMillis();
+		try (RequestContext.Scope scope = requestScope(RequestPriority.NORMAL)) {
+			List<Path> changed = refreshIndex();
+			verified(started);
+			return changed;
+		}
+	}
+
+	/**
+	 * Applies the {@link #ENV_MAX_AGE} policy before cached data is used:
+	 * within the max age it is used as is, within the stale window as well
+	 * but the ref is checked in the background, at most once at a time, and
+	 * beyond that the ref is checked right away.
+	 */
+	@SuppressWarnings("try")
+	void checkFreshness() throws IOException {
+		if (maxAge < 0) {
+			return;
+		}
+		long age = System.currentTimeMillis() - verifiedAt;
+		if (age <= maxAge) {
+			return;
+		}
+		// Nothing was checked yet means nothing is cached yet either
+		if (verifiedAt == 0 || age > maxAge + staleWhileRevalidate) {
+			revalidate();
+		} else if (revalidating.compareAndSet(false, true)) {
+			try {
+				provider.getBackgroundExecutor().execute(() -> {
+					try (RequestContext.Scope scope = requestScope(RequestPriority.NORMAL)) {
+						revalidate();
+					} catch (IOException | RuntimeException e) {
+						LOGGER.log(Level.FINE, "Revalidating " + repoInfo.getRef() + " failed", e);
+					} finally {
+						revalidating.set(false);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				revalidating.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Checks the head of the ref with a conditional request and evicts what
+	 * changed since the last check.
+	 */
+	private void revalidate() throws IOException {
+		long started = System.currentTimeMillis();
+		synchronized (indexLock) {
+			if (index != null) {
+				refreshIndex();
+			} else {
+				synchronized (headLock) {
+					String previous = headSha;
+					HttpResponse response = provider.fetchHead(this, headEtag);
+					if (response.getStatusCode() != 304) {
+						headEtag = response.header("ETag");
+						headSha = response.getBodyAsString().trim();
+						if (previous == null) {
+							// Cached before anything was checked, it could be from any commit
+							invalidateAll();
+						} else if (!previous.equals(headSha)) {
+							invalidate(diff(resolveRootTree(previous), resolveRootTree(headSha)));
+						}
+					}
+				}
+			}
+		}
+		verified(started);
+	}
+
+	private void verified(long at) {
+		if (at > verifiedAt) {
+			verifiedAt = at;
+		}
+	}
+
+	private List<Path> refreshIndex() throws IOException {
+		synchronized (indexLock) {
+			GitHubTreeIndex current = index;
+			if (current == null) {
+				getIndex();
+				return Collections.emptyList();
+			}
+			HttpResponse response = provider.fetchHead(this, indexEtag);
+			if (response.getStatusCode() == 304) {
+				return Collections.emptyList();
+			}
+			indexEtag = response.header("ETag");
+			String commitSha = response.getBodyAsString().trim();
+			if (commitSha.equals(current.getCommitSha())) {
+				return Collections.emptyList();
+			}
+			String rootTreeSha = resolveRootTree(commitSha);
+			List<Path> changed = diff(current.getRootTreeSha(), rootTreeSha);
+			index = new GitHubTreeIndex(commitSha, rootTreeSha, treeStore, pathFilter);
+			invalidate(changed);
+			return changed;
+		}
+	}
+
+	/**
+	 * Returns the paths that differ between two root trees.
+	 */
+	private List<Path> diff(String oldRootTreeSha, String newRootTreeSha) throws IOException {
+		List<Path> changed = new ArrayList<>();
+		Iterator<GitTreeDiff.Change> diff = new GitTreeDiff(treeStore, treeStore, oldRootTreeSha, newRootTreeSha)
+			.filter(pathFilter, "", pathFilter, "");
+		try {
+			while (diff.hasNext()) {
+				changed.add(getPath("/" + diff.next().getPath()));
+			}
+		} catch (java.io.UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return changed;
+	}
+
+	/**
+	 * Applies a push to the ref as reported by a webhook, without asking
+	 * GitHub what changed: the index moves from {@code before} to
+	 * {@code after} and only the pushed paths are evicted. Without an index
+	 * only the caches are evicted. If the index isn't at {@code before},
+	 * e.g. because a push was missed, or the paths aren't known, this falls
+	 * back to comparing the trees like {@link #refresh()}.
+	 *
+	 * @param changedPaths the repository paths added, removed or modified,
+	 *        or null if they aren't known
+	 * @return the paths of this filesystem that changed
+	 */
+	@SuppressWarnings("try")
+	List<Path> applyPush(String before, String after, @Nullable Collection<String> changedPaths)
+			throws IOException {
+		try (RequestContext.Scope scope = requestScope(RequestPriority.NORMAL)) {
+			synchronized (indexLock) {
+				GitHubTreeIndex current = index;
+				if (current != null && current.getCommitSha().equals(after)) {
+					return Collections.emptyList();
+				}
+				if (current != null && (changedPaths == null || !current.getCommitSha().equals(before))) {
+					return refreshIndex();
+				}
+				synchronized (headLock) {
+					// The ETag is that of the old head, and an unknown head makes the next check evict everything
+					headEtag = null;
+					headSha = changedPaths != null && before.equals(headSha) ? after : null;
+				}
+				if (changedPaths == null) {
+					invalidateAll();
+					return Collections.emptyList();
+				}
+				List<Path> changed = new ArrayList<>();
+				String base = repoInfo.getBasePath().replaceAll("^/+|/+$", "");
+				for (String repoPath : changedPaths) {
+					String path = base.isEmpty() ? repoPath
+							: repoPath.startsWith(base + "/") ? repoPath.substring(base.length() + 1) : null;
+					if (path != null && pathFilter.accepts(path, false)) {
+						changed.add(getPath("/" + path));
+					}
+				}
+				if (current != null) {
+					index = new GitHubTreeIndex(after, resolveRootTree(after), treeStore, pathFilter);
+					indexEtag = null;
+				}
+				invalidate(changed);
+				verified(System.currentTimeMillis());
+				return changed;
+			}
+		}
+	}
+
+	/**
+	 * Copies a file or directory of this filesystem to a local path.
+	 *
+	 * The files to copy are enumerated from the tree index. Local files that
+	 * already have the same content (by git blob SHA) are left untouched, the
+	 * others are downloaded with bounded parallelism or, for large subtrees,
+	 * extracted from a single archive of the commit. Each file is written to a
+	 * temporary file and atomically renamed into place.
+	 *
+	 * @param source the file or directory to copy
+	 * @param localTarget the local file or directory to create or update
+	 * @param options parallelism, fetch mode and progress reporting
+	 * @throws IOException if the content can't be fetched or written
+	 */
+	@SuppressWarnings("try")
+	public void materialize(Path source, Path localTarget, MaterializeOptions options) throws IOException {
+		if (!(source instanceof GitHubPath) || source.getFileSystem() != this) {
+			throw new java.nio.file.ProviderMismatchException("Path is not a path of this filesystem: " + source);
+		}
+		if (localTarget instanceof GitHubPath) {
+			throw new UnsupportedOperationException("GitHub filesystem is read-only");
+		}
+		try (RequestContext.Scope scope = requestScope(RequestPriority.BACKGROUND)) {
+			new GitHubMaterializer(this, getIndex(), options).materialize((GitHubPath) source, localTarget);
+		}
+	}
+
+	/**
+	 * Returns the tree index, loading it first if needed.
+	 */
+	GitHubTreeIndex getIndex() throws IOException {
+		GitHubTreeIndex current = loadIndex(false);
+		if (current == null) {
+			throw new IllegalStateException("Index not loaded");
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the tree index, loading it first if that takes one recursive
+	 * request. Returns null if the recursive tree comes back truncated, then
+	 * {@link #isTreeLoadableAtOnce()} tells not to try again.
+	 */
+	@Nullable
+	GitHubTreeIndex getIndexIfLoadableAtOnce() throws IOException {
+		return loadIndex(true);
+	}
+
+	@Nullable
+	private GitHubTreeIndex loadIndex(boolean atOnce) throws IOException {
+		GitHubTreeIndex current = index;
+		if (current != null) {
+			return current;
+		}
+		synchronized (indexLock) {
+			if (index == null) {
+				if (atOnce && !isTreeLoadableAtOnce()) {
+					return null;
+				}
+				HttpResponse response = provider.fetchHead(this, null);
+				String etag = response.header("ETag");
+				String commitSha = response.getBodyAsString().trim();
+				String sharedRoot = sharedRootTree(commitSha);
+				String rootTreeSha;
+				if (sharedRoot != null) {
+					// Another ref already loaded most of it, only fetch the trees that differ
+					rootTreeSha = sharedRoot;
+					treeStore.loadAll(rootTreeSha, TREE_FETCH_PARALLELISM, pathFilter);
+				} else if (pathFilter.hasIncludes()
+						|| Boolean.TRUE.equals(treeStore.isTruncated(repoInfo.getBasePath()))) {
+					// Only fetch the trees that are included, and those leading to them, or
+					// a tree known to be too big to get in one go
+					rootTreeSha = resolveRootTree(commitSha);
+					treeStore.loadAll(rootTreeSha, TREE_FETCH_PARALLELISM, pathFilter);
+				} else {
+					// Fetch everything below the root in one go instead of tree by tree
+					GitTree recursive;
+					if (repoInfo.getBasePath().isEmpty()) {
+						recursive = provider.fetchRecursiveTree(this, commitSha);
+						treeStore.putCommitTree(commitSha, recursive.getSha());
+					} else {
+						recursive = provider.fetchRecursiveTree(this, resolveRootTree(commitSha));
+					}
+					treeStore.putTruncated(repoInfo.getBasePath(), recursive.isTruncated());
+					rootTreeSha = recursive.getSha();
+					if (!recursive.isTruncated()) {
+						// Excluded trees come along, but aren't kept
+						for (GitTree tree : GitTree.splitRecursive(recursive, dir -> pathFilter.accepts(dir, true))) {
+							treeStore.put(tree);
+						}
+					} else if (atOnce) {
+						return null;
+					} else {
+						// Too big to get in one go, fetch it tree by tree instead of missing entries
+						treeStore.loadAll(rootTreeSha, TREE_FETCH_PARALLELISM, pathFilter);
+					}
+				}
+				indexEtag = etag;
+				index = new GitHubTreeIndex(commitSha, rootTreeSha, treeStore, pathFilter);
+				// From now on the index answers, and it may be at a newer commit than the cache
+				contentInfoCache.invalidateAll();
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Returns the root tree of the commit if the store shared with the other
+	 * refs of the repository already holds most of its subtrees, null if it
+	 * is cheaper to fetch the tree recursively.
+	 */
+	@Nullable
+	private String sharedRootTree(String commitSha) throws IOException {
+		if (treeStore.size() == 0) {
+			return null;
+		}
+		String rootTreeSha = resolveRootTree(commitSha);
+		int subtrees = 0;
+		int shared = 0;
+		for (GitTreeEntry entry : treeStore.get(rootTreeSha).getEntries()) {
+			if (entry.isTree() && pathFilter.accepts(entry.getName(), true)) {
+				subtrees++;
+				if (treeStore.getIfPresent(entry.getSha()) != null) {
+					shared++;
+				}
+			}
+		}
+		return shared * 2 >= subtrees ? rootTreeSha : null;
+	}
+
+	/**
+	 * Returns whether loading the tree index is expected to take one
+	 * recursive request, until the recursive tree comes back truncated.
+	 */
+	boolean isTreeLoadableAtOnce() {
+		return !Boolean.TRUE.equals(treeStore.isTruncated(repoInfo.getBasePath())) && !pathFilter.hasIncludes();
+	}
+
+	/**
+	 * Returns the tree index if it has been loaded, null otherwise.
+	 */
+	@Nullable
+	GitHubTreeIndex getLoadedIndex() {
+		return index;
+	}
+
+	/**
+	 * Walks the file tree below a path like
+	 * {@link java.nio.file.Files#walk(Path, java.nio.file.FileVisitOption...)},
+	 * listing up to the given number of directories at the same time, ahead
+	 * of the consumer. The stream splits by subtree, so it also scales when
+	 * made parallel. Close the stream to stop the listings still running.
+	 *
+	 * @param start the path to start at
+	 * @param parallelism the most directories listed at the same time
+	 * @return a stream of the start path and everything below it
+	 * @throws IOException if the start path can't be looked up
+	 */
+	@SuppressWarnings("try")
+	public Stream<Path> walk(Path start, int parallelism) throws IOException {
+		if (!(start instanceof GitHubPath) || start.getFileSystem() != this) {
+			throw new java.nio.file.ProviderMismatchException("Path is not a path of this filesystem: " + start);
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		try (RequestContext.Scope scope = requestScope()) {
+			return new GitHubTreeWalker(this, parallelism, RequestContext.current()).walk((GitHubPath) start);
+		}
+	}
+
+	/**
+	 * Looks up many paths at once, e.g. to find which of a list of candidates
+	 * exist. Answered from the tree index when it is loaded. Otherwise the
+	 * parent directories are listed, each one once and in parallel, and the
+	 * answers, including the negative ones, are cached for later lookups.
+	 *
+	 * @param paths paths of this filesystem
+	 * @return the attributes of the paths that exist, in the order given;
+	 *         paths that don't exist have no entry
+	 * @throws IOException if the repository can't be reached
+	 */
+	@SuppressWarnings("try")
+	public Map<Path, BasicFileAttributes> statAll(Collection<? extends Path> paths) throws IOException {
+		List<GitHubPath> ghPaths = new ArrayList<>();
+		for (Path path : paths) {
+			if (!(path instanceof GitHubPath) || path.getFileSystem() != this) {
+				throw new java.nio.file.ProviderMismatchException("Path is not a path of this filesystem: " + path);
+			}
+			ghPaths.add((GitHubPath) path);
+		}
+		try (RequestContext.Scope scope = requestScope()) {
+			return provider.statAll(this, ghPaths);
+		}
+	}
+
+	/**
+	 * Returns the commit the filesystem currently reads from: the commit of
+	 * the index when it is loaded, otherwise the head of the ref. The head is
+	 * fetched once and then kept like the other caches, until a refresh or
+	 * the {@link #ENV_MAX_AGE} policy checks it again.
+	 */
+	String getCommitSha() throws IOException {
+		GitHubTreeIndex current = index;
+		if (current != null) {
+			return current.getCommitSha();
+		}
+		synchronized (headLock) {
+			if (headSha != null) {
+				return headSha;
+			}
+			HttpResponse response = provider.fetchHead(this, headEtag);
+			if (response.getStatusCode() != 304) {
+				headEtag = response.header("ETag");
+				headSha = response.getBodyAsString().trim();
+			}
+			return headSha;
+		}
+	}
+
+	/**
+	 * Returns the date of the commit the filesystem currently reads from, see
+	 * {@link #getCommitSha()}. It is fetched once per commit.
+	 */
+	FileTime getCommitTime() throws IOException {
+		String commitSha = getCommitSha();
+		synchronized (headLock) {
+			if (commitSha.equals(commitTimeSha)) {
+				return commitTime;
+			}
+		}
+		FileTime time = FileTime.from(provider.fetchLastCommitDate(this, commitSha, ""));
+		synchronized (headLock) {
+			commitTimeSha = commitSha;
+			commitTime = time;
+		}
+		return time;
+	}
+
+	/**
+	 * Resolves the tree entry of a path without loading the full index: when
+	 * the index isn't loaded only the trees along the path are fetched, at the
+	 * head of the ref from {@link #getCommitSha()}. Returns null if the path
+	 * doesn't exist.
+	 */
+	@Nullable
+	GitTreeEntry resolveEntry(GitHubPath path) throws IOException {
+		GitHubTreeIndex current = index;
+		if (current != null) {
+			return current.lookup(path);
+		}
+		String pathString = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		if (!pathFilter.accepts(pathString, true)) {
+			return null;
+		}
+		GitTree commitTree = treeStore.getCommitTree(getCommitSha());
+		GitTreeEntry entry = treeStore.resolve(commitTree.getSha(), provider.toRepoRelativePath(path));
+		return entry != null && pathFilter.accepts(pathString, entry.isTree()) ? entry : null;
+	}
+
+	/**
+	 * Finds the SHA of the tree the filesystem root maps to in the given commit.
+	 */
+	private String resolveRootTree(String commitSha) throws IOException {
+		GitTree commitTree = treeStore.getCommitTree(commitSha);
+		GitTreeEntry base = treeStore.resolve(commitTree.getSha(), repoInfo.getBasePath());
+		if (base == null) {
+			throw new NoSuchFileException(repoInfo.getBasePath());
+		}
+		if (!base.isTree()) {
+			throw new NotDirectoryException(repoInfo.getBasePath());
+		}
+		return base.getSha();
+	}
+
+	/**
+	 * Returns the locally cached content of a file in the index, downloading
+	 * it if needed.
+	 */
+	Path getCachedContent(GitHubPath path, GitHubTreeIndex index) throws IOException {
+		String key = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		Path cached = contentCache.get(key);
+		if (cached != null && java.nio.file.Files.isRegularFile(cached)) {
+			return cached;
+		}
+		GitTreeEntry entry = index.lookup(path);
+		if (entry == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		if (!entry.isBlob()) {
+			throw new IOException("Not a regular file: " + path);
+		}
+		cached = provider.getBlob(path, entry.getSha(), entry.getSize(), index.getCommitSha());
+		contentCache.put(key, cached);
+		return cached;
+	}
+
+	/**
+	 * Returns the content of a file read at the ref rather than at the
+	 * commit of an index, downloading it if needed. It is only kept when a
+	 * {@link #ENV_MAX_AGE} policy evicts it once the ref moves.
+	 */
+	Path getRefContent(GitHubPath path, ResilientHttpClient.Call<Path> download) throws IOException {
+		String key = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		if (maxAge < 0) {
+			return download.run();
+		}
+		Path cached = refContentCache.get(key);
+		if (cached != null && java.nio.file.Files.isRegularFile(cached)) {
+			return cached;
+		}
+		cached = download.run();
+		refContentCache.put(key, cached);
+		return cached;
+	}
+
+	private void invalidateAll() {
+		contentCache.clear();
+		refContentCache.clear();
+		contentInfoCache.invalidateAll();
+	}
+
+	/**
+	 * Drops everything cached for the given paths.
+	 */
+	void invalidate(Iterable<Path> paths) {
+		for (Path path : paths) {
+			String key = ((GitHubPath) path).getPathString();
+			contentCache.remove(key);
+			refContentCache.remove(key);
+			contentInfoCache.invalidate(key);
+		}
+	}
 }
@@ -1,19 +1,33 @@
 package dev.jbang.fs.github;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jspecify.annotations.Nullable;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -36,19 +50,55 @@ import com.google.gson.JsonObject;
 public class GitHubFileSystemProvider extends FileSystemProvider {
 
 	private static final String SCHEME = "github";
-	private static final String GITHUB_API_BASE = "https://api.github.com/repos";
-	private static final String GITHUB_RAW_BASE = "https://raw.githubusercontent.com";
 
 	private final Map<URI, GitHubFileSystem> filesystems = new ConcurrentHashMap<>();
+	private static final int INITIAL_CONCURRENCY = 8;
+	private static final int MAX_CONCURRENCY = 64;
+	private static final int DOWNLOAD_CONNECTIONS = 4;
+	private static final int STAT_PARALLELISM = 8;
+
 	private final Gson gson = new Gson();
-	private final HttpClient httpClient;
+	private final ResilientHttpClient httpClient;
+	private final ConcurrencyLimiter concurrencyLimiter;
+	private final RateLimit rateLimit = new RateLimit();
+	private final AccessPlanner accessPlanner = new AccessPlanner(rateLimit);
+	private final BlobCache blobCache;
+	private final Map<String, Object> downloadLocks = new ConcurrentHashMap<>();
+	private final Map<String, GitTreeStore> treeStores = new ConcurrentHashMap<>();
+	private final Prefetcher prefetcher;
+	private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "github-fs-background");
+		t.setDaemon(true);
+		return t;
+	});
 
 	public GitHubFileSystemProvider() {
-		this.httpClient = new SimpleHttpClient();
+		this(defaultHttpClient());
 	}
 
 	public GitHubFileSystemProvider(HttpClient httpClient) {
-		this.httpClient = httpClient;
+		this(httpClient, BlobCache.defaultCacheDir());
+	}
+
+	public GitHubFileSystemProvider(HttpClient httpClient, Path cacheDir) {
+		// All requests of all filesystems of this provider share one adaptive concurrency budget
+		this(httpClient, cacheDir, new ConcurrencyLimiter(INITIAL_CONCURRENCY, 1, MAX_CONCURRENCY));
+	}
+
+	GitHubFileSystemProvider(HttpClient httpClient, Path cacheDir, ConcurrencyLimiter limiter) {
+		// Retries and hedges pass through the limiter like any other request
+		this.httpClient = new ResilientHttpClient(new LimitedHttpClient(httpClient, limiter));
+		this.concurrencyLimiter = limiter;
+		this.blobCache = new BlobCache(cacheDir);
+		this.prefetcher = new Prefetcher(this, cacheDir);
+	}
+
+	/**
+	 * Goes through the host's {@link GitHubCacheDaemon} if one is configured.
+	 */
+	private static HttpClient defaultHttpClient() {
+		String daemon = System.getProperty(DaemonHttpClient.DAEMON_PROPERTY, "");
+		return daemon.isEmpty() ? new SimpleHttpClient() : new DaemonHttpClient(daemon);
 	}
 
 	@Override
@@ -61,7 +111,7 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		if (filesystems.containsKey(uri)) {
 			throw new FileSystemAlreadyExistsException("FileSystem already exists for: " + uri);
 		}
-		GitHubFileSystem fs = new GitHubFileSystem(this, parseGitHubUri(uri));
+		GitHubFileSystem fs = new GitHubFileSystem(this, parseGitHubUri(uri), env);
 		filesystems.put(uri, fs);
 		return fs;
 	}
@@ -75,8 +125,42 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		return fs;
 	}
 
+	/**
+	 * Runs background checks of the filesystems' refs and the tree fetches
+	 * of {@link GitTreeStore#loadAll}.
+	 */
+	ExecutorService getBackgroundExecutor() {
+		return backgroundExecutor;
+	}
+
+	Collection<GitHubFileSystem> getOpenFileSystems() {
+		return filesystems.values();
+	}
+
 	void removeFileSystem(GitHubFileSystem fs) {
 		filesystems.entrySet().removeIf(entry -> entry.getValue() == fs);
+		if (fs.getPrefetchSession() != null) {
+			prefetcher.save(fs);
+		}
+		String key = repositoryKey(fs.getRepoInfo());
+		if (filesystems.values().stream().noneMatch(other -> repositoryKey(other.getRepoInfo()).equals(key))) {
+			// Nobody left to share the trees with
+			treeStores.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the tree store shared by the filesystems of all refs of a
+	 * repository, with the given filesystem's loader.
+	 */
+	GitTreeStore getTreeStore(GitHubFileSystem fs) {
+		return treeStores.computeIfAbsent(repositoryKey(fs.getRepoInfo()), key -> new GitTreeStore(sha -> {
+			throw new IllegalStateException("Trees are loaded through the filesystems");
+		}, backgroundExecutor)).withLoader(sha -> fetchTree(fs, sha));
+	}
+
+	private static String repositoryKey(GitHubRepoInfo repoInfo) {
+		return repoInfo.getHost() + "/" + repoInfo.getOwner() + "/" + repoInfo.getRepo();
 	}
 
 	@Override
@@ -94,77 +178,147 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		throw new UnsupportedOperationException("GitHub filesystem is read-only");
 	}
 
+	/**
+	 * Reads the attributes of the "basic" or the "github" view, see
+	 * {@link GitHubObjectAttributes}. Only the attributes that are asked for
+	 * are computed, so asking for the size doesn't fetch the commit history
+	 * and asking for the mode doesn't download the blob.
+	 */
 	@Override
+	@SuppressWarnings("try")
 	public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
 		if (path instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) path;
+			int colon = attributes.indexOf(':');
+			String view = colon < 0 ? "basic" : attributes.substring(0, colon);
+			String names = attributes.substring(colon + 1);
 			Map<String, Object> attrs = new HashMap<>();
-			if (attributes.equals("*") || attributes.startsWith("basic:")) {
-				BasicFileAttributes basicAttrs = readAttributes(ghPath, BasicFileAttributes.class, options);
-				attrs.put("size", basicAttrs.size());
-				attrs.put("creationTime", basicAttrs.creationTime());
-				attrs.put("lastModifiedTime", basicAttrs.lastModifiedTime());
-				attrs.put("isRegularFile", basicAttrs.isRegularFile());
-				attrs.put("isDirectory", basicAttrs.isDirectory());
-				attrs.put("isSymbolicLink", basicAttrs.isSymbolicLink());
-				attrs.put("isOther", basicAttrs.isOther());
-				attrs.put("fileKey", basicAttrs.fileKey());
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				if (view.equals("basic")) {
+					GitHubFileAttributes basicAttrs = new GitHubFileAttributes(ghPath);
+					for (String name : selectAttributes(names, GitHubFileAttributes.NAMES)) {
+						attrs.put(name, basicAttrs.get(name));
+					}
+				} else if (view.equals(GitHubObjectAttributes.VIEW)) {
+					GitHubObjectAttributes objectAttrs = new GitHubObjectAttributes(ghPath);
+					for (String name : selectAttributes(names, GitHubObjectAttributes.NAMES)) {
+						attrs.put(name, objectAttrs.get(name));
+					}
+				} else {
+					throw new UnsupportedOperationException("View '" + view + "' not available");
+				}
+			} catch (java.io.UncheckedIOException e) {
+				throw e.getCause();
 			}
 			return attrs;
 		}
 		throw new ProviderMismatchException("Path is not a GitHub path: " + path);
 	}
 
+	private static List<String> selectAttributes(String names, List<String> supported) {
+		List<String> selected = new ArrayList<>();
+		for (String name : names.split(",")) {
+			if (name.equals("*")) {
+				return supported;
+			}
+			if (!supported.contains(name)) {
+				throw new IllegalArgumentException("Attribute '" + name + "' not recognized");
+			}
+			selected.add(name);
+		}
+		return selected;
+	}
+
 	@Override
 	public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+		if (path instanceof GitHubPath && type == BasicFileAttributeView.class) {
+			@SuppressWarnings("unchecked")
+			V view = (V) new BasicFileAttributeView() {
+				@Override
+				public String name() {
+					return "basic";
+				}
+
+				@Override
+				public BasicFileAttributes readAttributes() throws IOException {
+					return GitHubFileSystemProvider.this.readAttributes(path, BasicFileAttributes.class, options);
+				}
+
+				@Override
+				public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+					throw new ReadOnlyFileSystemException();
+				}
+			};
+			return view;
+		}
 		return null;
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
 			throws IOException {
 		if (path instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) path;
 			if (type == BasicFileAttributes.class) {
-				@SuppressWarnings("unchecked")
-				A attrs = (A) new GitHubFileAttributes(ghPath);
-				return attrs;
+				try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+					ghPath.getFileSystem().checkFreshness();
+					@SuppressWarnings("unchecked")
+					A attrs = (A) new GitHubFileAttributes(ghPath);
+					return attrs;
+				}
 			}
 		}
 		throw new UnsupportedOperationException("Attributes type not supported: " + type);
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
 			throws IOException {
 		if (dir instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) dir;
-			return new GitHubDirectoryStream(ghPath, filter);
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				return new GitHubDirectoryStream(ghPath, filter);
+			}
 		}
 		throw new ProviderMismatchException("Path is not a GitHub path: " + dir);
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
 			FileAttribute<?>... attrs) throws IOException {
 		if (path instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) path;
-			if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.CREATE)
-					|| options.contains(StandardOpenOption.CREATE_NEW)) {
-				throw new UnsupportedOperationException("GitHub filesystem is read-only");
+			checkReadOnly(options);
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				byte[] content = getInlineContent(ghPath);
+				SeekableByteChannel channel = content != null ? new GitHubSeekableByteChannel(content)
+						: FileChannel.open(getLocalContent(ghPath), StandardOpenOption.READ);
+				prefetcher.accessed(ghPath);
+				return channel;
 			}
-			return new GitHubSeekableByteChannel(ghPath);
 		}
 		throw new ProviderMismatchException("Path is not a GitHub path: " + path);
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
 		if (path instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) path;
-			String url = getRawContentUrl(ghPath);
-			Path cachedFile = httpClient.downloadAndCacheFile(url);
-			return Files.newInputStream(cachedFile);
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				byte[] content = getInlineContent(ghPath);
+				InputStream in = content != null ? new ByteArrayInputStream(content)
+						: Files.newInputStream(getLocalContent(ghPath));
+				prefetcher.accessed(ghPath);
+				return in;
+			}
 		}
 		throw new ProviderMismatchException("Path is not a GitHub path: " + path);
 	}
@@ -175,9 +329,60 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
 			throws IOException {
-		throw new UnsupportedOperationException("FileChannel not supported for GitHub filesystem");
+		if (path instanceof GitHubPath) {
+			GitHubPath ghPath = (GitHubPath) path;
+			checkReadOnly(options);
+			// A channel on the local cache file supports zero-copy transferTo and memory mapping
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				FileChannel channel = FileChannel.open(getLocalContent(ghPath), StandardOpenOption.READ);
+				prefetcher.accessed(ghPath);
+				return channel;
+			}
+		}
+		throw new ProviderMismatchException("Path is not a GitHub path: " + path);
+	}
+
+	private static void checkReadOnly(Set<? extends OpenOption> options) {
+		for (OpenOption option : options) {
+			if (option == StandardOpenOption.WRITE || option == StandardOpenOption.APPEND
+					|| option == StandardOpenOption.CREATE || option == StandardOpenOption.CREATE_NEW
+					|| option == StandardOpenOption.TRUNCATE_EXISTING
+					|| option == StandardOpenOption.DELETE_ON_CLOSE) {
+				throw new UnsupportedOperationException("GitHub filesystem is read-only");
+			}
+		}
+	}
+
+	/**
+	 * Returns a local file holding the content of the given path, downloading
+	 * it first if it isn't in the cache yet.
+	 */
+	Path getLocalContent(GitHubPath path) throws IOException {
+		GitHubFileSystem fs = path.getFileSystem();
+		String key = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		if (!fs.getPathFilter().accepts(key, false)) {
+			throw new NoSuchFileException(path.toString());
+		}
+		GitHubTreeIndex index = fs.getLoadedIndex();
+		if (index != null) {
+			return fs.getCachedContent(path, index);
+		}
+		ContentInfo info = fs.getContentInfoCache().get(key);
+		if (info != null && info.getSha() != null) {
+			// The SHA is known from an earlier metadata response, so the blob cache can be used
+			byte[] content = fs.getContentInfoCache().getContent(key);
+			if (content != null) {
+				return blobCache.putContent(info.getSha(), content);
+			}
+			return getBlob(path, info.getSha(), info.getSize(), path.getFileSystem().getRepoInfo().getRef());
+		}
+		return fs.getRefContent(path, () -> httpClient.firstAvailable(
+				getRawContentUrls(path, fs.getRepoInfo().getRef()), httpClient::downloadAndCacheFile,
+				GitHubFileSystemProvider::deleteQuietly));
 	}
 
 	@Override
@@ -201,8 +406,23 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public boolean isSameFile(Path path, Path path2) throws IOException {
-		return path.equals(path2);
+		if (path.equals(path2)) {
+			return true;
+		}
+		if (!(path instanceof GitHubPath) || !(path2 instanceof GitHubPath)) {
+			return false;
+		}
+		// Content addressed, like the file key: the same blob is the same file
+		ContentInfo info;
+		ContentInfo info2;
+		try (RequestContext.Scope scope = ((GitHubPath) path).getFileSystem().requestScope()) {
+			info = stat((GitHubPath) path);
+			info2 = stat((GitHubPath) path2);
+		}
+		return info != null && info2 != null && info.getSha() != null && info.getSha().equals(info2.getSha())
+				&& info.getType().equals(info2.getType());
 	}
 
 	@Override
@@ -216,11 +436,15 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 	}
 
 	@Override
+	@SuppressWarnings("try")
 	public void checkAccess(Path path, AccessMode... modes) throws IOException {
 		if (path instanceof GitHubPath) {
 			GitHubPath ghPath = (GitHubPath) path;
-			if (!exists(ghPath)) {
-				throw new NoSuchFileException(ghPath.toString());
+			try (RequestContext.Scope scope = ghPath.getFileSystem().requestScope()) {
+				ghPath.getFileSystem().checkFreshness();
+				if (!exists(ghPath)) {
+					throw new NoSuchFileException(ghPath.toString());
+				}
 			}
 			for (AccessMode mode : modes) {
 				if (mode == AccessMode.WRITE || mode == AccessMode.EXECUTE) {
@@ -248,70 +472,582 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 	}
 
 	List<Path> listDirectory(GitHubPath dir) throws IOException {
-		GitHubRepoInfo repoInfo = dir.getFileSystem().getRepoInfo();
-		String repoPath = toRepoPath(dir.getPathString(), repoInfo.getBasePath());
-		String apiUrl = String.format("%s/%s/%s/contents%s?ref=%s", GITHUB_API_BASE, repoInfo.getOwner(),
-				repoInfo.getRepo(), repoPath, repoInfo.getRef());
-
-		String jsonContent = httpClient.downloadString(apiUrl);
-		JsonArray contents = gson.fromJson(jsonContent, JsonArray.class);
+		GitHubFileSystem fs = dir.getFileSystem();
+		GitHubTreeIndex index = fs.getLoadedIndex();
+		if (index == null) {
+			ContentInfo cached = fs.getContentInfoCache().get(((GitHubPath) dir.toAbsolutePath()).getPathString());
+			if ((cached == null || cached.getChildren() == null)
+					&& accessPlanner.planStat(fs, dir) == AccessPlanner.Strategy.TREE) {
+				// Null when the tree turns out to be truncated, then the listing is fetched
+				index = fs.getIndexIfLoadableAtOnce();
+			}
+		}
+		if (index != null) {
+			GitTree tree = index.list(dir);
+			if (tree == null) {
+				throw new NotDirectoryException(dir.toString());
+			}
+			List<Path> paths = new ArrayList<>();
+			for (GitTreeEntry entry : tree.getEntries()) {
+				paths.add(dir.resolve(entry.getName()));
+			}
+			return paths;
+		}
 
+		ContentInfo info = stat(dir);
+		if (info == null) {
+			throw new NoSuchFileException(dir.toString());
+		}
+		if (!info.isDirectory()) {
+			throw new NotDirectoryException(dir.toString());
+		}
+		if (info.getChildren() == null) {
+			// Known to be a directory from the parent's listing, but not listed itself yet
+			fetchContents(dir);
+			info = stat(dir);
+			if (info == null || info.getChildren() == null) {
+				throw new NoSuchFileException(dir.toString());
+			}
+		}
 		List<Path> paths = new ArrayList<>();
-		String basePath = repoInfo.getBasePath();
-		for (JsonElement element : contents) {
-			JsonObject item = element.getAsJsonObject();
-			String repoPathStr = item.get("path").getAsString();
-
-			// Convert repo path to filesystem path by removing basePath prefix
-			String fsPath = toFilesystemPath(repoPathStr, basePath);
-			Path childPath = dir.getFileSystem().getPath(fsPath);
-			paths.add(childPath);
+		PathFilter filter = fs.getPathFilter();
+		for (String name : info.getChildren()) {
+			GitHubPath child = (GitHubPath) dir.toAbsolutePath().resolve(name);
+			ContentInfo childInfo = fs.getContentInfoCache().get(child.getPathString());
+			if (filter.accepts(child.getPathString(), childInfo == null || childInfo.isDirectory())) {
+				paths.add(dir.resolve(name));
+			}
 		}
 		return paths;
 	}
 
-	boolean exists(GitHubPath path) throws IOException {
+	/**
+	 * Stats many paths at once, see {@link GitHubFileSystem#statAll}. Without
+	 * the index, every parent directory that isn't listed yet is listed
+	 * once, in parallel, after which all paths are answered from the cache.
+	 */
+	Map<Path, BasicFileAttributes> statAll(GitHubFileSystem fs, List<GitHubPath> paths) throws IOException {
+		if (fs.getLoadedIndex() == null) {
+			listParents(fs, paths);
+		}
+		Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();
+		for (GitHubPath path : paths) {
+			ContentInfo info = stat(path);
+			if (info != null) {
+				result.put(path, new GitHubFileAttributes(path, info));
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("try")
+	private void listParents(GitHubFileSystem fs, List<GitHubPath> paths) throws IOException {
+		ContentInfoCache cache = fs.getContentInfoCache();
+		Map<String, GitHubPath> parents = new LinkedHashMap<>();
+		for (GitHubPath path : paths) {
+			GitHubPath absPath = (GitHubPath) path.toAbsolutePath();
+			GitHubPath parent = (GitHubPath) absPath.getParent();
+			if (parent == null || cache.contains(absPath.getPathString())
+					|| !fs.getPathFilter().accepts(absPath.getPathString(), true)) {
+				continue;
+			}
+			String key = parent.getPathString();
+			ContentInfo info = cache.get(key);
+			if (!cache.contains(key) || (info != null && info.isDirectory() && info.getChildren() == null)) {
+				parents.putIfAbsent(key, parent);
+			}
+		}
+		if (parents.size() <= 1) {
+			for (GitHubPath parent : parents.values()) {
+				fetchContents(parent);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(STAT_PARALLELISM, parents.size()), r -> {
+			Thread t = new Thread(r, "github-fs-stat");
+			t.setDaemon(true);
+			return t;
+		});
+		// The workers list on behalf of the caller, with its priority
+		RequestContext context = RequestContext.current();
 		try {
-			GitHubRepoInfo repoInfo = path.getFileSystem().getRepoInfo();
-			String repoPath = toRepoPath(path.getPathString(), repoInfo.getBasePath());
-			String apiUrl = String.format("%s/%s/%s/contents%s?ref=%s", GITHUB_API_BASE, repoInfo.getOwner(),
-					repoInfo.getRepo(), repoPath, repoInfo.getRef());
-			httpClient.downloadString(apiUrl);
-			return true;
-		} catch (IOException e) {
-			if (e.getMessage() != null && e.getMessage().contains("404")) {
-				return false;
+			List<Future<Void>> pending = new ArrayList<>();
+			for (GitHubPath parent : parents.values()) {
+				pending.add(executor.submit(() -> {
+					try (RequestContext.Scope scope = context.enter()) {
+						fetchContents(parent);
+					}
+					return null;
+				}));
 			}
-			throw e;
+			for (Future<Void> future : pending) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException("Listing directories of " + fs.getRepoInfo() + " failed", cause);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while listing directories");
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
+	boolean exists(GitHubPath path) throws IOException {
+		return stat(path) != null;
+	}
+
 	boolean isDirectory(GitHubPath path) throws IOException {
+		ContentInfo info = stat(path);
+		return info != null && info.isDirectory();
+	}
+
+	/**
+	 * Returns what is known about a path, or null if it doesn't exist. Answers
+	 * from the tree index when it is loaded, otherwise from the metadata cache,
+	 * fetching the {@code /contents} of the path on a miss. Paths the
+	 * filesystem's include and exclude patterns leave out don't exist.
+	 */
+	@Nullable
+	ContentInfo stat(GitHubPath path) throws IOException {
+		GitHubFileSystem fs = path.getFileSystem();
+		GitHubTreeIndex index = fs.getLoadedIndex();
+		if (index == null) {
+			GitHubPath absPath = (GitHubPath) path.toAbsolutePath();
+			String key = absPath.getPathString();
+			PathFilter filter = fs.getPathFilter();
+			if (!filter.accepts(key, true)) {
+				return null;
+			}
+			ContentInfoCache cache = fs.getContentInfoCache();
+			if (!cache.contains(key) && !statFromParentListing(absPath)) {
+				if (accessPlanner.planStat(fs, absPath) != AccessPlanner.Strategy.CONTENTS) {
+					GitHubTreeIndex loaded = fs.getIndexIfLoadableAtOnce();
+					if (loaded != null) {
+						return statFromIndex(loaded, path);
+					}
+				}
+				if (!fs.isRawAccessMode() || key.equals("/") || !statFromRaw(absPath)) {
+					fetchContents(absPath);
+				}
+			}
+			ContentInfo info = cache.get(key);
+			return info != null && filter.accepts(key, info.isDirectory()) ? info : null;
+		}
+		return statFromIndex(index, path);
+	}
+
+	@Nullable
+	private static ContentInfo statFromIndex(GitHubTreeIndex index, GitHubPath path) throws IOException {
+		GitTreeEntry entry = index.lookup(path);
+		return entry == null ? null : ContentInfo.fromTreeEntry(entry);
+	}
+
+	/**
+	 * Answers a stat from the cached listing of the parent directory, which
+	 * tells that a path doesn't exist without any request.
+	 *
+	 * @return true if the path is now known
+	 */
+	private boolean statFromParentListing(GitHubPath path) {
+		GitHubPath parent = (GitHubPath) path.getParent();
+		if (parent == null) {
+			return false;
+		}
+		ContentInfoCache cache = path.getFileSystem().getContentInfoCache();
+		String parentKey = parent.getPathString();
+		ContentInfo parentInfo = cache.get(parentKey);
+		boolean parentMissing = parentInfo == null && cache.contains(parentKey);
+		boolean notListed = parentInfo != null && parentInfo.getChildren() != null
+				&& !parentInfo.getChildren().contains(path.getFileName().toString());
+		if (parentMissing || notListed || (parentInfo != null && !parentInfo.isDirectory())) {
+			cache.putMissing(path.getPathString());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stats a regular file against the raw content endpoint, which isn't
+	 * subject to the REST API rate limit. Uses a HEAD request and, if that
+	 * doesn't tell the size, a single byte range request.
+	 *
+	 * @return true if the path is a regular file, false if the raw endpoint
+	 *         doesn't know it (it may still be a directory)
+	 */
+	private boolean statFromRaw(GitHubPath path) throws IOException {
+		GitHubFileSystem fs = path.getFileSystem();
+		String url = getRawContentUrl(path);
+		HttpResponse response;
+		try {
+			response = send(HttpRequest.head(url));
+			if (response.getStatusCode() == 405 || response.getStatusCode() == 501
+					|| (response.isSuccessful() && response.header("Content-Length") == null)) {
+				response = send(HttpRequest.get(url).header("Range", "bytes=0-0"));
+			}
+		} catch (UnsupportedOperationException e) {
+			// The HttpClient can't do this kind of request, let the API answer
+			return false;
+		}
+		if (!response.isSuccessful()) {
+			return false;
+		}
+
+		long size = -1;
+		String contentRange = response.header("Content-Range");
+		if (response.getStatusCode() == 206 && contentRange != null && contentRange.contains("/")) {
+			size = parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+		} else if (response.getStatusCode() == 200 && response.getBody().length > 0) {
+			// The server ignored the range and sent everything
+			size = response.getBody().length;
+			if (size <= fs.getInlineContentThreshold()) {
+				fs.getContentInfoCache().putContent(path.getPathString(), response.getBody());
+			}
+		} else {
+			size = parseLong(response.header("Content-Length"));
+		}
+		fs.getContentInfoCache()
+			.put(path.getPathString(), new ContentInfo(ContentInfo.TYPE_FILE, Math.max(0, size), null, null));
+		return true;
+	}
+
+	private static long parseLong(@Nullable String value) {
 		try {
-			GitHubRepoInfo repoInfo = path.getFileSystem().getRepoInfo();
-			String repoPath = toRepoPath(path.getPathString(), repoInfo.getBasePath());
-			String apiUrl = String.format("%s/%s/%s/contents%s?ref=%s", GITHUB_API_BASE, repoInfo.getOwner(),
-					repoInfo.getRepo(), repoPath, repoInfo.getRef());
-			String jsonContent = httpClient.downloadString(apiUrl);
-			JsonElement element = gson.fromJson(jsonContent, JsonElement.class);
-			if (element.isJsonArray()) {
-				return true;
-			}
-			JsonObject item = element.getAsJsonObject();
-			return "dir".equals(item.get("type").getAsString());
+			return value == null ? -1 : Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Fetches the {@code /contents} of a path and records everything the
+	 * response tells: the path itself, the children of a directory and the
+	 * content of a small file.
+	 */
+	private void fetchContents(GitHubPath path) throws IOException {
+		GitHubFileSystem fs = path.getFileSystem();
+		GitHubRepoInfo repoInfo = fs.getRepoInfo();
+		GitHubPath absPath = (GitHubPath) path.toAbsolutePath();
+		String key = absPath.getPathString();
+		String repoPath = toRepoPath(key, repoInfo.getBasePath());
+		String apiUrl = String.format("%s/contents%s?ref=%s", fs.getEndpoints().repoApi(repoInfo), repoPath,
+				repoInfo.getRef());
+
+		ContentInfoCache cache = fs.getContentInfoCache();
+		fs.countContentsRequest();
+		HttpResponse response = send(authorize(fs, HttpRequest.get(apiUrl)));
+		if (response.getStatusCode() == 404) {
+			cache.putMissing(key);
+			return;
+		}
+		JsonElement json = gson.fromJson(checkResponse(response, apiUrl).getBodyAsString(), JsonElement.class);
+		cache.put(key, ContentInfo.fromJson(json));
+		if (json.isJsonArray()) {
+			for (JsonElement element : json.getAsJsonArray()) {
+				JsonObject item = element.getAsJsonObject();
+				// Convert repo path to filesystem path by removing basePath prefix
+				String childKey = toFilesystemPath(item.get("path").getAsString(), repoInfo.getBasePath());
+				if (!cache.contains(childKey)) {
+					cache.put(childKey, ContentInfo.fromJson(item));
+				}
+			}
+		} else {
+			byte[] content = ContentInfo.decodeContent(json);
+			if (content != null && content.length <= fs.getInlineContentThreshold()) {
+				cache.putContent(key, content);
+			}
+		}
+	}
+
+	/**
+	 * Returns the content of a small file if a previous metadata response
+	 * already delivered it, null otherwise.
+	 */
+	private byte @Nullable [] getInlineContent(GitHubPath path) {
+		GitHubFileSystem fs = path.getFileSystem();
+		String key = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		if (fs.getLoadedIndex() != null || !fs.getPathFilter().accepts(key, false)) {
+			return null;
+		}
+		return fs.getContentInfoCache().getContent(key);
+	}
+
+	/**
+	 * Fetches the commit SHA the filesystem's ref currently points to. When an
+	 * ETag from a previous call is passed the request is conditional and a 304
+	 * response is returned if the ref didn't move.
+	 */
+	HttpResponse fetchHead(GitHubFileSystem fs, String etag) throws IOException {
+		GitHubRepoInfo repoInfo = fs.getRepoInfo();
+		String url = String.format("%s/commits/%s", fs.getEndpoints().repoApi(repoInfo), repoInfo.getRef());
+		HttpRequest request = authorize(fs, HttpRequest.get(url)).header("Accept", "application/vnd.github.sha");
+		if (etag != null) {
+			request.header("If-None-Match", etag);
+		}
+		HttpResponse response = send(request);
+		return response.getStatusCode() == 304 ? response : checkResponse(response, url);
+	}
+
+	/**
+	 * Fetches a single (non-recursive) git tree object. The tree can be given
+	 * by its own SHA or by any other tree-ish like a commit SHA.
+	 */
+	GitTree fetchTree(GitHubFileSystem fs, String treeIsh) throws IOException {
+		String url = String.format("%s/git/trees/%s", fs.getEndpoints().repoApi(fs.getRepoInfo()), treeIsh);
+		HttpResponse response = checkResponse(send(authorize(fs, HttpRequest.get(url))), url);
+		return GitTree.fromJson(gson.fromJson(response.getBodyAsString(), JsonObject.class));
+	}
+
+	/**
+	 * Fetches a tree and all its subtrees in a single request. GitHub may
+	 * truncate the result for very large trees, see {@link GitTree#isTruncated()}.
+	 */
+	GitTree fetchRecursiveTree(GitHubFileSystem fs, String treeSha) throws IOException {
+		return fetchTree(fs, treeSha + "?recursive=1");
+	}
+
+	/**
+	 * Returns the cached file for a blob, downloading it first if it isn't
+	 * cached yet. The blob is downloaded from the best raw content source,
+	 * with the other sources and finally the git blobs API as fallbacks.
+	 * Large blobs are downloaded in parallel ranges that survive an
+	 * interruption. Nothing enters the cache unless it matches the SHA.
+	 *
+	 * @param size the size of the blob if known, -1 otherwise
+	 */
+	Path getBlob(GitHubPath path, String sha, long size, String ref) throws IOException {
+		Path cached = blobCache.get(sha);
+		if (cached != null) {
+			return cached;
+		}
+		GitHubFileSystem fs = path.getFileSystem();
+		List<String> rawUrls = getRawContentUrls(path, ref);
+		if (size >= fs.getChunkedDownloadThreshold() && size > fs.getDownloadChunkSize()) {
+			Object lock = downloadLocks.computeIfAbsent(sha, s -> new Object());
+			try {
+				synchronized (lock) {
+					// Another thread may have finished it while we waited
+					cached = blobCache.get(sha);
+					if (cached != null) {
+						return cached;
+					}
+					ChunkedDownload download = new ChunkedDownload(httpClient, rawUrls, sha, size,
+							fs.getDownloadChunkSize(), DOWNLOAD_CONNECTIONS);
+					return blobCache.put(sha, download.download(blobCache.partFileFor(sha)));
+				}
+			} catch (ChunkedDownload.RangesNotSupportedException e) {
+				// Fall back to a plain download
+			} finally {
+				downloadLocks.remove(sha, lock);
+			}
+		}
+
+		String blobUrl = String.format("%s/git/blobs/%s", fs.getEndpoints().repoApi(fs.getRepoInfo()), sha);
+		List<String> urls = new ArrayList<>(rawUrls);
+		urls.add(blobUrl);
+		// Hedged with the next source while the first is slow to answer
+		Path downloaded = httpClient.firstAvailable(urls,
+				url -> url.equals(blobUrl) ? fetchBlob(fs, url) : httpClient.downloadAndCacheFile(url),
+				GitHubFileSystemProvider::deleteQuietly);
+		if (!sha.equals(BlobCache.computeBlobSha(downloaded))) {
+			Files.deleteIfExists(downloaded);
+			// Nor resume from what an earlier ranged download left
+			ChunkedDownload.discard(blobCache.partFileFor(sha));
+			throw new IOException("Downloaded content of " + path + " doesn't match blob " + sha);
+		}
+		return blobCache.put(sha, downloaded);
+	}
+
+	/**
+	 * Deletes a download that lost the race to another source.
+	 */
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
 		} catch (IOException e) {
-			if (e.getMessage() != null && e.getMessage().contains("404")) {
-				return false;
+			// A temporary file, left to the system
+		}
+	}
+
+	private Path fetchBlob(GitHubFileSystem fs, String blobUrl) throws IOException {
+		HttpResponse response = checkResponse(send(authorize(fs, HttpRequest.get(blobUrl))), blobUrl);
+		byte[] content = ContentInfo.decodeContent(gson.fromJson(response.getBodyAsString(), JsonElement.class));
+		if (content == null) {
+			throw new IOException("Unexpected blob response from " + blobUrl);
+		}
+		Path file = Files.createTempFile("github-fs-", ".tmp");
+		Files.write(file, content);
+		return file;
+	}
+
+	/**
+	 * Fetches the date of the last commit, reachable from the given one, that
+	 * touched a path (relative to the repository root, empty for the root).
+	 */
+	Instant fetchLastCommitDate(GitHubFileSystem fs, String commitSha, String repoPath) throws IOException {
+		String url = String.format("%s/commits?sha=%s&per_page=1", fs.getEndpoints().repoApi(fs.getRepoInfo()),
+				commitSha);
+		if (!repoPath.isEmpty()) {
+			url += "&path=" + encodePath(repoPath);
+		}
+		HttpResponse response = checkResponse(send(authorize(fs, HttpRequest.get(url))), url);
+		JsonArray commits = gson.fromJson(response.getBodyAsString(), JsonArray.class);
+		if (commits == null || commits.size() == 0) {
+			throw new NoSuchFileException(repoPath);
+		}
+		JsonObject commit = commits.get(0).getAsJsonObject().getAsJsonObject("commit");
+		return Instant.parse(commit.getAsJsonObject("committer").get("date").getAsString());
+	}
+
+	/**
+	 * Fetches the dates of the last commits that touched each of the given
+	 * paths with a single GraphQL query, which needs a token. Paths without
+	 * history are left out of the result.
+	 */
+	Map<String, Instant> fetchLastCommitDates(GitHubFileSystem fs, String commitSha, List<String> repoPaths)
+			throws IOException {
+		GitHubRepoInfo repoInfo = fs.getRepoInfo();
+		StringBuilder query = new StringBuilder();
+		query.append("query { repository(owner: ")
+			.append(gson.toJson(repoInfo.getOwner()))
+			.append(", name: ")
+			.append(gson.toJson(repoInfo.getRepo()))
+			.append(") { object(expression: ")
+			.append(gson.toJson(commitSha))
+			.append(") { ... on Commit {");
+		for (int i = 0; i < repoPaths.size(); i++) {
+			query.append(" p").append(i).append(": history(first: 1");
+			if (!repoPaths.get(i).isEmpty()) {
+				query.append(", path: ").append(gson.toJson(repoPaths.get(i)));
+			}
+			query.append(") { nodes { committedDate } }");
+		}
+		query.append(" } } } }");
+		JsonObject body = new JsonObject();
+		body.addProperty("query", query.toString());
+
+		String url = fs.getEndpoints().graphql();
+		HttpRequest request = authorize(fs, HttpRequest.post(url, gson.toJson(body).getBytes(StandardCharsets.UTF_8)))
+			.header("Content-Type", "application/json");
+		HttpResponse response = checkResponse(send(request), url);
+		JsonObject json = gson.fromJson(response.getBodyAsString(), JsonObject.class);
+		if (json.has("errors") || !json.has("data") || json.get("data").isJsonNull()) {
+			throw new IOException("GraphQL query failed for " + repoInfo + ": " + json.get("errors"));
+		}
+		JsonElement commit = json.getAsJsonObject("data").getAsJsonObject("repository").get("object");
+		if (commit == null || commit.isJsonNull()) {
+			throw new IOException("Commit " + commitSha + " not found in " + repoInfo);
+		}
+		Map<String, Instant> dates = new HashMap<>();
+		for (int i = 0; i < repoPaths.size(); i++) {
+			JsonArray nodes = commit.getAsJsonObject().getAsJsonObject("p" + i).getAsJsonArray("nodes");
+			if (nodes.size() > 0) {
+				dates.put(repoPaths.get(i),
+						Instant.parse(nodes.get(0).getAsJsonObject().get("committedDate").getAsString()));
 			}
-			throw e;
 		}
+		return dates;
+	}
+
+	private static String encodePath(String repoPath) {
+		try {
+			return URLEncoder.encode(repoPath, "UTF-8").replace("+", "%20").replace("%2F", "/");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds the filesystem's token, if it has one, to an API request.
+	 */
+	private static HttpRequest authorize(GitHubFileSystem fs, HttpRequest request) {
+		String token = fs.getToken();
+		return token == null ? request : request.header("Authorization", "Bearer " + token);
+	}
+
+	/**
+	 * Downloads a zip archive of the repository at the given ref to a
+	 * temporary file.
+	 */
+	Path downloadArchive(GitHubFileSystem fs, String ref) throws IOException {
+		return httpClient.downloadAndCacheFile(fs.getEndpoints().archive(fs.getRepoInfo(), ref));
+	}
+
+	private HttpResponse send(HttpRequest request) throws IOException {
+		HttpResponse response = httpClient.send(request);
+		rateLimit.update(response);
+		return response;
+	}
+
+	private static HttpResponse checkResponse(HttpResponse response, String url) throws IOException {
+		if (response.getStatusCode() == 404) {
+			throw new java.io.FileNotFoundException("Resource not found: " + url);
+		}
+		if (!response.isSuccessful()) {
+			throw new HttpStatusException(response.getStatusCode(), url);
+		}
+		return response;
+	}
+
+	RateLimit getRateLimit() {
+		return rateLimit;
+	}
+
+	AccessPlanner getAccessPlanner() {
+		return accessPlanner;
+	}
+
+	ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Returns the path of the given filesystem path relative to the repository
+	 * root, without a leading slash (so the root is the empty string).
+	 */
+	String toRepoRelativePath(GitHubPath path) {
+		String repoPath = toRepoPath(path.getPathString(), path.getFileSystem().getRepoInfo().getBasePath());
+		return repoPath.startsWith("/") ? repoPath.substring(1) : repoPath;
 	}
 
 	String getRawContentUrl(GitHubPath path) {
-		GitHubRepoInfo repoInfo = path.getFileSystem().getRepoInfo();
-		String repoPath = toRepoPath(path.getPathString(), repoInfo.getBasePath());
-		return String.format("%s/%s/%s/%s%s", GITHUB_RAW_BASE, repoInfo.getOwner(), repoInfo.getRepo(),
-				repoInfo.getRef(), repoPath);
+		return getRawContentUrl(path, path.getFileSystem().getRepoInfo().getRef());
+	}
+
+	/**
+	 * Returns the URL of a file on the raw content source that currently
+	 * looks best, see {@link #getRawContentUrls(GitHubPath, String)}.
+	 */
+	String getRawContentUrl(GitHubPath path, String ref) {
+		return getRawContentUrls(path, ref).get(0);
+	}
+
+	/**
+	 * Returns the URLs of a file on all raw content sources of its
+	 * filesystem: healthy sources before ones that are failing, and among
+	 * those the ones with lower latency first. Sources without latency
+	 * samples yet keep their configured order and are tried early, so they
+	 * get measured.
+	 */
+	List<String> getRawContentUrls(GitHubPath path, String ref) {
+		GitHubFileSystem fs = path.getFileSystem();
+		GitHubRepoInfo repoInfo = fs.getRepoInfo();
+		String repoPath = toRepoPath(((GitHubPath) path.toAbsolutePath()).getPathString(), repoInfo.getBasePath());
+		List<String> urls = new ArrayList<>();
+		for (String base : fs.getEndpoints().getRawBases()) {
+			urls.add(GitHubEndpoints.raw(base, repoInfo, ref, repoPath));
+		}
+		if (urls.size() > 1) {
+			urls.sort(Comparator.comparing((String url) -> !httpClient.isAvailable(url))
+				.thenComparingLong(url -> Math.max(0, httpClient.getLatencyMillis(url))));
+		}
+		return urls;
 	}
 
 	/**
@@ -368,7 +1104,7 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		}
 
 		String ssp = uri.getSchemeSpecificPart();
-		// Format: //github.com/owner/repo/tree/branch/path
+		// Format: //github.com/owner/repo/tree/branch/path, or another host for GitHub Enterprise Server
 		if (!ssp.startsWith("//")) {
 			throw new IllegalArgumentException("Invalid GitHub URI format: " + uri);
 		}
@@ -376,7 +1112,7 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		String path = ssp.substring(2); // Remove "//"
 		String[] parts = path.split("/", 6);
 
-		if (parts.length < 4 || !"github.com".equals(parts[0])) {
+		if (parts.length < 4 || parts[0].isEmpty()) {
 			throw new IllegalArgumentException("Invalid GitHub URI format: " + uri);
 		}
 
@@ -405,7 +1141,7 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 			}
 		}
 
-		return new GitHubRepoInfo(owner, repo, ref, filePath);
+		return new GitHubRepoInfo(parts[0], owner, repo, ref, filePath);
 	}
 
 	public static GitHubRepoInfo parseGitHubUrl(String url) {
@@ -453,7 +1189,7 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 
 	public static URI toGitHubUri(GitHubRepoInfo repoInfo) {
 		try {
-			String uriStr = String.format("github://github.com/%s/%s/tree/%s%s", repoInfo.getOwner(),
+			String uriStr = String.format("github://%s/%s/%s/tree/%s%s", repoInfo.getHost(), repoInfo.getOwner(),
 					repoInfo.getRepo(), repoInfo.getRef(), repoInfo.getBasePath());
 			return new URI(uriStr);
 		} catch (URISyntaxException e) {
@@ -0,0 +1,103 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * Utility methods operating on GitHub filesystems.
+ */
+public final class GitHubFileSystems {
+
+	private GitHubFileSystems() {
+	}
+
+	/**
+	 * Compares two directories of GitHub filesystems, which may be the same or
+	 * different refs of a repository. The comparison walks the git tree objects
+	 * only: subtrees with identical SHAs on both sides are skipped without being
+	 * fetched and no file content is ever downloaded.
+	 *
+	 * The returned stream is lazy, trees are fetched as the stream is consumed.
+	 * Errors while fetching trees are thrown as {@link UncheckedIOException}.
+	 *
+	 * @param a the old side of the comparison
+	 * @param b the new side of the comparison
+	 * @return a stream of the added, removed and modified files
+	 * @throws IOException if either path can't be resolved
+	 */
+	@NonNull
+	public static Stream<GitHubDiffEntry> diff(@NonNull Path a, @NonNull Path b) throws IOException {
+		GitHubPath oldDir = toGitHubPath(a);
+		GitHubPath newDir = toGitHubPath(b);
+		GitTreeEntry oldEntry = oldDir.getFileSystem().resolveEntry(oldDir);
+		GitTreeEntry newEntry = newDir.getFileSystem().resolveEntry(newDir);
+		if (oldEntry == null) {
+			throw new NoSuchFileException(a.toString());
+		}
+		if (newEntry == null) {
+			throw new NoSuchFileException(b.toString());
+		}
+
+		if (!oldEntry.isTree() || !newEntry.isTree()) {
+			// Comparing files, or a file against a directory
+			if (oldEntry.isTree() == newEntry.isTree() && oldEntry.getSha().equals(newEntry.getSha())) {
+				return Stream.empty();
+			}
+			if (!oldEntry.isTree() && !newEntry.isTree()) {
+				return Stream.of(new GitHubDiffEntry(GitHubDiffEntry.Type.MODIFIED, "", oldDir, newDir,
+						oldEntry.getSha(), newEntry.getSha()));
+			}
+		}
+
+		Iterator<GitTreeDiff.Change> changes = new GitTreeDiff(oldDir.getFileSystem().getTreeStore(),
+				newDir.getFileSystem().getTreeStore(), oldEntry.isTree() ? oldEntry.getSha() : null,
+				newEntry.isTree() ? newEntry.getSha() : null)
+			.filter(oldDir.getFileSystem().getPathFilter(), base(oldDir), newDir.getFileSystem().getPathFilter(),
+					base(newDir));
+		Stream<GitHubDiffEntry> stream = StreamSupport
+			.stream(Spliterators.spliteratorUnknownSize(changes, Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.map(change -> toDiffEntry(change, oldDir, newDir));
+		if (!oldEntry.isTree()) {
+			stream = Stream.concat(Stream.of(new GitHubDiffEntry(GitHubDiffEntry.Type.REMOVED, "", oldDir, null,
+					oldEntry.getSha(), null)), stream);
+		} else if (!newEntry.isTree()) {
+			stream = Stream.concat(stream, Stream.of(new GitHubDiffEntry(GitHubDiffEntry.Type.ADDED, "", null,
+					newDir, null, newEntry.getSha())));
+		}
+		return stream;
+	}
+
+	private static GitHubDiffEntry toDiffEntry(GitTreeDiff.Change change, GitHubPath oldDir, GitHubPath newDir) {
+		GitTreeEntry oldEntry = change.getOldEntry();
+		GitTreeEntry newEntry = change.getNewEntry();
+		return new GitHubDiffEntry(GitHubDiffEntry.Type.valueOf(change.getKind().name()), change.getPath(),
+				oldEntry == null ? null : oldDir.resolve(change.getPath()),
+				newEntry == null ? null : newDir.resolve(change.getPath()),
+				oldEntry == null ? null : oldEntry.getSha(), newEntry == null ? null : newEntry.getSha());
+	}
+
+	/**
+	 * The path of a directory relative to its filesystem root, as a prefix.
+	 */
+	private static String base(GitHubPath dir) {
+		String path = dir.getPathString().substring(1);
+		return path.isEmpty() || path.endsWith("/") ? path : path + "/";
+	}
+
+	private static GitHubPath toGitHubPath(Path path) {
+		if (!(path instanceof GitHubPath)) {
+			throw new ProviderMismatchException("Path is not a GitHub path: " + path);
+		}
+		return (GitHubPath) path.toAbsolutePath();
+	}
+}
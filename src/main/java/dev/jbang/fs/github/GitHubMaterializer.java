@@ -0,0 +1,236 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Copies a subtree of a GitHub filesystem to a local directory. Files are
+ * enumerated from the tree index, local files that already have the right
+ * blob SHA are left alone and the rest is fetched either file by file with
+ * bounded parallelism or, for large subtrees, from a single archive. Every
+ * file is written to a temporary file first and atomically renamed into
+ * place, so readers never see partially written files.
+ */
+class GitHubMaterializer {
+
+	private static class Item {
+		final GitHubPath path;
+		final GitTreeEntry entry;
+		final Path local;
+
+		Item(GitHubPath path, GitTreeEntry entry, Path local) {
+			this.path = path;
+			this.entry = entry;
+			this.local = local;
+		}
+	}
+
+	private final GitHubFileSystem fs;
+	private final GitHubTreeIndex index;
+	private final MaterializeOptions options;
+	private final AtomicInteger completed = new AtomicInteger();
+	private int total;
+
+	GitHubMaterializer(GitHubFileSystem fs, GitHubTreeIndex index, MaterializeOptions options) {
+		this.fs = fs;
+		this.index = index;
+		this.options = options;
+	}
+
+	void materialize(GitHubPath source, Path localTarget) throws IOException {
+		GitTreeEntry sourceEntry = index.lookup(source);
+		if (sourceEntry == null) {
+			throw new NoSuchFileException(source.toString());
+		}
+		List<Item> items = new ArrayList<>();
+		collect(source, sourceEntry, localTarget.toAbsolutePath().normalize(), items);
+		total = items.size();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.getParallelism(), total)),
+				r -> {
+					Thread t = new Thread(r, "github-fs-materialize");
+					t.setDaemon(true);
+					return t;
+				});
+		try {
+			// Find out what actually needs to be fetched
+			List<Future<Boolean>> checks = new ArrayList<>();
+			for (Item item : items) {
+				checks.add(executor.submit(() -> isUpToDate(item)));
+			}
+			List<Item> needed = new ArrayList<>();
+			long neededBytes = 0;
+			for (int i = 0; i < items.size(); i++) {
+				Item item = items.get(i);
+				if (await(checks.get(i))) {
+					completed(item, true);
+				} else {
+					needed.add(item);
+					neededBytes += Math.max(0, item.entry.getSize());
+				}
+			}
+			if (needed.isEmpty()) {
+				return;
+			}
+
+			if (useArchive(source, needed.size(), neededBytes)) {
+				extractArchive(needed);
+			} else {
+				downloadFiles(needed, executor);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void collect(GitHubPath path, GitTreeEntry entry, Path local, List<Item> items) throws IOException {
+		if (entry.isTree()) {
+			Files.createDirectories(local);
+			// Through the index, which leaves out filtered paths
+			for (GitTreeEntry child : index.list(path).getEntries()) {
+				Path childLocal = local.resolve(child.getName()).normalize();
+				if (!childLocal.startsWith(local) || childLocal.equals(local)) {
+					throw new IOException("Invalid entry name in " + path + ": " + child.getName());
+				}
+				collect((GitHubPath) path.resolve(child.getName()), child, childLocal, items);
+			}
+		} else if (GitTreeEntry.TYPE_COMMIT.equals(entry.getType())) {
+			// Submodules are not part of this repository, leave an empty directory like git does
+			Files.createDirectories(local);
+		} else {
+			items.add(new Item(path, entry, local));
+		}
+	}
+
+	private boolean useArchive(GitHubPath source, int files, long bytes) throws IOException {
+		switch (options.getMode()) {
+		case ARCHIVE:
+			return true;
+		case FILES:
+			return false;
+		default:
+			AccessPlanner planner = fs.provider().getAccessPlanner();
+			return planner.planRead(fs, source, index, files, bytes,
+					options.getArchiveThreshold()) == AccessPlanner.Strategy.ARCHIVE;
+		}
+	}
+
+	@SuppressWarnings("try")
+	private void downloadFiles(List<Item> needed, ExecutorService executor) throws IOException {
+		// The workers download on behalf of the caller, with its (background) priority
+		RequestContext context = RequestContext.current();
+		List<Future<Void>> downloads = new ArrayList<>();
+		for (Item item : needed) {
+			downloads.add(executor.submit((Callable<Void>) () -> {
+				Path blob;
+				try (RequestContext.Scope scope = context.enter()) {
+					blob = fs.provider()
+						.getBlob(item.path, item.entry.getSha(), item.entry.getSize(), index.getCommitSha());
+				}
+				try (InputStream in = Files.newInputStream(blob)) {
+					write(item, in);
+				}
+				completed(item, false);
+				return null;
+			}));
+		}
+		for (Future<Void> download : downloads) {
+			await(download);
+		}
+	}
+
+	private void extractArchive(List<Item> needed) throws IOException {
+		Map<String, Item> wanted = new HashMap<>();
+		for (Item item : needed) {
+			wanted.put(fs.provider().toRepoRelativePath(item.path), item);
+		}
+		Path archive = fs.provider().downloadArchive(fs, index.getCommitSha());
+		try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+			ZipEntry zipEntry;
+			while ((zipEntry = zip.getNextEntry()) != null && !wanted.isEmpty()) {
+				// Entries are prefixed with a single "owner-repo-sha/" directory
+				String name = zipEntry.getName();
+				int slash = name.indexOf('/');
+				Item item = zipEntry.isDirectory() || slash < 0 ? null : wanted.remove(name.substring(slash + 1));
+				if (item != null) {
+					write(item, zip);
+					completed(item, false);
+				}
+			}
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+		// Anything the archive didn't contain is fetched separately
+		for (Item item : wanted.values()) {
+			Path blob = fs.provider()
+				.getBlob(item.path, item.entry.getSha(), item.entry.getSize(), index.getCommitSha());
+			try (InputStream in = Files.newInputStream(blob)) {
+				write(item, in);
+			}
+			completed(item, false);
+		}
+	}
+
+	private static boolean isUpToDate(Item item) throws IOException {
+		return Files.isRegularFile(item.local) && Files.size(item.local) == item.entry.getSize()
+				&& BlobCache.computeBlobSha(item.local).equals(item.entry.getSha());
+	}
+
+	private static void write(Item item, InputStream in) throws IOException {
+		Path parent = item.local.getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, "." + item.local.getFileName(), ".tmp");
+		try {
+			Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			if ("100755".equals(item.entry.getMode())) {
+				tmp.toFile().setExecutable(true);
+			}
+			Files.move(tmp, item.local, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private void completed(Item item, boolean skipped) {
+		int done = completed.incrementAndGet();
+		MaterializeOptions.ProgressListener listener = options.getProgressListener();
+		if (listener != null) {
+			listener.fileCompleted(item.local, done, total, skipped);
+		}
+	}
+
+	private static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while materializing");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
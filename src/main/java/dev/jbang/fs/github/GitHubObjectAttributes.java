@@ -0,0 +1,96 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The attributes of the "github" view: what git knows about the object a
+ * path maps to. Everything but the symlink target and the LFS pointer flag
+ * comes straight from the tree entry, those two need the (small) blob and
+ * are only fetched when asked for.
+ */
+class GitHubObjectAttributes {
+
+	static final String VIEW = "github";
+
+	static final String SHA = "sha";
+	static final String MODE = "mode";
+	static final String EXECUTABLE = "executable";
+	static final String SYMLINK_TARGET = "symlinkTarget";
+	static final String SUBMODULE_COMMIT = "submoduleCommit";
+	static final String LFS_POINTER = "lfsPointer";
+
+	static final List<String> NAMES = Collections
+		.unmodifiableList(Arrays.asList(SHA, MODE, EXECUTABLE, SYMLINK_TARGET, SUBMODULE_COMMIT, LFS_POINTER));
+
+	static final String MODE_EXECUTABLE = "100755";
+	static final String MODE_SYMLINK = "120000";
+
+	/**
+	 * LFS pointer files are well below this size, see the Git LFS spec.
+	 */
+	private static final int MAX_LFS_POINTER_SIZE = 1024;
+	private static final byte[] LFS_POINTER_PREFIX = "version https://git-lfs.github.com/spec/v1\n"
+		.getBytes(StandardCharsets.US_ASCII);
+
+	private final GitHubPath path;
+	private final GitTreeEntry entry;
+
+	GitHubObjectAttributes(GitHubPath path) throws IOException {
+		this.path = path;
+		GitTreeEntry entry = path.getFileSystem().resolveEntry(path);
+		if (entry == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		this.entry = entry;
+	}
+
+	/**
+	 * Returns the value of one of the attributes in {@link #NAMES}.
+	 */
+	@Nullable
+	Object get(String name) throws IOException {
+		switch (name) {
+		case SHA:
+			return entry.getSha();
+		case MODE:
+			return entry.getMode();
+		case EXECUTABLE:
+			return MODE_EXECUTABLE.equals(entry.getMode());
+		case SYMLINK_TARGET:
+			return isSymlink() ? new String(readBlob(), StandardCharsets.UTF_8) : null;
+		case SUBMODULE_COMMIT:
+			return GitTreeEntry.TYPE_COMMIT.equals(entry.getType()) ? entry.getSha() : null;
+		case LFS_POINTER:
+			return isLfsPointer();
+		default:
+			throw new IllegalArgumentException("Attribute '" + name + "' not recognized");
+		}
+	}
+
+	private boolean isSymlink() {
+		return entry.isBlob() && MODE_SYMLINK.equals(entry.getMode());
+	}
+
+	private boolean isLfsPointer() throws IOException {
+		if (!entry.isBlob() || isSymlink() || entry.getSize() < LFS_POINTER_PREFIX.length
+				|| entry.getSize() > MAX_LFS_POINTER_SIZE) {
+			return false;
+		}
+		byte[] content = readBlob();
+		return content.length >= LFS_POINTER_PREFIX.length
+				&& Arrays.equals(Arrays.copyOf(content, LFS_POINTER_PREFIX.length), LFS_POINTER_PREFIX);
+	}
+
+	private byte[] readBlob() throws IOException {
+		GitHubFileSystem fs = path.getFileSystem();
+		return Files.readAllBytes(fs.provider().getBlob(path, entry.getSha(), entry.getSize(), fs.getCommitSha()));
+	}
+}
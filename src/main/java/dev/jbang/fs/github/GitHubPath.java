@@ -4,6 +4,7 @@ import java.io.File;
 import java.net.URI;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
@@ -215,7 +216,7 @@ public class GitHubPath implements Path {
 	public URI toUri() {
 		GitHubRepoInfo repoInfo = fileSystem.getRepoInfo();
 		try {
-			String uriStr = String.format("github://github.com/%s/%s/tree/%s%s", repoInfo.getOwner(),
+			String uriStr = String.format("github://%s/%s/%s/tree/%s%s", repoInfo.getHost(), repoInfo.getOwner(),
 					repoInfo.getRepo(), repoInfo.getRef(), path);
 			return new URI(uriStr);
 		} catch (Exception e) {
@@ -245,12 +246,18 @@ public class GitHubPath implements Path {
 	@Override
 	public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers)
 			throws java.io.IOException {
-		throw new UnsupportedOperationException("WatchService not supported");
+		if (!(watcher instanceof GitHubWatchService)) {
+			throw new ProviderMismatchException("WatchService is not a GitHub watch service");
+		}
+		if (modifiers.length > 0) {
+			throw new UnsupportedOperationException("Watch modifiers not supported");
+		}
+		return ((GitHubWatchService) watcher).register(this, events);
 	}
 
 	@Override
 	public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) throws java.io.IOException {
-		throw new UnsupportedOperationException("WatchService not supported");
+		return register(watcher, events, new WatchEvent.Modifier[0]);
 	}
 
 	@Override
@@ -26,8 +26,11 @@ class GitHubPathMatcher implements PathMatcher {
 		if (!(path instanceof GitHubPath)) {
 			return false;
 		}
-		String pathStr = path.toString();
-		return pattern.matcher(pathStr).matches();
+		return matches(path.toString());
+	}
+
+	boolean matches(String path) {
+		return pattern.matcher(path).matches();
 	}
 
 	private Pattern globToRegex(String glob) {
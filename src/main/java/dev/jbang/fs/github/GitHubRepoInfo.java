@@ -5,9 +5,11 @@ import java.net.URI;
 import org.jspecify.annotations.NonNull;
 
 /**
- * Represents information about a GitHub repository, branch, and base path.
+ * Represents information about a GitHub repository, branch, and base path,
+ * on github.com or a GitHub Enterprise Server host.
  */
 public class GitHubRepoInfo {
+	private final String host;
 	private final String owner;
 	private final String repo;
 	private final String ref;
@@ -15,6 +17,12 @@ public class GitHubRepoInfo {
 
 	public GitHubRepoInfo(@NonNull String owner, @NonNull String repo, @NonNull String ref,
 			@NonNull String basePath) {
+		this(GitHubEndpoints.DEFAULT_HOST, owner, repo, ref, basePath);
+	}
+
+	public GitHubRepoInfo(@NonNull String host, @NonNull String owner, @NonNull String repo, @NonNull String ref,
+			@NonNull String basePath) {
+		this.host = host;
 		this.owner = owner;
 		this.repo = repo;
 		this.ref = ref;
@@ -26,6 +34,11 @@ public class GitHubRepoInfo {
 		}
 	}
 
+	@NonNull
+	public String getHost() {
+		return host;
+	}
+
 	@NonNull
 	public String getOwner() {
 		return owner;
@@ -48,12 +61,13 @@ public class GitHubRepoInfo {
 
 	boolean matches(URI uri) {
 		String url = uri.toString();
-		return url.contains(owner) && url.contains(repo);
+		return (uri.getHost() == null || uri.getHost().equals(host)) && url.contains(owner) && url.contains(repo);
 	}
 
 	@Override
 	public String toString() {
-		return String.format("%s/%s@%s%s", owner, repo, ref, basePath);
+		String repoString = String.format("%s/%s@%s%s", owner, repo, ref, basePath);
+		return GitHubEndpoints.DEFAULT_HOST.equals(host) ? repoString : host + "/" + repoString;
 	}
 
 	@Override
@@ -65,12 +79,12 @@ public class GitHubRepoInfo {
 			return false;
 		}
 		GitHubRepoInfo that = (GitHubRepoInfo) obj;
-		return owner.equals(that.owner) && repo.equals(that.repo) && ref.equals(that.ref)
-				&& basePath.equals(that.basePath);
+		return host.equals(that.host) && owner.equals(that.owner) && repo.equals(that.repo)
+				&& ref.equals(that.ref) && basePath.equals(that.basePath);
 	}
 
 	@Override
 	public int hashCode() {
-		return owner.hashCode() ^ repo.hashCode() ^ ref.hashCode() ^ basePath.hashCode();
+		return host.hashCode() ^ owner.hashCode() ^ repo.hashCode() ^ ref.hashCode() ^ basePath.hashCode();
 	}
 }
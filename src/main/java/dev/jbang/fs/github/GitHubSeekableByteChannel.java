@@ -1,95 +1,67 @@
 package dev.jbang.fs.github;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
 
 /**
- * A SeekableByteChannel implementation for GitHub files. Note: This is a
- * simplified implementation that doesn't support seeking.
+ * A read-only SeekableByteChannel over the content of a small GitHub file
+ * that is already held in memory.
  */
 class GitHubSeekableByteChannel implements SeekableByteChannel {
 
-	private final GitHubPath path;
-	private InputStream inputStream;
+	private final byte[] content;
 	private long position;
-	private long size;
 	private boolean open = true;
 
-	GitHubSeekableByteChannel(GitHubPath path) throws IOException {
-		this.path = path;
-		GitHubFileSystemProvider provider = (GitHubFileSystemProvider) path.getFileSystem().provider();
-		InputStream is = provider.newInputStream(path);
-		// Read all content into memory for size calculation and seeking support
-		// This is not ideal but necessary for a read-only channel
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
-		int bytesRead;
-		while ((bytesRead = is.read(buffer)) != -1) {
-			baos.write(buffer, 0, bytesRead);
-		}
-		is.close();
-		byte[] content = baos.toByteArray();
-		this.size = content.length;
-		this.inputStream = new ByteArrayInputStream(content);
+	GitHubSeekableByteChannel(byte[] content) {
+		this.content = content;
 	}
 
 	@Override
 	public int read(ByteBuffer dst) throws IOException {
-		if (!open) {
-			throw new IOException("Channel is closed");
+		checkOpen();
+		if (position >= content.length) {
+			return -1;
 		}
-		int bytesRead = 0;
-		while (dst.hasRemaining() && inputStream.available() > 0) {
-			byte[] buffer = new byte[Math.min(dst.remaining(), inputStream.available())];
-			int read = inputStream.read(buffer);
-			if (read == -1) {
-				break;
-			}
-			dst.put(buffer, 0, read);
-			bytesRead += read;
-			position += read;
-		}
-		return bytesRead > 0 ? bytesRead : -1;
+		int count = (int) Math.min(dst.remaining(), content.length - position);
+		dst.put(content, (int) position, count);
+		position += count;
+		return count;
 	}
 
 	@Override
 	public int write(ByteBuffer src) throws IOException {
-		throw new java.nio.channels.NonWritableChannelException();
+		throw new NonWritableChannelException();
 	}
 
 	@Override
 	public long position() throws IOException {
+		checkOpen();
 		return position;
 	}
 
 	@Override
 	public SeekableByteChannel position(long newPosition) throws IOException {
+		checkOpen();
 		if (newPosition < 0) {
 			throw new IllegalArgumentException("Position cannot be negative");
 		}
-		if (newPosition != position) {
-			// Reset and skip
-			inputStream.close();
-			GitHubFileSystemProvider provider = (GitHubFileSystemProvider) path.getFileSystem().provider();
-			inputStream = provider.newInputStream(path);
-			inputStream.skip(newPosition);
-			position = newPosition;
-		}
+		position = newPosition;
 		return this;
 	}
 
 	@Override
 	public long size() throws IOException {
-		return size;
+		checkOpen();
+		return content.length;
 	}
 
 	@Override
 	public SeekableByteChannel truncate(long size) throws IOException {
-		throw new java.nio.channels.NonWritableChannelException();
+		throw new NonWritableChannelException();
 	}
 
 	@Override
@@ -99,11 +71,12 @@ class GitHubSeekableByteChannel implements SeekableByteChannel {
 
 	@Override
 	public void close() throws IOException {
-		if (open) {
-			open = false;
-			if (inputStream != null) {
-				inputStream.close();
-			}
+		open = false;
+	}
+
+	private void checkOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
 		}
 	}
 }
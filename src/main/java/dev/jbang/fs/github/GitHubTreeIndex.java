@@ -0,0 +1,82 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * In-memory index of the filesystem contents at a fixed commit. The index
+ * itself only remembers the commit and the SHA of the tree the filesystem
+ * root maps to; the tree objects live in the {@link GitTreeStore}, so moving
+ * the index to a new commit shares every unchanged subtree. Paths the
+ * filesystem's {@link PathFilter} rejects don't exist in the index.
+ */
+class GitHubTreeIndex {
+
+	private final String commitSha;
+	private final String rootTreeSha;
+	private final GitTreeStore store;
+	private final PathFilter filter;
+
+	GitHubTreeIndex(String commitSha, String rootTreeSha, GitTreeStore store, PathFilter filter) {
+		this.commitSha = commitSha;
+		this.rootTreeSha = rootTreeSha;
+		this.store = store;
+		this.filter = filter;
+	}
+
+	String getCommitSha() {
+		return commitSha;
+	}
+
+	/**
+	 * SHA of the tree the filesystem root maps to.
+	 */
+	String getRootTreeSha() {
+		return rootTreeSha;
+	}
+
+	GitTreeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Looks up the entry for a filesystem path, null if it doesn't exist.
+	 */
+	@Nullable
+	GitTreeEntry lookup(GitHubPath path) throws IOException {
+		String pathString = ((GitHubPath) path.toAbsolutePath()).getPathString();
+		// Checked before resolving, so excluded trees aren't fetched
+		if (!filter.accepts(pathString, true)) {
+			return null;
+		}
+		GitTreeEntry entry = store.resolve(rootTreeSha, pathString);
+		return entry != null && filter.accepts(pathString, entry.isTree()) ? entry : null;
+	}
+
+	/**
+	 * Returns the tree of a directory, null if the path isn't a directory.
+	 */
+	@Nullable
+	GitTree list(GitHubPath dir) throws IOException {
+		GitTreeEntry entry = lookup(dir);
+		if (entry == null || !entry.isTree()) {
+			return null;
+		}
+		GitTree tree = store.get(entry.getSha());
+		if (filter.isEmpty()) {
+			return tree;
+		}
+		String prefix = ((GitHubPath) dir.toAbsolutePath()).getPathString();
+		prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+		List<GitTreeEntry> visible = new ArrayList<>();
+		for (GitTreeEntry child : tree.getEntries()) {
+			if (filter.accepts(prefix + child.getName(), child.isTree())) {
+				visible.add(child);
+			}
+		}
+		return new GitTree(tree.getSha(), visible, false);
+	}
+}
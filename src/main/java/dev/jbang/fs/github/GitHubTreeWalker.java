@@ -0,0 +1,197 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a file tree like {@link java.nio.file.Files#walk}, but lists
+ * directories ahead of the consumer on a fork/join pool: as soon as a
+ * directory is listed, the listings of its subdirectories are started, so
+ * sibling directories are listed concurrently and a walk takes about as long
+ * as its deepest path instead of the sum of all listings. With the tree
+ * index loaded listings don't need requests and the pool just spreads the
+ * work.
+ *
+ * The stream's spliterator splits off subtrees that haven't been visited
+ * yet, so parallel pipelines get independent parts of the tree to work on.
+ */
+class GitHubTreeWalker {
+
+	private static final class Node {
+		final GitHubPath path;
+		final boolean directory;
+
+		Node(GitHubPath path, boolean directory) {
+			this.path = path;
+			this.directory = directory;
+		}
+	}
+
+	private final GitHubFileSystem fs;
+	private final ForkJoinPool pool;
+	private final RequestContext context;
+	private final Map<GitHubPath, ForkJoinTask<List<Node>>> listings = new ConcurrentHashMap<>();
+
+	GitHubTreeWalker(GitHubFileSystem fs, int parallelism, RequestContext context) {
+		this.fs = fs;
+		this.pool = new ForkJoinPool(parallelism);
+		this.context = context;
+	}
+
+	/**
+	 * Returns a stream of the start path and everything below it, in the
+	 * order {@code Files.walk} would return them. The stream must be closed
+	 * to stop listings that are still running.
+	 */
+	Stream<Path> walk(GitHubPath start) throws IOException {
+		Node root;
+		try {
+			if (fs.getLoadedIndex() == null
+					&& fs.provider().getAccessPlanner().planWalk(fs, start) == AccessPlanner.Strategy.TREE) {
+				// Walks directory by directory when the tree turns out to be truncated
+				fs.getIndexIfLoadableAtOnce();
+			}
+			ContentInfo info = fs.provider().stat(start);
+			if (info == null) {
+				throw new NoSuchFileException(start.toString());
+			}
+			root = new Node(start, info.isDirectory());
+			prefetch(root);
+		} catch (IOException | RuntimeException e) {
+			// Nobody gets a stream to close
+			pool.shutdownNow();
+			throw e;
+		}
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.add(root);
+		return StreamSupport.stream(new WalkSpliterator(pending), false).onClose(pool::shutdownNow);
+	}
+
+	@SuppressWarnings("try")
+	private void prefetch(Node node) {
+		if (node.directory) {
+			listings.computeIfAbsent(node.path, p -> pool.submit(() -> {
+				try (RequestContext.Scope scope = context.enter()) {
+					return list(p);
+				}
+			}));
+		}
+	}
+
+	@SuppressWarnings("try")
+	private List<Node> children(Node node) {
+		ForkJoinTask<List<Node>> listing = listings.remove(node.path);
+		try {
+			if (listing == null) {
+				try (RequestContext.Scope scope = context.enter()) {
+					return list(node.path);
+				}
+			}
+			// Helps with the pool's work instead of just blocking when called from a worker
+			return listing.join();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (CancellationException e) {
+			throw new UncheckedIOException(new IOException("Walk of " + node.path + " was closed", e));
+		}
+	}
+
+	private List<Node> list(GitHubPath dir) throws IOException {
+		List<Node> children = new ArrayList<>();
+		GitHubTreeIndex index = fs.getLoadedIndex();
+		GitTree tree = index != null ? index.list(dir) : null;
+		if (tree != null) {
+			for (GitTreeEntry entry : tree.getEntries()) {
+				children.add(new Node((GitHubPath) dir.resolve(entry.getName()), entry.isTree()));
+			}
+			return children;
+		}
+		for (Path child : fs.provider().listDirectory(dir)) {
+			// Known from the listing, no request
+			ContentInfo info = fs.provider().stat((GitHubPath) child);
+			children.add(new Node((GitHubPath) child, info != null && info.isDirectory()));
+		}
+		return children;
+	}
+
+	/**
+	 * Visits the nodes of a frontier depth-first. A split hands out the
+	 * first half of the frontier, which comes first in the walk order.
+	 */
+	private class WalkSpliterator implements Spliterator<Path> {
+
+		private final Deque<Node> pending;
+
+		WalkSpliterator(Deque<Node> pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Path> action) {
+			Node node = pending.pollFirst();
+			if (node == null) {
+				return false;
+			}
+			if (node.directory) {
+				List<Node> children = children(node);
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.addFirst(children.get(i));
+				}
+				for (Node child : children) {
+					prefetch(child);
+				}
+			}
+			action.accept(node.path);
+			return true;
+		}
+
+		@Override
+		public Spliterator<Path> trySplit() {
+			Node first = pending.peekFirst();
+			if (pending.size() == 1 && first.directory) {
+				// Nothing to hand out yet, open the directory up without visiting it
+				pending.pollFirst();
+				List<Node> children = children(first);
+				pending.addAll(children);
+				pending.addFirst(new Node(first.path, false));
+				for (Node child : children) {
+					prefetch(child);
+				}
+			}
+			int half = pending.size() / 2;
+			if (half == 0) {
+				return null;
+			}
+			Deque<Node> prefix = new ArrayDeque<>(half);
+			for (int i = 0; i < half; i++) {
+				prefix.addLast(pending.pollFirst());
+			}
+			return new WalkSpliterator(prefix);
+		}
+
+		@Override
+		public long estimateSize() {
+			return pending.isEmpty() ? 0 : Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | NONNULL;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package dev.jbang.fs.github;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * A watch event for the GitHub filesystem. The context is the name of the
+ * affected entry relative to the watched directory.
+ */
+class GitHubWatchEvent<T> implements WatchEvent<T> {
+
+	private final Kind<T> kind;
+	private final T context;
+	private int count = 1;
+
+	GitHubWatchEvent(Kind<T> kind, T context) {
+		this.kind = kind;
+		this.context = context;
+	}
+
+	@Override
+	public Kind<T> kind() {
+		return kind;
+	}
+
+	@Override
+	public int count() {
+		return count;
+	}
+
+	@Override
+	public T context() {
+		return context;
+	}
+
+	void increment() {
+		count++;
+	}
+
+	@SuppressWarnings("unchecked")
+	static GitHubWatchEvent<Path> of(Kind<?> kind, Path context) {
+		return new GitHubWatchEvent<>((Kind<Path>) kind, context);
+	}
+
+	@Override
+	public String toString() {
+		return kind.name() + ": " + context;
+	}
+}
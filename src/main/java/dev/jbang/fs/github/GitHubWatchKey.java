@@ -0,0 +1,113 @@
+package dev.jbang.fs.github;
+
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watch key for a directory registered with a {@link GitHubWatchService}.
+ */
+class GitHubWatchKey implements WatchKey {
+
+	private static final int MAX_EVENT_LIST_SIZE = 512;
+
+	private final GitHubWatchService watcher;
+	private final GitHubPath dir;
+	private volatile Set<WatchEvent.Kind<?>> kinds;
+	private List<WatchEvent<?>> events = new ArrayList<>();
+	private boolean signalled;
+	private volatile boolean valid = true;
+
+	GitHubWatchKey(GitHubWatchService watcher, GitHubPath dir, Set<WatchEvent.Kind<?>> kinds) {
+		this.watcher = watcher;
+		this.dir = dir;
+		this.kinds = kinds;
+	}
+
+	GitHubPath getDirectory() {
+		return dir;
+	}
+
+	void setKinds(Set<WatchEvent.Kind<?>> kinds) {
+		this.kinds = kinds;
+	}
+
+	@Override
+	public boolean isValid() {
+		return valid;
+	}
+
+	@Override
+	public synchronized List<WatchEvent<?>> pollEvents() {
+		List<WatchEvent<?>> result = events;
+		events = new ArrayList<>();
+		return Collections.unmodifiableList(result);
+	}
+
+	@Override
+	public synchronized boolean reset() {
+		if (!valid) {
+			return false;
+		}
+		if (signalled) {
+			if (events.isEmpty()) {
+				signalled = false;
+			} else {
+				// Events arrived while the key was being processed, requeue it
+				watcher.enqueue(this);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void cancel() {
+		valid = false;
+		watcher.cancel(this);
+	}
+
+	@Override
+	public Path watchable() {
+		return dir;
+	}
+
+	/**
+	 * Queues an event for the given child name if its kind was registered,
+	 * and signals the key if it isn't signalled already.
+	 */
+	synchronized void signalEvent(WatchEvent.Kind<?> kind, Path context) {
+		if (kind != StandardWatchEventKinds.OVERFLOW && !kinds.contains(kind)) {
+			return;
+		}
+		if (events.size() >= MAX_EVENT_LIST_SIZE) {
+			kind = StandardWatchEventKinds.OVERFLOW;
+			context = null;
+		}
+		if (!events.isEmpty()) {
+			WatchEvent<?> last = events.get(events.size() - 1);
+			if (last.kind() == StandardWatchEventKinds.OVERFLOW
+					|| (last.kind() == kind && java.util.Objects.equals(last.context(), context))) {
+				((GitHubWatchEvent<?>) last).increment();
+				return;
+			}
+		}
+		events.add(GitHubWatchEvent.of(kind, context));
+		signal();
+	}
+
+	synchronized void signal() {
+		if (!signalled) {
+			signalled = true;
+			watcher.enqueue(this);
+		}
+	}
+
+	void invalidate() {
+		valid = false;
+	}
+}
@@ -0,0 +1,322 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * WatchService for the GitHub filesystem. Instead of listing the watched
+ * directories it polls the head of the ref with a conditional request (which
+ * is cheap and, for authenticated requests, doesn't count against the rate
+ * limit). Only when the commit changes are the old and new trees compared,
+ * descending only into subtrees whose SHA differs.
+ *
+ * The poll interval starts at the configured minimum, backs off while nothing
+ * changes and is stretched further when the remaining rate limit budget
+ * wouldn't allow polling that often.
+ */
+class GitHubWatchService implements WatchService {
+
+	private final GitHubFileSystem fs;
+	private final long minInterval;
+	private final long maxInterval;
+	private final List<GitHubWatchKey> keys = new CopyOnWriteArrayList<>();
+	private final LinkedBlockingDeque<GitHubWatchKey> pending = new LinkedBlockingDeque<>();
+	private final GitHubWatchKey closeKey;
+	private final ScheduledExecutorService scheduler;
+	private volatile boolean closed;
+
+	// Guarded by "this"
+	private @Nullable String etag;
+	private @Nullable String rootTreeSha;
+	private @Nullable String commitSha;
+	private long interval;
+	private boolean started;
+
+	GitHubWatchService(GitHubFileSystem fs, long minInterval, long maxInterval) {
+		this.fs = fs;
+		this.minInterval = minInterval;
+		this.maxInterval = Math.max(minInterval, maxInterval);
+		this.interval = minInterval;
+		this.closeKey = new GitHubWatchKey(this, null, Collections.emptySet());
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "github-fs-watch-" + fs.getRepoInfo());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	GitHubWatchKey register(GitHubPath dir, WatchEvent.Kind<?>... events) throws IOException {
+		checkOpen();
+		GitHubPath absDir = (GitHubPath) dir.toAbsolutePath();
+		Set<WatchEvent.Kind<?>> kinds = new HashSet<>();
+		for (WatchEvent.Kind<?> kind : events) {
+			if (kind == StandardWatchEventKinds.ENTRY_CREATE || kind == StandardWatchEventKinds.ENTRY_DELETE
+					|| kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+				kinds.add(kind);
+			} else if (kind != StandardWatchEventKinds.OVERFLOW) {
+				throw new UnsupportedOperationException("Unsupported event kind: " + kind.name());
+			}
+		}
+		String root = getRootTreeSha();
+		if (root == null) {
+			// Establish the baseline that later events are relative to
+			pollHead();
+			root = getRootTreeSha();
+		}
+		GitTreeEntry entry = fs.getTreeStore().resolve(root, fs.provider().toRepoRelativePath(absDir));
+		if (entry == null || !fs.getPathFilter().accepts(absDir.getPathString(), true)) {
+			throw new java.nio.file.NoSuchFileException(absDir.toString());
+		}
+		if (!entry.isTree()) {
+			throw new NotDirectoryException(absDir.toString());
+		}
+		synchronized (this) {
+			if (!started) {
+				started = true;
+				scheduleNextPoll(interval);
+			}
+		}
+		for (GitHubWatchKey key : keys) {
+			if (key.getDirectory().equals(absDir)) {
+				key.setKinds(kinds);
+				return key;
+			}
+		}
+		GitHubWatchKey key = new GitHubWatchKey(this, absDir, kinds);
+		keys.add(key);
+		return key;
+	}
+
+	private synchronized @Nullable String getRootTreeSha() {
+		return rootTreeSha;
+	}
+
+	private void scheduleNextPoll(long delay) {
+		if (!closed) {
+			scheduler.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@SuppressWarnings("try")
+	private void pollAndReschedule() {
+		long delay;
+		try (RequestContext.Scope scope = fs.requestScope(RequestPriority.BACKGROUND)) {
+			boolean changed = pollHead();
+			synchronized (this) {
+				interval = changed ? minInterval : Math.min(maxInterval, interval * 2);
+				delay = interval;
+			}
+		} catch (IOException | RuntimeException e) {
+			// Network trouble or rate limited, back off as far as we can
+			synchronized (this) {
+				interval = maxInterval;
+				delay = interval;
+			}
+		}
+		RateLimit rateLimit = fs.provider().getRateLimit();
+		long reserve = Math.max(0, rateLimit.getLimit() / 10);
+		delay = Math.max(delay, rateLimit.getMinimumSpacingMillis(reserve));
+		scheduleNextPoll(delay);
+	}
+
+	/**
+	 * Checks whether the ref moved and, if so, dispatches events for all
+	 * registered directories. The requests are made without holding the
+	 * lock, so registering and closing don't wait for a slow response.
+	 *
+	 * @return true if the ref points to a new commit
+	 */
+	boolean pollHead() throws IOException {
+		String previousEtag;
+		String previousCommitSha;
+		String previousRootTreeSha;
+		synchronized (this) {
+			previousEtag = etag;
+			previousCommitSha = commitSha;
+			previousRootTreeSha = rootTreeSha;
+		}
+		HttpResponse response = fs.provider().fetchHead(fs, previousEtag);
+		if (response.getStatusCode() == 304) {
+			return false;
+		}
+		String newCommitSha = response.getBodyAsString().trim();
+		if (newCommitSha.equals(previousCommitSha)) {
+			synchronized (this) {
+				etag = response.header("ETag");
+			}
+			return false;
+		}
+		GitTree newRoot = fs.getTreeStore().getCommitTree(newCommitSha);
+		// Fetch everything the events need first, if that fails the next poll diffs from the same root again
+		List<Runnable> dispatches = new ArrayList<>();
+		if (previousRootTreeSha != null && !previousRootTreeSha.equals(newRoot.getSha())) {
+			for (GitHubWatchKey key : keys) {
+				Runnable dispatch = diff(key, previousRootTreeSha, newRoot.getSha());
+				if (dispatch != null) {
+					dispatches.add(dispatch);
+				}
+			}
+		}
+		synchronized (this) {
+			if (!Objects.equals(commitSha, previousCommitSha)) {
+				// A concurrent poll got there first and dispatched the change
+				return false;
+			}
+			etag = response.header("ETag");
+			commitSha = newCommitSha;
+			rootTreeSha = newRoot.getSha();
+		}
+		for (Runnable dispatch : dispatches) {
+			dispatch.run();
+		}
+		return true;
+	}
+
+	/**
+	 * Walks down to the watched directory in both trees, stopping as soon as
+	 * both sides share the same SHA, and returns what reports the changed
+	 * children, null if there are none. Only the walk makes requests.
+	 */
+	@Nullable
+	private Runnable diff(GitHubWatchKey key, String oldRootSha, String newRootSha) throws IOException {
+		GitTreeStore store = fs.getTreeStore();
+		String oldSha = oldRootSha;
+		String newSha = newRootSha;
+		for (String segment : fs.provider().toRepoRelativePath(key.getDirectory()).split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			if (newSha.equals(oldSha)) {
+				return null;
+			}
+			GitTreeEntry newEntry = store.get(newSha).getEntry(segment);
+			if (newEntry == null || !newEntry.isTree()) {
+				// The watched directory is gone
+				return () -> {
+					keys.remove(key);
+					key.invalidate();
+					key.signal();
+				};
+			}
+			GitTreeEntry oldEntry = oldSha == null ? null : store.get(oldSha).getEntry(segment);
+			oldSha = oldEntry != null && oldEntry.isTree() ? oldEntry.getSha() : null;
+			newSha = newEntry.getSha();
+		}
+		if (newSha.equals(oldSha)) {
+			return null;
+		}
+
+		GitTree newTree = store.get(newSha);
+		GitTree oldTree = oldSha == null ? null : store.get(oldSha);
+		return () -> {
+			// Hold the key so a consumer woken by the first event sees all events of this change
+			synchronized (key) {
+				for (GitTreeEntry entry : newTree.getEntries()) {
+					GitTreeEntry previous = oldTree == null ? null : oldTree.getEntry(entry.getName());
+					if (!isVisible(key, entry)) {
+						// Doesn't exist as far as the filesystem is concerned
+						continue;
+					}
+					if (previous == null) {
+						key.signalEvent(StandardWatchEventKinds.ENTRY_CREATE, childName(key, entry));
+					} else if (!previous.getSha().equals(entry.getSha())
+							|| !previous.getMode().equals(entry.getMode())) {
+						key.signalEvent(StandardWatchEventKinds.ENTRY_MODIFY, childName(key, entry));
+					}
+				}
+				if (oldTree != null) {
+					for (GitTreeEntry entry : oldTree.getEntries()) {
+						if (newTree.getEntry(entry.getName()) == null && isVisible(key, entry)) {
+							key.signalEvent(StandardWatchEventKinds.ENTRY_DELETE, childName(key, entry));
+						}
+					}
+				}
+			}
+		};
+	}
+
+	private boolean isVisible(GitHubWatchKey key, GitTreeEntry entry) {
+		GitHubPath child = (GitHubPath) key.getDirectory().resolve(entry.getName());
+		return fs.getPathFilter().accepts(child.getPathString(), entry.isTree());
+	}
+
+	private static Path childName(GitHubWatchKey key, GitTreeEntry entry) {
+		return key.getDirectory().resolve(entry.getName()).getFileName();
+	}
+
+	void enqueue(GitHubWatchKey key) {
+		pending.offer(key);
+	}
+
+	void cancel(GitHubWatchKey key) {
+		keys.remove(key);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new ClosedWatchServiceException();
+		}
+	}
+
+	private WatchKey checkKey(@Nullable GitHubWatchKey key) {
+		if (key == closeKey) {
+			// Keep the marker around to wake up other waiting threads
+			pending.offer(closeKey);
+			throw new ClosedWatchServiceException();
+		}
+		return key;
+	}
+
+	@Override
+	public WatchKey poll() {
+		checkOpen();
+		return checkKey(pending.poll());
+	}
+
+	@Override
+	public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+		checkOpen();
+		return checkKey(pending.poll(timeout, unit));
+	}
+
+	@Override
+	public WatchKey take() throws InterruptedException {
+		checkOpen();
+		return checkKey(pending.take());
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		scheduler.shutdownNow();
+		for (GitHubWatchKey key : keys) {
+			key.invalidate();
+		}
+		keys.clear();
+		pending.clear();
+		pending.offer(closeKey);
+		fs.removeWatchService(this);
+	}
+}
@@ -0,0 +1,306 @@
+package dev.jbang.fs.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Receives GitHub push webhooks and moves the open filesystems of the
+ * pushed ref forward, evicting only the paths listed in the payload, so
+ * that they don't have to poll the head of their ref. Deliveries must be
+ * signed with the webhook's secret ({@code X-Hub-Signature-256}).
+ *
+ * Either {@link #start(InetSocketAddress) start} it on a port of its own,
+ * or mount it as a handler on an existing {@link HttpServer}.
+ */
+public final class GitHubWebhookListener implements HttpHandler, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GitHubWebhookListener.class.getName());
+
+	static final String PATH = "/webhook";
+	static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+	static final String EVENT_HEADER = "X-GitHub-Event";
+	/**
+	 * GitHub lists at most this many commits in a push payload, a push with
+	 * more may have changed paths that aren't listed.
+	 */
+	private static final int MAX_LISTED_COMMITS = 20;
+	/** GitHub doesn't deliver payloads above 25 MB, anything bigger isn't from GitHub. */
+	static final int MAX_PAYLOAD_BYTES = 25 * 1024 * 1024;
+
+	private final GitHubFileSystemProvider provider;
+	private final byte[] secret;
+	private @Nullable HttpServer server;
+	private @Nullable ExecutorService executor;
+
+	/**
+	 * @param provider the provider whose filesystems to update
+	 * @param secret the secret configured for the webhook on GitHub
+	 */
+	public GitHubWebhookListener(@NonNull GitHubFileSystemProvider provider, @NonNull String secret) {
+		if (secret.isEmpty()) {
+			throw new IllegalArgumentException("A webhook secret is required");
+		}
+		this.provider = provider;
+		this.secret = secret.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Starts listening on the given address, at {@link #getUrl()}.
+	 *
+	 * @return this listener
+	 */
+	public synchronized GitHubWebhookListener start(@NonNull InetSocketAddress address) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Already started");
+		}
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext(PATH, this);
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "github-fs-webhook");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.start();
+		this.server = server;
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * The payload URL to configure for the webhook, as seen from this host.
+	 */
+	@NonNull
+	public synchronized String getUrl() {
+		if (server == null) {
+			throw new IllegalStateException("Not started");
+		}
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getHostString() + ":" + address.getPort() + PATH;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+			executor = null;
+		}
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, "Only POST is supported");
+				return;
+			}
+			String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			if (length != null && isTooLong(length)) {
+				respond(exchange, 413, "Payload too large");
+				return;
+			}
+			// Unauthenticated until the signature is checked, so read no more than GitHub sends
+			byte[] body = readAll(exchange.getRequestBody(), MAX_PAYLOAD_BYTES);
+			if (body == null) {
+				respond(exchange, 413, "Payload too large");
+				return;
+			}
+			if (!verify(body, exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER))) {
+				respond(exchange, 401, "Invalid signature");
+				return;
+			}
+			String event = exchange.getRequestHeaders().getFirst(EVENT_HEADER);
+			if (!"push".equals(event)) {
+				// Includes the ping sent when the webhook is created
+				respond(exchange, 200, "Ignored " + event);
+				return;
+			}
+			JsonObject payload;
+			try {
+				payload = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+			} catch (JsonParseException | IllegalStateException e) {
+				respond(exchange, 400, "Invalid payload");
+				return;
+			}
+			int updated = 0;
+			int failed = 0;
+			for (GitHubFileSystem fs : affected(payload)) {
+				try {
+					fs.applyPush(string(payload, "before"), string(payload, "after"), changedPaths(payload));
+					updated++;
+				} catch (IOException | RuntimeException e) {
+					LOGGER.log(Level.FINE, "Failed to apply push to " + fs.getRepoInfo(), e);
+					failed++;
+				}
+			}
+			respond(exchange, failed > 0 ? 500 : 200, "Updated " + updated + ", failed " + failed);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Checks the HMAC-SHA256 of the body, in constant time.
+	 */
+	boolean verify(byte[] body, @Nullable String signature) {
+		if (signature == null || !signature.startsWith("sha256=")) {
+			return false;
+		}
+		byte[] expected = ("sha256=" + sign(body)).getBytes(StandardCharsets.US_ASCII);
+		return MessageDigest.isEqual(expected, signature.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	String sign(byte[] body) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : mac.doFinal(body)) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+			throw new IllegalStateException("HmacSHA256 not available", e);
+		}
+	}
+
+	/**
+	 * The open filesystems of the pushed ref. Deleted refs have nothing to
+	 * move to, they are left alone.
+	 */
+	private List<GitHubFileSystem> affected(JsonObject payload) {
+		List<GitHubFileSystem> affected = new ArrayList<>();
+		JsonElement repository = payload.get("repository");
+		String ref = string(payload, "ref");
+		if (repository == null || !repository.isJsonObject() || ref == null || string(payload, "before") == null
+				|| string(payload, "after") == null
+				|| flag(payload, "deleted")) {
+			return affected;
+		}
+		String fullName = string(repository.getAsJsonObject(), "full_name");
+		String htmlUrl = string(repository.getAsJsonObject(), "html_url");
+		String host = htmlUrl != null ? URI.create(htmlUrl).getHost() : null;
+		String name = ref.replaceFirst("^refs/(heads|tags)/", "");
+		for (GitHubFileSystem fs : provider.getOpenFileSystems()) {
+			GitHubRepoInfo info = fs.getRepoInfo();
+			if ((info.getOwner() + "/" + info.getRepo()).equalsIgnoreCase(fullName)
+					&& info.getHost().equalsIgnoreCase(host) && info.getRef().equals(name)) {
+				affected.add(fs);
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * The paths changed by the pushed commits, or null if the payload may not
+	 * list them all: on a forced push, or with more commits than are listed.
+	 */
+	@Nullable
+	private static Set<String> changedPaths(JsonObject payload) {
+		JsonElement commits = payload.get("commits");
+		if (flag(payload, "forced") || commits == null
+				|| !commits.isJsonArray() || commits.getAsJsonArray().size() >= MAX_LISTED_COMMITS) {
+			return null;
+		}
+		Set<String> paths = new LinkedHashSet<>();
+		for (JsonElement commit : commits.getAsJsonArray()) {
+			if (!commit.isJsonObject()) {
+				return null;
+			}
+			for (String kind : new String[] { "added", "removed", "modified" }) {
+				JsonElement list = commit.getAsJsonObject().get(kind);
+				if (list != null && list.isJsonArray()) {
+					for (JsonElement path : (JsonArray) list) {
+						if (!path.isJsonPrimitive()) {
+							return null;
+						}
+						paths.add(path.getAsString());
+					}
+				}
+			}
+		}
+		return paths;
+	}
+
+	@Nullable
+	private static String string(JsonObject object, String name) {
+		JsonElement value = object.get(name);
+		return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+	}
+
+	private static boolean flag(JsonObject object, String name) {
+		JsonElement value = object.get(name);
+		return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean()
+				&& value.getAsBoolean();
+	}
+
+	private static boolean isTooLong(String contentLength) {
+		try {
+			return Long.parseLong(contentLength.trim()) > MAX_PAYLOAD_BYTES;
+		} catch (NumberFormatException e) {
+			// Left to the capped read
+			return false;
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Reads the whole stream, or returns null as soon as it is longer than
+	 * the limit.
+	 */
+	private static byte @Nullable [] readAll(InputStream in, int limit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			if (out.size() + read > limit) {
+				return null;
+			}
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
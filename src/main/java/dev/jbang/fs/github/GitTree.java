@@ -0,0 +1,111 @@
+package dev.jbang.fs.github;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * An immutable git tree object. Trees are identified by their SHA so once
+ * fetched they never need to be fetched again.
+ */
+class GitTree {
+
+	private final String sha;
+	private final Map<String, GitTreeEntry> entries;
+	private final boolean truncated;
+
+	GitTree(@NonNull String sha, @NonNull List<GitTreeEntry> entries, boolean truncated) {
+		this.sha = sha;
+		Map<String, GitTreeEntry> map = new LinkedHashMap<>();
+		for (GitTreeEntry entry : entries) {
+			map.put(entry.getPath(), entry);
+		}
+		this.entries = Collections.unmodifiableMap(map);
+		this.truncated = truncated;
+	}
+
+	/**
+	 * Parses the response of the GitHub {@code git/trees} endpoint.
+	 */
+	static GitTree fromJson(JsonObject json) {
+		List<GitTreeEntry> entries = new java.util.ArrayList<>();
+		for (JsonElement element : json.getAsJsonArray("tree")) {
+			JsonObject item = element.getAsJsonObject();
+			entries.add(new GitTreeEntry(item.get("path").getAsString(), item.get("mode").getAsString(),
+					item.get("type").getAsString(), item.get("sha").getAsString(),
+					item.has("size") ? item.get("size").getAsLong() : -1));
+		}
+		boolean truncated = json.has("truncated") && json.get("truncated").getAsBoolean();
+		return new GitTree(json.get("sha").getAsString(), entries, truncated);
+	}
+
+	/**
+	 * Splits the flat listing of a recursive tree fetch into the individual
+	 * tree objects it is made of: the root tree itself and one per subtree.
+	 */
+	static List<GitTree> splitRecursive(GitTree recursive) {
+		return splitRecursive(recursive, dir -> true);
+	}
+
+	/**
+	 * Like {@link #splitRecursive(GitTree)}, but only returns the trees of the
+	 * directories (paths relative to the recursive tree) that are accepted.
+	 */
+	static List<GitTree> splitRecursive(GitTree recursive, java.util.function.Predicate<String> directories) {
+		Map<String, List<GitTreeEntry>> children = new LinkedHashMap<>();
+		Map<String, String> dirShas = new LinkedHashMap<>();
+		dirShas.put("", recursive.getSha());
+		children.put("", new java.util.ArrayList<>());
+		for (GitTreeEntry entry : recursive.getEntries()) {
+			String path = entry.getPath();
+			int lastSlash = path.lastIndexOf('/');
+			String parent = lastSlash < 0 ? "" : path.substring(0, lastSlash);
+			children.computeIfAbsent(parent, k -> new java.util.ArrayList<>()).add(entry.withPath(entry.getName()));
+			if (entry.isTree()) {
+				dirShas.put(path, entry.getSha());
+				children.computeIfAbsent(path, k -> new java.util.ArrayList<>());
+			}
+		}
+		List<GitTree> trees = new java.util.ArrayList<>();
+		for (Map.Entry<String, String> dir : dirShas.entrySet()) {
+			if (!dir.getKey().isEmpty() && !directories.test(dir.getKey())) {
+				continue;
+			}
+			trees.add(new GitTree(dir.getValue(), children.get(dir.getKey()), false));
+		}
+		return trees;
+	}
+
+	@NonNull
+	String getSha() {
+		return sha;
+	}
+
+	@NonNull
+	Iterable<GitTreeEntry> getEntries() {
+		return entries.values();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	@Nullable
+	GitTreeEntry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Whether GitHub cut the (recursive) listing short.
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+}
@@ -0,0 +1,190 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Lazily computes the changed files between two git trees. Subtrees with
+ * identical SHAs on both sides are skipped without being fetched, and changed
+ * subtrees are only fetched when the iteration reaches them, so the cost is
+ * proportional to the size of the change rather than the size of the trees.
+ *
+ * Only non-tree entries (files, symlinks and submodules) are reported; added
+ * or removed directories are expanded into their files.
+ */
+class GitTreeDiff implements Iterator<GitTreeDiff.Change> {
+
+	enum Kind {
+		ADDED, REMOVED, MODIFIED
+	}
+
+	static class Change {
+		private final Kind kind;
+		private final String path;
+		private final @Nullable GitTreeEntry oldEntry;
+		private final @Nullable GitTreeEntry newEntry;
+
+		Change(Kind kind, String path, @Nullable GitTreeEntry oldEntry, @Nullable GitTreeEntry newEntry) {
+			this.kind = kind;
+			this.path = path;
+			this.oldEntry = oldEntry;
+			this.newEntry = newEntry;
+		}
+
+		Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Path relative to the compared trees, without a leading slash.
+		 */
+		String getPath() {
+			return path;
+		}
+
+		@Nullable
+		GitTreeEntry getOldEntry() {
+			return oldEntry;
+		}
+
+		@Nullable
+		GitTreeEntry getNewEntry() {
+			return newEntry;
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + path;
+		}
+	}
+
+	private static class Pending {
+		final String prefix;
+		final @Nullable String oldSha;
+		final @Nullable String newSha;
+
+		Pending(String prefix, @Nullable String oldSha, @Nullable String newSha) {
+			this.prefix = prefix;
+			this.oldSha = oldSha;
+			this.newSha = newSha;
+		}
+	}
+
+	private final GitTreeStore oldStore;
+	private final GitTreeStore newStore;
+	private final Deque<Pending> pending = new ArrayDeque<>();
+	private final Deque<Change> changes = new ArrayDeque<>();
+	private PathFilter oldFilter = PathFilter.ALL;
+	private String oldBase = "";
+	private PathFilter newFilter = PathFilter.ALL;
+	private String newBase = "";
+
+	GitTreeDiff(GitTreeStore oldStore, GitTreeStore newStore, @Nullable String oldTreeSha,
+			@Nullable String newTreeSha) {
+		this.oldStore = oldStore;
+		this.newStore = newStore;
+		pending.push(new Pending("", oldTreeSha, newTreeSha));
+	}
+
+	/**
+	 * Leaves out what the filters of the two sides reject, as if it didn't
+	 * exist there. Subtrees rejected on both sides aren't fetched.
+	 *
+	 * @param oldBase the path of the old tree relative to the root the old
+	 *        filter applies to, empty or ending with a slash
+	 * @param newBase the same for the new tree
+	 */
+	GitTreeDiff filter(PathFilter oldFilter, String oldBase, PathFilter newFilter, String newBase) {
+		this.oldFilter = oldFilter;
+		this.oldBase = oldBase;
+		this.newFilter = newFilter;
+		this.newBase = newBase;
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (changes.isEmpty() && !pending.isEmpty()) {
+			try {
+				compare(pending.pop());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return !changes.isEmpty();
+	}
+
+	@Override
+	public Change next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return changes.poll();
+	}
+
+	private void compare(Pending dirs) throws IOException {
+		if (dirs.oldSha != null && dirs.oldSha.equals(dirs.newSha)) {
+			return;
+		}
+		GitTree oldTree = dirs.oldSha == null ? null : oldStore.get(dirs.oldSha);
+		GitTree newTree = dirs.newSha == null ? null : newStore.get(dirs.newSha);
+		if (newTree != null) {
+			for (GitTreeEntry entry : newTree.getEntries()) {
+				GitTreeEntry previous = oldTree == null ? null : oldTree.getEntry(entry.getName());
+				String path = dirs.prefix + entry.getName();
+				if (previous != null && !oldFilter.accepts(oldBase + path, previous.isTree())) {
+					previous = null;
+				}
+				if (!newFilter.accepts(newBase + path, entry.isTree())) {
+					if (previous != null) {
+						removed(path, previous);
+					}
+					continue;
+				}
+				if (previous == null) {
+					added(path, entry);
+				} else if (previous.isTree() && entry.isTree()) {
+					if (!previous.getSha().equals(entry.getSha())) {
+						pending.push(new Pending(path + "/", previous.getSha(), entry.getSha()));
+					}
+				} else if (previous.isTree() || entry.isTree()) {
+					removed(path, previous);
+					added(path, entry);
+				} else if (!previous.getSha().equals(entry.getSha()) || !previous.getMode().equals(entry.getMode())) {
+					changes.add(new Change(Kind.MODIFIED, path, previous, entry));
+				}
+			}
+		}
+		if (oldTree != null) {
+			for (GitTreeEntry entry : oldTree.getEntries()) {
+				String path = dirs.prefix + entry.getName();
+				if ((newTree == null || newTree.getEntry(entry.getName()) == null)
+						&& oldFilter.accepts(oldBase + path, entry.isTree())) {
+					removed(path, entry);
+				}
+			}
+		}
+	}
+
+	private void added(String path, GitTreeEntry entry) {
+		if (entry.isTree()) {
+			pending.push(new Pending(path + "/", null, entry.getSha()));
+		} else {
+			changes.add(new Change(Kind.ADDED, path, null, entry));
+		}
+	}
+
+	private void removed(String path, GitTreeEntry entry) {
+		if (entry.isTree()) {
+			pending.push(new Pending(path + "/", entry.getSha(), null));
+		} else {
+			changes.add(new Change(Kind.REMOVED, path, entry, null));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package dev.jbang.fs.github;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * A single entry of a git tree object as returned by the GitHub trees API.
+ */
+class GitTreeEntry {
+
+	static final String TYPE_BLOB = "blob";
+	static final String TYPE_TREE = "tree";
+	static final String TYPE_COMMIT = "commit";
+
+	private final String path;
+	private final String mode;
+	private final String type;
+	private final String sha;
+	private final long size;
+
+	GitTreeEntry(@NonNull String path, @NonNull String mode, @NonNull String type, @NonNull String sha, long size) {
+		this.path = path;
+		this.mode = mode;
+		this.type = type;
+		this.sha = sha;
+		this.size = size;
+	}
+
+	/**
+	 * The entry name for a non-recursive tree, or the path relative to the
+	 * tree for a recursive one.
+	 */
+	@NonNull
+	String getPath() {
+		return path;
+	}
+
+	@NonNull
+	String getName() {
+		int lastSlash = path.lastIndexOf('/');
+		return lastSlash < 0 ? path : path.substring(lastSlash + 1);
+	}
+
+	@NonNull
+	String getMode() {
+		return mode;
+	}
+
+	@NonNull
+	String getType() {
+		return type;
+	}
+
+	@NonNull
+	String getSha() {
+		return sha;
+	}
+
+	/**
+	 * Size in bytes for blobs, -1 for trees and submodules.
+	 */
+	long getSize() {
+		return size;
+	}
+
+	boolean isTree() {
+		return TYPE_TREE.equals(type);
+	}
+
+	boolean isBlob() {
+		return TYPE_BLOB.equals(type);
+	}
+
+	GitTreeEntry withPath(String newPath) {
+		return new GitTreeEntry(newPath, mode, type, sha, size);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s %s\t%s", mode, type, sha, path);
+	}
+}
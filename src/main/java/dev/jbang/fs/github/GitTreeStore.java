@@ -0,0 +1,356 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Cache of git tree objects keyed by their SHA. Since tree objects are
+ * immutable, cached trees never need to be invalidated, and the filesystems
+ * of all refs of a repository share one store: each gets a view with its own
+ * loader through {@link #withLoader(TreeLoader)}. A tree that several of them
+ * need at the same time is fetched once. Every refresh adds the trees of a new
+ * commit, so the least recently used trees are evicted beyond a total number
+ * of entries, and fetched again if they are needed after all.
+ */
+class GitTreeStore {
+
+	interface TreeLoader {
+		GitTree load(String sha) throws IOException;
+	}
+
+	/**
+	 * Tree entries kept in total, about a quarter of a gigabyte at most. The
+	 * trees of several commits of a very big repository fit.
+	 */
+	static final long MAX_ENTRIES = 1_000_000;
+
+	/** Root trees of commits remembered, a refresh adds one. */
+	private static final int MAX_COMMITS = 1000;
+
+	private final Trees trees;
+	private final Map<String, String> commitTrees;
+	private final Map<String, CompletableFuture<GitTree>> loading;
+	/** Whether the recursive tree below a base path came back truncated. */
+	private final Map<String, Boolean> truncated;
+	private final Executor executor;
+	private final TreeLoader loader;
+
+	/**
+	 * @param executor runs the fetches of {@link #loadAll}, which bounds its
+	 *        own parallelism
+	 */
+	GitTreeStore(TreeLoader loader, Executor executor) {
+		this(loader, executor, MAX_ENTRIES);
+	}
+
+	GitTreeStore(TreeLoader loader, Executor executor, long maxEntries) {
+		this(new Trees(maxEntries), Collections.synchronizedMap(new LinkedHashMap<String, String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > MAX_COMMITS;
+			}
+		}), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), executor, loader);
+	}
+
+	private GitTreeStore(Trees trees, Map<String, String> commitTrees,
+			Map<String, CompletableFuture<GitTree>> loading, Map<String, Boolean> truncated, Executor executor,
+			TreeLoader loader) {
+		this.trees = trees;
+		this.commitTrees = commitTrees;
+		this.loading = loading;
+		this.truncated = truncated;
+		this.executor = executor;
+		this.loader = loader;
+	}
+
+	/**
+	 * Returns a store sharing everything with this one, but fetching missing
+	 * trees with the given loader.
+	 */
+	GitTreeStore withLoader(TreeLoader loader) {
+		return new GitTreeStore(trees, commitTrees, loading, truncated, executor, loader);
+	}
+
+	/**
+	 * Records whether fetching everything below the base path with one
+	 * recursive request missed entries.
+	 */
+	void putTruncated(String basePath, boolean isTruncated) {
+		truncated.put(basePath, isTruncated);
+	}
+
+	/**
+	 * Returns whether the recursive tree below the base path came back
+	 * truncated, null if it hasn't been fetched yet.
+	 */
+	@Nullable
+	Boolean isTruncated(String basePath) {
+		return truncated.get(basePath);
+	}
+
+	/**
+	 * Returns the tree with the given SHA, fetching it if it isn't known yet.
+	 */
+	GitTree get(String sha) throws IOException {
+		GitTree tree = trees.get(sha);
+		return tree != null ? tree : load(sha);
+	}
+
+	/**
+	 * Fetches and stores a tree, or waits for the fetch another view of the
+	 * store has already started.
+	 */
+	private GitTree load(String treeIsh) throws IOException {
+		CompletableFuture<GitTree> fetch = new CompletableFuture<>();
+		CompletableFuture<GitTree> running = loading.putIfAbsent(treeIsh, fetch);
+		if (running != null) {
+			try {
+				return running.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for tree " + treeIsh);
+			}
+		}
+		try {
+			// It may have arrived while we registered
+			GitTree tree = trees.get(treeIsh);
+			if (tree == null) {
+				tree = loader.load(treeIsh);
+				put(tree);
+			}
+			fetch.complete(tree);
+			return tree;
+		} catch (IOException | RuntimeException e) {
+			fetch.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(treeIsh, fetch);
+		}
+	}
+
+	/**
+	 * Returns the root tree of the given commit. The trees API accepts any
+	 * tree-ish, so this costs a single request the first time.
+	 */
+	GitTree getCommitTree(String commitSha) throws IOException {
+		String treeSha = commitTrees.get(commitSha);
+		if (treeSha != null) {
+			return get(treeSha);
+		}
+		GitTree tree = load(commitSha);
+		commitTrees.put(commitSha, tree.getSha());
+		return tree;
+	}
+
+	/**
+	 * Records the root tree of a commit.
+	 */
+	void putCommitTree(String commitSha, String treeSha) {
+		commitTrees.put(commitSha, treeSha);
+	}
+
+	@Nullable
+	GitTree getIfPresent(String sha) {
+		return trees.get(sha);
+	}
+
+	void put(GitTree tree) {
+		trees.put(tree.getSha(), tree);
+	}
+
+	int size() {
+		return trees.size();
+	}
+
+	/**
+	 * The trees shared by all views, kept in least recently used order and
+	 * weighed by their number of entries.
+	 */
+	private static final class Trees {
+		private final long maxEntries;
+		private final LinkedHashMap<String, GitTree> map = new LinkedHashMap<>(16, 0.75f, true);
+		private long entries;
+
+		Trees(long maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		synchronized @Nullable GitTree get(String sha) {
+			return map.get(sha);
+		}
+
+		synchronized void put(String sha, GitTree tree) {
+			GitTree previous = map.put(sha, tree);
+			entries += weight(tree) - (previous != null ? weight(previous) : 0);
+			Iterator<GitTree> eldest = map.values().iterator();
+			// The tree just added is the most recently used, it stays
+			while (entries > maxEntries && map.size() > 1) {
+				entries -= weight(eldest.next());
+				eldest.remove();
+			}
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		private static long weight(GitTree tree) {
+			return 1 + tree.size();
+		}
+	}
+
+	/**
+	 * Makes sure the tree with the given SHA and all its subtrees are in the
+	 * store, fetching the missing ones one by one (non-recursively) with up
+	 * to {@code parallelism} requests in flight. This is the way to get a
+	 * tree that is too big for the recursive trees API, which truncates its
+	 * answer. Trees that are already in the store aren't fetched again, and
+	 * a subtree that occurs several times is fetched once.
+	 */
+	void loadAll(String rootSha, int parallelism) throws IOException {
+		loadAll(rootSha, parallelism, PathFilter.ALL);
+	}
+
+	/**
+	 * Like {@link #loadAll(String, int)}, but skips the subtrees the filter
+	 * rejects. Paths are relative to the root tree.
+	 */
+	@SuppressWarnings("try")
+	void loadAll(String rootSha, int parallelism, PathFilter filter) throws IOException {
+		// The executor is shared, the permits bound this call's fetches
+		Semaphore permits = new Semaphore(parallelism);
+		// The workers fetch on behalf of the caller, with its priority
+		RequestContext context = RequestContext.current();
+		CompletionService<PendingTree> completion = new ExecutorCompletionService<>(executor);
+		List<Future<PendingTree>> submitted = new ArrayList<>();
+		Deque<PendingTree> pending = new ArrayDeque<>();
+		Set<String> seen = new HashSet<>();
+		pending.add(new PendingTree(rootSha, ""));
+		seen.add(rootSha);
+		int inFlight = 0;
+		try {
+			while (!pending.isEmpty() || inFlight > 0) {
+				// Only the SHAs queue up, the fetches in flight are bounded
+				while (!pending.isEmpty() && permits.tryAcquire()) {
+					PendingTree next = pending.poll();
+					GitTree cached = trees.get(next.sha);
+					if (cached != null) {
+						permits.release();
+						addSubtrees(next.path, cached, filter, pending, seen);
+						continue;
+					}
+					submitted.add(completion.submit(() -> {
+						try (RequestContext.Scope scope = context.enter()) {
+							return new PendingTree(load(next.sha), next.path);
+						} finally {
+							permits.release();
+						}
+					}));
+					inFlight++;
+				}
+				if (inFlight == 0) {
+					continue;
+				}
+				Future<PendingTree> done = completion.take();
+				inFlight--;
+				PendingTree tree;
+				try {
+					tree = done.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException("Fetching tree " + rootSha + " failed", cause);
+				}
+				addSubtrees(tree.path, tree.tree, filter, pending, seen);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching tree " + rootSha);
+		} finally {
+			for (Future<PendingTree> future : submitted) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static void addSubtrees(String path, GitTree tree, PathFilter filter, Deque<PendingTree> pending,
+			Set<String> seen) {
+		for (GitTreeEntry entry : tree.getEntries()) {
+			if (!entry.isTree()) {
+				continue;
+			}
+			String entryPath = path.isEmpty() ? entry.getName() : path + "/" + entry.getName();
+			// With a filter what is visible below a tree depends on where it is, so go by path
+			if (filter.accepts(entryPath, true) && seen.add(filter.isEmpty() ? entry.getSha() : entryPath)) {
+				pending.add(new PendingTree(entry.getSha(), entryPath));
+			}
+		}
+	}
+
+	private static final class PendingTree {
+		final String sha;
+		final String path;
+		@Nullable
+		GitTree tree;
+
+		PendingTree(String sha, String path) {
+			this.sha = sha;
+			this.path = path;
+		}
+
+		PendingTree(GitTree tree, String path) {
+			this(tree.getSha(), path);
+			this.tree = tree;
+		}
+	}
+
+	/**
+	 * Looks up the entry for a slash separated path relative to the given root
+	 * tree. The empty path resolves to a synthetic entry for the root tree
+	 * itself. Returns null if the path doesn't exist.
+	 */
+	@Nullable
+	GitTreeEntry resolve(String rootSha, String relativePath) throws IOException {
+		GitTreeEntry current = new GitTreeEntry("", "040000", GitTreeEntry.TYPE_TREE, rootSha, -1);
+		for (String segment : relativePath.split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			if (!current.isTree()) {
+				return null;
+			}
+			current = get(current.getSha()).getEntry(segment);
+			if (current == null) {
+				return null;
+			}
+		}
+		return current;
+	}
+}
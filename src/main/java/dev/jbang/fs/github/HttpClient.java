@@ -1,6 +1,9 @@
 package dev.jbang.fs.github;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 
 /**
  * Simple HTTP client interface for making HTTP requests.
@@ -26,5 +29,45 @@ public interface HttpClient {
 	 * @throws IOException if the request fails
 	 */
 	java.nio.file.Path downloadAndCacheFile(String url) throws IOException;
-}
 
+	/**
+	 * Downloads a file like {@link #downloadAndCacheFile(String)}, honoring
+	 * the timeout and headers of the request. The timeout applies to
+	 * connecting and to each read, not to the whole download.
+	 *
+	 * The default implementation ignores everything but the URL, so that
+	 * existing implementations keep working.
+	 *
+	 * @param request the GET request of the file
+	 * @return Path to the downloaded/cached file
+	 * @throws IOException if the request fails
+	 */
+	default java.nio.file.Path download(HttpRequest request) throws IOException {
+		return downloadAndCacheFile(request.getUrl());
+	}
+
+	/**
+	 * Sends a request and returns the buffered response, whatever its status
+	 * code. Unlike the download methods this gives access to the response
+	 * headers and allows conditional requests (returning 304).
+	 *
+	 * The default implementation only supports plain GET requests by
+	 * delegating to {@link #downloadString(String)}, so that existing
+	 * implementations keep working.
+	 *
+	 * @param request the request to send
+	 * @return the response
+	 * @throws IOException if the request could not be sent
+	 */
+	default HttpResponse send(HttpRequest request) throws IOException {
+		if (!"GET".equals(request.getMethod())) {
+			throw new UnsupportedOperationException("Method not supported: " + request.getMethod());
+		}
+		try {
+			String content = downloadString(request.getUrl());
+			return new HttpResponse(200, Collections.emptyMap(), content.getBytes(StandardCharsets.UTF_8));
+		} catch (FileNotFoundException e) {
+			return new HttpResponse(404, Collections.emptyMap(), null);
+		}
+	}
+}
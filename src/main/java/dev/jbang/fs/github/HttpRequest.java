@@ -0,0 +1,131 @@
+package dev.jbang.fs.github;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A simple HTTP request description used by {@link HttpClient#send(HttpRequest)}.
+ */
+public class HttpRequest {
+
+	private final String method;
+	private final String url;
+	private final Map<String, String> headers = new LinkedHashMap<>();
+	private long timeoutMillis;
+	private byte @Nullable [] body;
+	private @Nullable Runnable onResponse;
+
+	public HttpRequest(@NonNull String method, @NonNull String url) {
+		this.method = method;
+		this.url = url;
+	}
+
+	public static HttpRequest get(@NonNull String url) {
+		return new HttpRequest("GET", url);
+	}
+
+	public static HttpRequest head(@NonNull String url) {
+		return new HttpRequest("HEAD", url);
+	}
+
+	public static HttpRequest post(@NonNull String url, byte @NonNull [] body) {
+		return new HttpRequest("POST", url).body(body);
+	}
+
+	/**
+	 * Adds a request header, replacing any previous value with the same name.
+	 *
+	 * @return this request
+	 */
+	public HttpRequest header(@NonNull String name, @NonNull String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Sets the connect and read timeout for this request, overriding the
+	 * client's default.
+	 *
+	 * @return this request
+	 */
+	public HttpRequest timeout(long millis) {
+		this.timeoutMillis = millis;
+		return this;
+	}
+
+	/**
+	 * Sets the request body.
+	 *
+	 * @return this request
+	 */
+	public HttpRequest body(byte @Nullable [] body) {
+		this.body = body;
+		return this;
+	}
+
+	/**
+	 * Sets what to run once the status and headers of the response are in,
+	 * before the body is read. Clients that can't tell may not run it.
+	 *
+	 * @return this request
+	 */
+	HttpRequest onResponse(@Nullable Runnable onResponse) {
+		this.onResponse = onResponse;
+		return this;
+	}
+
+	/**
+	 * Called by clients once the status and headers of the response are in.
+	 */
+	void responseStarted() {
+		if (onResponse != null) {
+			onResponse.run();
+		}
+	}
+
+	/**
+	 * Returns a new request with the same method, URL, headers, timeout, body
+	 * and response callback, for decorators that adjust a request without
+	 * changing the caller's.
+	 */
+	HttpRequest copy() {
+		HttpRequest copy = new HttpRequest(method, url).timeout(timeoutMillis).body(body).onResponse(onResponse);
+		copy.headers.putAll(headers);
+		return copy;
+	}
+
+	@NonNull
+	public String getMethod() {
+		return method;
+	}
+
+	@NonNull
+	public String getUrl() {
+		return url;
+	}
+
+	@NonNull
+	public Map<String, String> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * @return the timeout in milliseconds, or 0 to use the client's default
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public byte @Nullable [] getBody() {
+		return body;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + url;
+	}
+}
@@ -0,0 +1,57 @@
+package dev.jbang.fs.github;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A fully buffered HTTP response as returned by {@link HttpClient#send(HttpRequest)}.
+ * Header names are matched case-insensitively.
+ */
+public class HttpResponse {
+
+	private static final byte[] NO_BODY = new byte[0];
+
+	private final int statusCode;
+	private final Map<String, String> headers;
+	private final byte[] body;
+
+	public HttpResponse(int statusCode, @NonNull Map<String, String> headers, byte @Nullable [] body) {
+		this.statusCode = statusCode;
+		TreeMap<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		map.putAll(headers);
+		this.headers = Collections.unmodifiableMap(map);
+		this.body = body != null ? body : NO_BODY;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public boolean isSuccessful() {
+		return statusCode >= 200 && statusCode < 300;
+	}
+
+	@NonNull
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	@Nullable
+	public String header(@NonNull String name) {
+		return headers.get(name);
+	}
+
+	public byte @NonNull [] getBody() {
+		return body;
+	}
+
+	@NonNull
+	public String getBodyAsString() {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+}
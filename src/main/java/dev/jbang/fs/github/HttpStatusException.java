@@ -0,0 +1,23 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a download is answered with an unexpected status code, so
+ * callers can tell a server that answered from one that couldn't be reached.
+ */
+class HttpStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	HttpStatusException(int statusCode, String url) {
+		super("HTTP request failed with code " + statusCode + " for URL: " + url);
+		this.statusCode = statusCode;
+	}
+
+	int getStatusCode() {
+		return statusCode;
+	}
+}
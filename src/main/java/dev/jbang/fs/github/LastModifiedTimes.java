@@ -0,0 +1,128 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last modified times of the paths of a filesystem: the date of the last
+ * commit that touched a path. Times are only fetched when asked for and are
+ * cached per commit, so they don't change until the path itself does. With a
+ * token the times of a whole directory are fetched with one GraphQL query
+ * the first time one of its entries is asked for, without one each path costs
+ * a REST request.
+ */
+class LastModifiedTimes {
+
+	/**
+	 * The most paths asked for in one GraphQL query, which is limited in size.
+	 */
+	static final int MAX_BATCH_SIZE = 100;
+
+	private static final int MAX_COMMITS = 4;
+
+	private final GitHubFileSystem fs;
+	private final Map<String, Map<String, FileTime>> timesByCommit = new LinkedHashMap<String, Map<String, FileTime>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Map<String, FileTime>> eldest) {
+			return size() > MAX_COMMITS;
+		}
+	};
+
+	LastModifiedTimes(GitHubFileSystem fs) {
+		this.fs = fs;
+	}
+
+	FileTime get(GitHubPath path) throws IOException {
+		GitHubPath absPath = (GitHubPath) path.toAbsolutePath();
+		String commitSha = fs.getCommitSha();
+		String repoPath = fs.provider().toRepoRelativePath(absPath);
+		Map<String, FileTime> times = timesFor(commitSha);
+		FileTime time = times.get(repoPath);
+		if (time != null) {
+			return time;
+		}
+		if (fs.getToken() != null) {
+			List<String> batch = batchFor(absPath, repoPath, times);
+			for (Map.Entry<String, Instant> date : fs.provider()
+				.fetchLastCommitDates(fs, commitSha, batch)
+				.entrySet()) {
+				times.put(date.getKey(), FileTime.from(date.getValue()));
+			}
+		} else {
+			times.put(repoPath, FileTime.from(fs.provider().fetchLastCommitDate(fs, commitSha, repoPath)));
+		}
+		time = times.get(repoPath);
+		if (time == null) {
+			throw new NoSuchFileException(path.toString());
+		}
+		return time;
+	}
+
+	private Map<String, FileTime> timesFor(String commitSha) {
+		synchronized (timesByCommit) {
+			return timesByCommit.computeIfAbsent(commitSha, c -> new ConcurrentHashMap<>());
+		}
+	}
+
+	/**
+	 * Returns the path together with its siblings whose times aren't known
+	 * yet, as far as the directory listing is at hand without a request.
+	 */
+	private List<String> batchFor(GitHubPath path, String repoPath, Map<String, FileTime> times) throws IOException {
+		List<String> batch = new ArrayList<>();
+		batch.add(repoPath);
+		GitHubPath parent = (GitHubPath) path.getParent();
+		if (parent == null) {
+			return batch;
+		}
+		String parentRepoPath = fs.provider().toRepoRelativePath(parent);
+		String prefix = parentRepoPath.isEmpty() ? "" : parentRepoPath + "/";
+		for (String name : knownChildren(parent)) {
+			if (batch.size() >= MAX_BATCH_SIZE) {
+				break;
+			}
+			String sibling = prefix + name;
+			if (!sibling.equals(repoPath) && !times.containsKey(sibling)) {
+				batch.add(sibling);
+			}
+		}
+		return batch;
+	}
+
+	private List<String> knownChildren(GitHubPath dir) throws IOException {
+		GitHubTreeIndex index = fs.getLoadedIndex();
+		if (index != null) {
+			GitTree tree = index.list(dir);
+			List<String> names = new ArrayList<>();
+			if (tree != null) {
+				for (GitTreeEntry entry : tree.getEntries()) {
+					names.add(entry.getName());
+				}
+			}
+			return names;
+		}
+		ContentInfo info = fs.getContentInfoCache().get(dir.getPathString());
+		if (info == null || info.getChildren() == null) {
+			return Collections.emptyList();
+		}
+		List<String> names = new ArrayList<>();
+		String prefix = dir.getPathString().endsWith("/") ? dir.getPathString() : dir.getPathString() + "/";
+		for (String name : info.getChildren()) {
+			if (fs.getPathFilter().accepts(prefix + name, true)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+}
@@ -0,0 +1,39 @@
+package dev.jbang.fs.github;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies of an endpoint to derive
+ * percentiles from, for adaptive timeouts and hedging delays.
+ */
+class LatencyTracker {
+
+	private final long[] samples;
+	private final int minSamples;
+	private int next;
+	private int count;
+
+	LatencyTracker(int capacity, int minSamples) {
+		this.samples = new long[capacity];
+		this.minSamples = minSamples;
+	}
+
+	synchronized void record(long millis) {
+		samples[next] = millis;
+		next = (next + 1) % samples.length;
+		count = Math.min(count + 1, samples.length);
+	}
+
+	/**
+	 * Returns the given percentile (between 0 and 1) of the recorded
+	 * latencies in milliseconds, or -1 if there are too few samples yet.
+	 */
+	synchronized long percentile(double p) {
+		if (count < minSamples) {
+			return -1;
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+	}
+}
@@ -0,0 +1,105 @@
+package dev.jbang.fs.github;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * HttpClient decorator that runs every request through a shared
+ * {@link ConcurrencyLimiter} and feeds the outcome back into it. Requests
+ * are queued according to the calling thread's {@link RequestContext}.
+ */
+class LimitedHttpClient implements HttpClient {
+
+	private final HttpClient delegate;
+	private final ConcurrencyLimiter limiter;
+
+	LimitedHttpClient(HttpClient delegate, ConcurrencyLimiter limiter) {
+		this.delegate = delegate;
+		this.limiter = limiter;
+	}
+
+	ConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+
+	@Override
+	public String downloadString(String url) throws IOException {
+		return call(() -> delegate.downloadString(url), false);
+	}
+
+	@Override
+	public Path downloadAndCacheFile(String url) throws IOException {
+		// Download time depends on the size, so it is no measure of congestion
+		return call(() -> delegate.downloadAndCacheFile(url), true);
+	}
+
+	@Override
+	public Path download(HttpRequest request) throws IOException {
+		return call(() -> delegate.download(request), true);
+	}
+
+	@Override
+	public HttpResponse send(HttpRequest request) throws IOException {
+		ConcurrencyLimiter.Permit permit = limiter.acquire(RequestContext.current());
+		long start = System.nanoTime();
+		ConcurrencyLimiter.Outcome outcome = ConcurrencyLimiter.Outcome.DROPPED;
+		try {
+			HttpResponse response = delegate.send(request);
+			outcome = isThrottled(response) ? ConcurrencyLimiter.Outcome.DROPPED
+					: ConcurrencyLimiter.Outcome.SUCCESS;
+			return response;
+		} catch (IOException e) {
+			outcome = classify(e);
+			throw e;
+		} finally {
+			limiter.release(permit, outcome, System.nanoTime() - start);
+		}
+	}
+
+	private interface Call<T> {
+		T run() throws IOException;
+	}
+
+	private <T> T call(Call<T> call, boolean sizeDependent) throws IOException {
+		ConcurrencyLimiter.Permit permit = limiter.acquire(RequestContext.current());
+		long start = System.nanoTime();
+		ConcurrencyLimiter.Outcome outcome = ConcurrencyLimiter.Outcome.DROPPED;
+		try {
+			T result = call.run();
+			outcome = sizeDependent ? ConcurrencyLimiter.Outcome.IGNORED : ConcurrencyLimiter.Outcome.SUCCESS;
+			return result;
+		} catch (IOException e) {
+			outcome = classify(e);
+			throw e;
+		} finally {
+			limiter.release(permit, outcome, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Whether GitHub pushed back on the request: 429, a 403 from the
+	 * secondary rate limit or abuse detection, or an overloaded server.
+	 */
+	static boolean isThrottled(HttpResponse response) {
+		int status = response.getStatusCode();
+		if (status == 429 || status == 502 || status == 503 || status == 504) {
+			return true;
+		}
+		if (status == 403) {
+			return response.header("Retry-After") != null || "0".equals(response.header("X-RateLimit-Remaining"))
+					|| response.getBodyAsString().toLowerCase(Locale.ROOT).contains("rate limit");
+		}
+		return false;
+	}
+
+	private static ConcurrencyLimiter.Outcome classify(IOException e) {
+		if (e instanceof FileNotFoundException) {
+			// A plain 404, the server answered just fine
+			return ConcurrencyLimiter.Outcome.IGNORED;
+		}
+		// Throttling, timeouts and failed or reset connections all suggest we push too hard
+		return ConcurrencyLimiter.Outcome.DROPPED;
+	}
+}
@@ -0,0 +1,97 @@
+package dev.jbang.fs.github;
+
+import java.nio.file.Path;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Options for {@link GitHubFileSystem#materialize(Path, Path, MaterializeOptions)}.
+ */
+public class MaterializeOptions {
+
+	/**
+	 * How the content is fetched.
+	 */
+	public enum Mode {
+		/** Pick between {@link #FILES} and {@link #ARCHIVE} based on the size of the subtree. */
+		AUTO,
+		/** Download each file separately, in parallel. */
+		FILES,
+		/** Download a single archive of the commit and extract the subtree from it. */
+		ARCHIVE
+	}
+
+	/**
+	 * Receives progress updates, possibly from several threads at once.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * Called after each file has been written or found to be up to date.
+		 *
+		 * @param file the local file
+		 * @param completed number of files done so far, including this one
+		 * @param total total number of files to materialize
+		 * @param skipped true if the local file already had the right content
+		 */
+		void fileCompleted(@NonNull Path file, int completed, int total, boolean skipped);
+	}
+
+	private int parallelism = 8;
+	private Mode mode = Mode.AUTO;
+	private int archiveThreshold = 200;
+	private @Nullable ProgressListener progressListener;
+
+	public static MaterializeOptions defaults() {
+		return new MaterializeOptions();
+	}
+
+	/**
+	 * Maximum number of concurrent downloads in {@link Mode#FILES} mode.
+	 */
+	public MaterializeOptions parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	public MaterializeOptions mode(@NonNull Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	/**
+	 * Number of files from which {@link Mode#AUTO} considers downloading an
+	 * archive instead of the individual files.
+	 */
+	public MaterializeOptions archiveThreshold(int archiveThreshold) {
+		this.archiveThreshold = archiveThreshold;
+		return this;
+	}
+
+	public MaterializeOptions progressListener(@Nullable ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	@NonNull
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getArchiveThreshold() {
+		return archiveThreshold;
+	}
+
+	@Nullable
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+}
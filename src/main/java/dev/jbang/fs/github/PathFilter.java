@@ -0,0 +1,155 @@
+package dev.jbang.fs.github;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code include} and {@code exclude} globs of a filesystem. Paths that
+ * the filter rejects behave as if they didn't exist, and since the decision
+ * is made per directory, excluded subtrees are never listed or fetched.
+ *
+ * Patterns use the glob syntax of {@link GitHubPathMatcher} and are relative
+ * to the filesystem root (a leading slash is ignored). A pattern matching a
+ * directory matches everything below it, and so does a pattern matching the
+ * directory with a trailing slash, so {@code modules/core/**} includes the
+ * directory {@code modules/core} itself. Without include patterns everything
+ * that isn't excluded is included. The directories leading to what an
+ * include pattern may match are visible too, with only those children.
+ */
+class PathFilter {
+
+	static final PathFilter ALL = new PathFilter(null, Collections.emptyList(), Collections.emptyList());
+
+	private static final class Include {
+		final GitHubPathMatcher matcher;
+		final List<GitHubPathMatcher> segments = new ArrayList<>();
+		/** Index of the first segment containing "**", -1 if none. */
+		int anyDepthFrom = -1;
+
+		Include(GitHubFileSystem fs, String pattern) {
+			this.matcher = new GitHubPathMatcher(fs, "glob", pattern);
+			String[] parts = pattern.split("/");
+			for (int i = 0; i < parts.length; i++) {
+				if (parts[i].contains("**") && anyDepthFrom < 0) {
+					anyDepthFrom = i;
+				}
+				segments.add(new GitHubPathMatcher(fs, "glob", parts[i]));
+			}
+		}
+
+		/**
+		 * Whether something below the directory may match.
+		 */
+		boolean mayMatchBelow(String[] dir) {
+			for (int i = 0; i < dir.length; i++) {
+				if (i == anyDepthFrom) {
+					return true;
+				}
+				if (i >= segments.size() || !segments.get(i).matches(dir[i])) {
+					return false;
+				}
+			}
+			return dir.length < segments.size();
+		}
+	}
+
+	private final List<Include> includes = new ArrayList<>();
+	private final List<GitHubPathMatcher> excludes = new ArrayList<>();
+	private final List<String> patterns = new ArrayList<>();
+
+	PathFilter(GitHubFileSystem fs, List<String> includes, List<String> excludes) {
+		for (String pattern : includes) {
+			this.includes.add(new Include(fs, stripSlash(pattern)));
+			patterns.add("+" + pattern);
+		}
+		for (String pattern : excludes) {
+			this.excludes.add(new GitHubPathMatcher(fs, "glob", stripSlash(pattern)));
+			patterns.add("-" + pattern);
+		}
+	}
+
+	private static String stripSlash(String pattern) {
+		return pattern.startsWith("/") ? pattern.substring(1) : pattern;
+	}
+
+	/**
+	 * True if the filter lets everything through.
+	 */
+	boolean isEmpty() {
+		return includes.isEmpty() && excludes.isEmpty();
+	}
+
+	boolean hasIncludes() {
+		return !includes.isEmpty();
+	}
+
+	/**
+	 * Decides whether a path is visible. When it isn't known whether the
+	 * path is a directory, passing true gives the more permissive answer.
+	 *
+	 * @param path the path relative to the filesystem root, a leading or
+	 *        trailing slash is ignored
+	 * @param directory whether the path is a directory
+	 */
+	boolean accepts(String path, boolean directory) {
+		if (isEmpty()) {
+			return true;
+		}
+		String relative = stripSlash(path);
+		if (relative.endsWith("/")) {
+			relative = relative.substring(0, relative.length() - 1);
+		}
+		if (relative.isEmpty()) {
+			return true;
+		}
+		boolean included = includes.isEmpty();
+		// Checks the path and each of its parents, shortest first
+		int end = relative.indexOf('/');
+		while (true) {
+			String prefix = end < 0 ? relative : relative.substring(0, end);
+			for (GitHubPathMatcher exclude : excludes) {
+				if (exclude.matches(prefix) || exclude.matches(prefix + "/")) {
+					return false;
+				}
+			}
+			if (!included) {
+				for (Include include : includes) {
+					if (include.matcher.matches(prefix) || include.matcher.matches(prefix + "/")) {
+						included = true;
+						break;
+					}
+				}
+			}
+			if (end < 0) {
+				break;
+			}
+			end = relative.indexOf('/', end + 1);
+		}
+		if (included || !directory) {
+			return included;
+		}
+		String[] segments = relative.split("/");
+		for (Include include : includes) {
+			if (include.mayMatchBelow(segments)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof PathFilter && patterns.equals(((PathFilter) o).patterns);
+	}
+
+	@Override
+	public int hashCode() {
+		return patterns.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return String.join(",", patterns);
+	}
+}
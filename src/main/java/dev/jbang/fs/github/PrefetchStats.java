@@ -0,0 +1,53 @@
+package dev.jbang.fs.github;
+
+/**
+ * How well prefetching works for a filesystem, see
+ * {@link GitHubFileSystem#getPrefetchStats()}.
+ */
+public final class PrefetchStats {
+
+	private final long reads;
+	private final long prefetched;
+	private final long hits;
+
+	PrefetchStats(long reads, long prefetched, long hits) {
+		this.reads = reads;
+		this.prefetched = prefetched;
+		this.hits = hits;
+	}
+
+	/**
+	 * Files opened for reading.
+	 */
+	public long getReads() {
+		return reads;
+	}
+
+	/**
+	 * Files fetched ahead of time.
+	 */
+	public long getPrefetched() {
+		return prefetched;
+	}
+
+	/**
+	 * Prefetched files that were read afterwards.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * The share of prefetched files that were read, 0 if none were
+	 * prefetched.
+	 */
+	public double getHitRate() {
+		return prefetched == 0 ? 0 : (double) hits / prefetched;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d reads, %d prefetched, %d hits (%.0f%%)", reads, prefetched, hits,
+				getHitRate() * 100);
+	}
+}
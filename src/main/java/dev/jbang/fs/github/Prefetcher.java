@@ -0,0 +1,399 @@
+package dev.jbang.fs.github;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Learns from the files that are read which ones are likely to be read next,
+ * and fetches those in the background. Two things are learned per
+ * repository: which file follows which (reading {@code build.gradle} is
+ * followed by {@code settings.gradle}), and per file name pattern such as
+ * {@code *.java} how often a read is followed by one of a sibling with the
+ * same pattern. The model is kept in the {@code prefetch} directory of the
+ * cache and written when a filesystem using it closes.
+ *
+ * Prefetching is speculative: it runs at background priority on a small
+ * pool with a bounded queue, and predictions that don't fit are dropped.
+ */
+class Prefetcher {
+
+	private static final Logger LOGGER = Logger.getLogger(Prefetcher.class.getName());
+
+	/** Observations of a transition before it is acted upon. */
+	static final int MIN_OBSERVATIONS = 2;
+	/** Share of the observations after a path that a prediction needs. */
+	static final double MIN_CONFIDENCE = 0.5;
+	static final int MAX_PREDICTIONS = 4;
+	static final int MAX_SIBLINGS = 8;
+
+	private static final int MAX_PATHS = 10000;
+	private static final int MAX_SUCCESSORS = 8;
+	private static final int THREADS = 2;
+	private static final int QUEUE_SIZE = 64;
+	private static final Object SAVE_LOCK = new Object();
+
+	/**
+	 * What a filesystem has read and prefetched.
+	 */
+	static final class Session {
+		private final AtomicReference<@Nullable String> last = new AtomicReference<>();
+		private final Set<String> prefetched = ConcurrentHashMap.newKeySet();
+		private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+		private final AtomicLong reads = new AtomicLong();
+		private final AtomicLong prefetches = new AtomicLong();
+		private final AtomicLong hits = new AtomicLong();
+
+		PrefetchStats stats() {
+			return new PrefetchStats(reads.get(), prefetches.get(), hits.get());
+		}
+	}
+
+	/**
+	 * The learned transitions of one repository, by repository path.
+	 */
+	private static final class Model {
+		private final Map<String, Map<String, Integer>> successors = new LinkedHashMap<String, Map<String, Integer>>(
+				16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, Integer>> eldest) {
+				return size() > MAX_PATHS;
+			}
+		};
+		/** Per pattern: reads followed by a sibling of the same pattern, and all followed reads. */
+		private final Map<String, int[]> patterns = new HashMap<>();
+		/**
+		 * Transitions observed since the model was read, as previous and next
+		 * path separated by a tab, to add to what other JVMs wrote meanwhile.
+		 */
+		private final Map<String, Integer> learned = new HashMap<>();
+
+		synchronized void observe(String previous, String next) {
+			observe(previous, next, 1);
+			learned.merge(previous + "\t" + next, 1, Integer::sum);
+		}
+
+		private void observe(String previous, String next, int times) {
+			Map<String, Integer> counts = successors.computeIfAbsent(previous, p -> new HashMap<>());
+			counts.merge(next, times, Integer::sum);
+			if (counts.size() > MAX_SUCCESSORS) {
+				counts.remove(Collections.min(counts.entrySet(), Map.Entry.comparingByValue()).getKey());
+			}
+			int[] pattern = patterns.computeIfAbsent(pattern(previous), p -> new int[2]);
+			if (isSibling(previous, next)) {
+				pattern[0] += times;
+			}
+			pattern[1] += times;
+		}
+
+		synchronized boolean hasLearned() {
+			return !learned.isEmpty();
+		}
+
+		/**
+		 * Adds what this model observed since it was read to another one,
+		 * read from the file again, and takes over the result.
+		 */
+		synchronized void mergeInto(Model current) {
+			for (Map.Entry<String, Integer> transition : learned.entrySet()) {
+				String[] paths = transition.getKey().split("\t");
+				current.observe(paths[0], paths[1], transition.getValue());
+			}
+			successors.clear();
+			successors.putAll(current.successors);
+			patterns.clear();
+			patterns.putAll(current.patterns);
+			learned.clear();
+		}
+
+		synchronized List<String> successors(String path) {
+			Map<String, Integer> counts = successors.get(path);
+			if (counts == null) {
+				return Collections.emptyList();
+			}
+			int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+			List<Map.Entry<String, Integer>> likely = new ArrayList<>();
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				if (entry.getValue() >= MIN_OBSERVATIONS && entry.getValue() >= MIN_CONFIDENCE * total) {
+					likely.add(entry);
+				}
+			}
+			likely.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+			List<String> result = new ArrayList<>();
+			for (int i = 0; i < Math.min(MAX_PREDICTIONS, likely.size()); i++) {
+				result.add(likely.get(i).getKey());
+			}
+			return result;
+		}
+
+		synchronized boolean predictsSiblings(String path) {
+			int[] pattern = patterns.get(pattern(path));
+			return pattern != null && pattern[1] >= MIN_OBSERVATIONS && pattern[0] >= MIN_CONFIDENCE * pattern[1];
+		}
+
+		synchronized void read(BufferedReader reader) throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				try {
+					if (fields.length == 4 && fields[0].equals("s")) {
+						successors.computeIfAbsent(fields[1], p -> new HashMap<>())
+							.put(fields[2], Integer.parseInt(fields[3]));
+					} else if (fields.length == 4 && fields[0].equals("p")) {
+						patterns.put(fields[1],
+								new int[] { Integer.parseInt(fields[2]), Integer.parseInt(fields[3]) });
+					}
+				} catch (NumberFormatException e) {
+					// A damaged line only loses what was learned from it
+				}
+			}
+		}
+
+		synchronized void write(BufferedWriter writer) throws IOException {
+			for (Map.Entry<String, Map<String, Integer>> path : successors.entrySet()) {
+				for (Map.Entry<String, Integer> next : path.getValue().entrySet()) {
+					writer.write("s\t" + path.getKey() + "\t" + next.getKey() + "\t" + next.getValue() + "\n");
+				}
+			}
+			for (Map.Entry<String, int[]> pattern : patterns.entrySet()) {
+				writer.write("p\t" + pattern.getKey() + "\t" + pattern.getValue()[0] + "\t" + pattern.getValue()[1]
+						+ "\n");
+			}
+		}
+	}
+
+	private final GitHubFileSystemProvider provider;
+	private final Path modelDir;
+	private final Map<String, Model> models = new ConcurrentHashMap<>();
+	private final ThreadPoolExecutor executor;
+
+	Prefetcher(GitHubFileSystemProvider provider, Path cacheDir) {
+		this.provider = provider;
+		this.modelDir = cacheDir.resolve("prefetch");
+		this.executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+					Thread t = new Thread(r, "github-fs-prefetch");
+					t.setDaemon(true);
+					return t;
+				}, new ThreadPoolExecutor.DiscardPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Records that a file was opened for reading, and prefetches what is
+	 * likely to be read after it.
+	 */
+	void accessed(GitHubPath path) {
+		GitHubFileSystem fs = path.getFileSystem();
+		Session session = fs.getPrefetchSession();
+		if (session == null) {
+			return;
+		}
+		String repoPath = provider.toRepoRelativePath((GitHubPath) path.toAbsolutePath());
+		if (repoPath.contains("\t") || repoPath.contains("\n")) {
+			// Can't be stored in the model
+			return;
+		}
+		session.reads.incrementAndGet();
+		if (session.prefetched.remove(repoPath)) {
+			session.hits.incrementAndGet();
+		}
+		Model model = model(fs);
+		String previous = session.last.getAndSet(repoPath);
+		if (previous != null && !previous.equals(repoPath)) {
+			model.observe(previous, repoPath);
+		}
+		List<String> predicted = new ArrayList<>(model.successors(repoPath));
+		boolean siblings = model.predictsSiblings(repoPath);
+		if (predicted.isEmpty() && !siblings) {
+			return;
+		}
+		executor.execute(() -> prefetch(fs, session, repoPath, predicted, siblings));
+	}
+
+	@SuppressWarnings("try")
+	private void prefetch(GitHubFileSystem fs, Session session, String repoPath, List<String> predicted,
+			boolean siblings) {
+		try (RequestContext.Scope scope = fs.requestScope(RequestPriority.BACKGROUND)) {
+			if (siblings) {
+				predicted.addAll(siblings(fs, repoPath));
+			}
+			for (String candidate : predicted) {
+				if (!fs.isOpen()) {
+					return;
+				}
+				GitHubPath path = toPath(fs, candidate);
+				if (path == null || session.prefetched.contains(candidate) || !session.scheduled.add(candidate)) {
+					continue;
+				}
+				try {
+					ContentInfo info = provider.stat(path);
+					// Without a SHA, e.g. in raw access mode, the read wouldn't find it in the blob cache
+					if (info != null && !info.isDirectory() && info.getSha() != null) {
+						provider.getLocalContent(path);
+						session.prefetched.add(candidate);
+						session.prefetches.incrementAndGet();
+					}
+				} finally {
+					session.scheduled.remove(candidate);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Prefetching after " + repoPath + " failed", e);
+		}
+	}
+
+	/**
+	 * The files next to the path with the same pattern, those sorting after
+	 * it first since listings are usually read in order.
+	 */
+	private List<String> siblings(GitHubFileSystem fs, String repoPath) throws IOException {
+		GitHubPath path = toPath(fs, repoPath);
+		GitHubPath parent = path == null ? null : (GitHubPath) path.getParent();
+		if (parent == null) {
+			return Collections.emptyList();
+		}
+		String pattern = pattern(repoPath);
+		String name = path.getFileName().toString();
+		List<String> after = new ArrayList<>();
+		List<String> before = new ArrayList<>();
+		List<Path> children;
+		try {
+			children = provider.listDirectory(parent);
+		} catch (NoSuchFileException e) {
+			return Collections.emptyList();
+		}
+		for (Path child : children) {
+			String childName = child.getFileName().toString();
+			if (!childName.equals(name) && pattern(childName).equals(pattern)) {
+				String childRepoPath = provider.toRepoRelativePath((GitHubPath) child.toAbsolutePath());
+				(childName.compareTo(name) > 0 ? after : before).add(childRepoPath);
+			}
+		}
+		Collections.sort(after);
+		Collections.sort(before);
+		after.addAll(before);
+		return after.subList(0, Math.min(MAX_SIBLINGS, after.size()));
+	}
+
+	/**
+	 * Maps a repository path to a path of the filesystem, null if it lies
+	 * outside the filesystem's base path.
+	 */
+	@Nullable
+	private static GitHubPath toPath(GitHubFileSystem fs, String repoPath) {
+		String basePath = fs.getRepoInfo().getBasePath();
+		if (basePath.isEmpty()) {
+			return (GitHubPath) fs.getPath("/" + repoPath);
+		}
+		String prefix = basePath.endsWith("/") ? basePath : basePath + "/";
+		return repoPath.startsWith(prefix) ? (GitHubPath) fs.getPath("/" + repoPath.substring(prefix.length()))
+				: null;
+	}
+
+	/**
+	 * The pattern a file name falls under: {@code *.ext}, or the name itself
+	 * if it has no extension.
+	 */
+	static String pattern(String path) {
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? "*" + name.substring(dot) : name;
+	}
+
+	private static boolean isSibling(String path, String other) {
+		int slash = path.lastIndexOf('/');
+		int otherSlash = other.lastIndexOf('/');
+		return slash == otherSlash && path.regionMatches(0, other, 0, Math.max(0, slash))
+				&& pattern(path).equals(pattern(other));
+	}
+
+	private Model model(GitHubFileSystem fs) {
+		return models.computeIfAbsent(modelKey(fs.getRepoInfo()), key -> read(modelDir.resolve(key)));
+	}
+
+	private static Model read(Path file) {
+		Model model = new Model();
+		if (Files.isRegularFile(file)) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				model.read(reader);
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Could not read prefetch model " + file, e);
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Writes what was learned for the filesystem's repository, if anything.
+	 * Other JVMs may have written the model since it was read, so under a
+	 * file lock the model is read again and what was learned is added to it.
+	 */
+	@SuppressWarnings("try")
+	void save(GitHubFileSystem fs) {
+		Model model = models.get(modelKey(fs.getRepoInfo()));
+		if (model == null) {
+			return;
+		}
+		Path file = modelDir.resolve(modelKey(fs.getRepoInfo()));
+		// A file lock is held by the whole JVM, other threads must wait here
+		synchronized (SAVE_LOCK) {
+			if (!model.hasLearned()) {
+				return;
+			}
+			try {
+				Files.createDirectories(modelDir);
+				try (FileChannel channel = FileChannel.open(modelDir.resolve(file.getFileName() + ".lock"),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+						FileLock lock = channel.lock()) {
+					Model current = read(file);
+					model.mergeInto(current);
+					Path tmp = Files.createTempFile(modelDir, file.getFileName().toString(), ".tmp");
+					try {
+						try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+							current.write(writer);
+						}
+						Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					} finally {
+						Files.deleteIfExists(tmp);
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Could not write prefetch model " + file, e);
+			}
+		}
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine(fs.getRepoInfo() + " prefetch: " + fs.getPrefetchStats());
+		}
+	}
+
+	private static String modelKey(GitHubRepoInfo repoInfo) {
+		return (repoInfo.getHost() + "_" + repoInfo.getOwner() + "_" + repoInfo.getRepo())
+			.replaceAll("[^A-Za-z0-9._-]", "_") + ".model";
+	}
+}
@@ -0,0 +1,68 @@
+package dev.jbang.fs.github;
+
+/**
+ * Tracks the GitHub API rate limit as reported by the
+ * {@code X-RateLimit-*} response headers.
+ */
+class RateLimit {
+
+	private volatile long remaining = -1;
+	private volatile long limit = -1;
+	private volatile long resetAtMillis = -1;
+
+	void update(HttpResponse response) {
+		String remainingHeader = response.header("X-RateLimit-Remaining");
+		String limitHeader = response.header("X-RateLimit-Limit");
+		String resetHeader = response.header("X-RateLimit-Reset");
+		try {
+			if (remainingHeader != null) {
+				remaining = Long.parseLong(remainingHeader.trim());
+			}
+			if (limitHeader != null) {
+				limit = Long.parseLong(limitHeader.trim());
+			}
+			if (resetHeader != null) {
+				resetAtMillis = Long.parseLong(resetHeader.trim()) * 1000;
+			}
+		} catch (NumberFormatException e) {
+			// Ignore malformed headers, we'll pick up the next valid ones
+		}
+	}
+
+	/**
+	 * Remaining requests in the current window, or -1 if unknown.
+	 */
+	long getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 * Maximum requests per window, or -1 if unknown.
+	 */
+	long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Epoch millis when the current window resets, or -1 if unknown.
+	 */
+	long getResetAtMillis() {
+		return resetAtMillis;
+	}
+
+	/**
+	 * The minimum delay between requests that spreads the remaining budget
+	 * evenly until the window resets, keeping {@code reserve} requests back.
+	 * Returns 0 if nothing is known about the rate limit.
+	 */
+	long getMinimumSpacingMillis(long reserve) {
+		long rem = remaining;
+		long reset = resetAtMillis;
+		if (rem < 0 || reset < 0) {
+			return 0;
+		}
+		long untilReset = Math.max(0, reset - System.currentTimeMillis());
+		long usable = Math.max(1, rem - reserve);
+		return untilReset / usable;
+	}
+}
@@ -0,0 +1,64 @@
+package dev.jbang.fs.github;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Describes on whose behalf the current thread makes requests: the owning
+ * filesystem, used for fair queuing and quotas, and the priority class.
+ * Requests made outside of any context are treated as {@link #DEFAULT}.
+ */
+final class RequestContext {
+
+	static final RequestContext DEFAULT = new RequestContext(null, RequestPriority.NORMAL, Integer.MAX_VALUE);
+
+	private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+	/** Restores the previous context when closed. */
+	interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	private final @Nullable Object owner;
+	private final RequestPriority priority;
+	private final int quota;
+
+	RequestContext(@Nullable Object owner, RequestPriority priority, int quota) {
+		this.owner = owner;
+		this.priority = priority;
+		this.quota = Math.max(1, quota);
+	}
+
+	static RequestContext current() {
+		RequestContext context = CURRENT.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Makes this the current context of the calling thread. If the thread
+	 * already runs in a context that one is kept, so a bulk job that ends up
+	 * calling the public API doesn't get promoted to its priority.
+	 */
+	Scope enter() {
+		if (CURRENT.get() != null) {
+			return () -> {
+			};
+		}
+		CURRENT.set(this);
+		return CURRENT::remove;
+	}
+
+	@Nullable
+	Object getOwner() {
+		return owner;
+	}
+
+	RequestPriority getPriority() {
+		return priority;
+	}
+
+	/** The most requests of the owner that may be in flight at the same time. */
+	int getQuota() {
+		return quota;
+	}
+}
@@ -0,0 +1,15 @@
+package dev.jbang.fs.github;
+
+/**
+ * Priority classes for outgoing requests. When the provider's concurrency
+ * limit is reached, waiting requests of a higher class are always started
+ * before those of a lower one.
+ */
+enum RequestPriority {
+	/** Someone is waiting for the result, e.g. a read through the Files API. */
+	INTERACTIVE,
+	/** Explicitly requested work that isn't latency sensitive, e.g. a refresh. */
+	NORMAL,
+	/** Bulk and speculative work like materializing, prefetching or polling. */
+	BACKGROUND
+}
@@ -0,0 +1,518 @@
+package dev.jbang.fs.github;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * HttpClient decorator that deals with slow and failing endpoints:
+ * <ul>
+ * <li>request timeouts are derived from the latencies observed per host
+ * instead of a fixed value, for downloads from the time to their first
+ * byte,</li>
+ * <li>an idempotent request that takes longer than the host's 95th
+ * percentile is hedged with a second identical request, and whichever
+ * answers first wins. A request that has alternate endpoints is hedged
+ * with the next one instead, see {@link #firstAvailable},</li>
+ * <li>transient failures (connection errors, timeouts, 429 and 5xx) of
+ * idempotent requests are retried with jittered exponential backoff,</li>
+ * <li>a per-host {@link CircuitBreaker} fails fast while a host is down, so
+ * callers can fall back to an alternate endpoint right away. Errors the
+ * host answered with, like 401 or 404, don't count as it being down.</li>
+ * </ul>
+ */
+class ResilientHttpClient implements HttpClient {
+
+	static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+	static final long MIN_TIMEOUT_MILLIS = 2000;
+	static final long MAX_TIMEOUT_MILLIS = 30000;
+	static final int MAX_RETRIES = 3;
+	static final long BASE_BACKOFF_MILLIS = 100;
+	static final long MAX_BACKOFF_MILLIS = 5000;
+
+	private static final int LATENCY_SAMPLES = 200;
+	private static final int MIN_LATENCY_SAMPLES = 20;
+	private static final int FAILURE_THRESHOLD = 5;
+	private static final long MIN_OPEN_MILLIS = 1000;
+	private static final long MAX_OPEN_MILLIS = 60000;
+
+	/**
+	 * Thrown without contacting the host while its circuit breaker is open.
+	 */
+	static class EndpointUnavailableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		EndpointUnavailableException(String host) {
+			super("Endpoint " + host + " is unavailable, failing fast");
+		}
+	}
+
+	interface Call<T> {
+		T run() throws IOException;
+	}
+
+	private static class Endpoint {
+		final LatencyTracker latencies = new LatencyTracker(LATENCY_SAMPLES, MIN_LATENCY_SAMPLES);
+		final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, MIN_OPEN_MILLIS, MAX_OPEN_MILLIS);
+	}
+
+	/**
+	 * Tells the attempt of {@link #firstAvailable} running on this thread
+	 * that its request started to be answered.
+	 */
+	private static final ThreadLocal<Runnable> RESPONSE_STARTED = new ThreadLocal<>();
+
+	private final HttpClient delegate;
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "github-fs-hedge");
+		t.setDaemon(true);
+		return t;
+	});
+
+	ResilientHttpClient(HttpClient delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public String downloadString(String url) throws IOException {
+		// Sent as a request, to get the timeout of the host
+		HttpResponse response = send(HttpRequest.get(url));
+		if (response.getStatusCode() == 404) {
+			throw new FileNotFoundException("Resource not found: " + url);
+		}
+		if (response.getStatusCode() != 200) {
+			throw new HttpStatusException(response.getStatusCode(), url);
+		}
+		return response.getBodyAsString().trim();
+	}
+
+	@Override
+	public Path downloadAndCacheFile(String url) throws IOException {
+		return download(HttpRequest.get(url));
+	}
+
+	@Override
+	public Path download(HttpRequest request) throws IOException {
+		// Not hedged, the time a download takes depends on its size, but its first byte doesn't
+		Endpoint endpoint = endpoint(request.getUrl());
+		Runnable started = RESPONSE_STARTED.get();
+		return execute(request.getUrl(), () -> delegate.download(timed(request, started, endpoint)), true, false,
+				false);
+	}
+
+	@Override
+	public HttpResponse send(HttpRequest request) throws IOException {
+		Endpoint endpoint = endpoint(request.getUrl());
+		Runnable started = RESPONSE_STARTED.get();
+		boolean idempotent = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+		// A range request takes as long as its range is big, like a download
+		boolean ranged = request.getHeaders().containsKey("Range");
+		return execute(request.getUrl(), () -> delegate.send(timed(request, started, ranged ? endpoint : null)),
+				idempotent, idempotent && !ranged, !ranged);
+	}
+
+	/**
+	 * Returns a copy of the request for one attempt, with the host's timeout
+	 * unless it has one. On a copy, the caller's request may be sent again
+	 * elsewhere.
+	 *
+	 * @param started what to tell once the response starts, if anything
+	 * @param firstByte the endpoint to record the time until then for,
+	 *        null if the whole attempt is timed
+	 */
+	private HttpRequest timed(HttpRequest request, @Nullable Runnable started, @Nullable Endpoint firstByte) {
+		HttpRequest timed = request.copy();
+		if (request.getTimeoutMillis() <= 0) {
+			timed.timeout(getTimeoutMillis(request.getUrl()));
+		}
+		if (started != null || firstByte != null) {
+			long start = System.nanoTime();
+			timed.onResponse(() -> {
+				if (firstByte != null) {
+					firstByte.latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				}
+				request.responseStarted();
+				if (started != null) {
+					started.run();
+				}
+			});
+		}
+		return timed;
+	}
+
+	interface UrlCall<T> {
+		T run(String url) throws IOException;
+	}
+
+	/**
+	 * Runs the call against the first of the given URLs whose host isn't
+	 * known to be down. If that fails, or hasn't started to answer after its
+	 * host's 95th percentile latency, the next URL is tried as well, and the
+	 * first successful result wins. A missing resource is a valid answer and
+	 * isn't retried elsewhere.
+	 */
+	<T> T firstAvailable(List<String> urls, UrlCall<T> call) throws IOException {
+		return firstAvailable(urls, call, result -> {
+		});
+	}
+
+	/**
+	 * Like {@link #firstAvailable(List, UrlCall)}, cleaning up after the
+	 * results that came in too late.
+	 */
+	<T> T firstAvailable(List<String> urls, UrlCall<T> call, Consumer<T> discard) throws IOException {
+		List<String> candidates = new ArrayList<>();
+		for (int i = 0; i < urls.size(); i++) {
+			// Fails fast anyway, but the last one is tried so the caller gets a proper error
+			if (i == urls.size() - 1 || isAvailable(urls.get(i))) {
+				candidates.add(urls.get(i));
+			}
+		}
+		if (candidates.isEmpty()) {
+			throw new IOException("No endpoint to send the request to");
+		}
+		if (candidates.size() == 1) {
+			return call.run(candidates.get(0));
+		}
+		return new Race<>(candidates, call, discard).run();
+	}
+
+	/**
+	 * The attempts of one {@link #firstAvailable} call, each on a thread of
+	 * its own. The first successful one is taken under the race's lock,
+	 * later ones are discarded by the thread that made them.
+	 */
+	private final class Race<T> {
+		private final List<String> urls;
+		private final UrlCall<T> call;
+		private final Consumer<T> discard;
+		// The calls run on other threads, but on behalf of this one
+		private final RequestContext context = RequestContext.current();
+		private final CompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+		private final List<Future<T>> attempts = new ArrayList<>();
+		private @Nullable T winner;
+		private boolean settled;
+
+		Race(List<String> urls, UrlCall<T> call, Consumer<T> discard) {
+			this.urls = urls;
+			this.call = call;
+			this.discard = discard;
+		}
+
+		T run() throws IOException {
+			IOException failure = null;
+			int next = 0;
+			int running = 1;
+			CountDownLatch started = start(urls.get(next++));
+			try {
+				while (true) {
+					long delay = next < urls.size() ? endpoint(urls.get(next - 1)).latencies.percentile(0.95) : -1;
+					Future<T> done = delay >= 0 ? completion.poll(Math.max(1, delay), TimeUnit.MILLISECONDS)
+							: completion.take();
+					if (done == null) {
+						if (started.getCount() > 0) {
+							// Not even started to answer, ask the next one as well
+							started = start(urls.get(next++));
+							running++;
+							continue;
+						}
+						done = completion.take();
+					}
+					running--;
+					try {
+						get(done);
+						return taken();
+					} catch (FileNotFoundException e) {
+						throw e;
+					} catch (IOException e) {
+						if (Thread.currentThread().isInterrupted()) {
+							throw e;
+						}
+						if (failure != null) {
+							e.addSuppressed(failure);
+						}
+						failure = e;
+						if (next < urls.size()) {
+							started = start(urls.get(next++));
+							running++;
+						} else if (running == 0) {
+							throw failure;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a response");
+			} finally {
+				synchronized (this) {
+					settled = true;
+				}
+				for (Future<T> attempt : attempts) {
+					attempt.cancel(true);
+				}
+			}
+		}
+
+		@SuppressWarnings("try")
+		private CountDownLatch start(String url) {
+			CountDownLatch started = new CountDownLatch(1);
+			attempts.add(completion.submit(() -> {
+				T result;
+				RESPONSE_STARTED.set(started::countDown);
+				try (RequestContext.Scope scope = context.enter()) {
+					result = call.run(url);
+				} finally {
+					RESPONSE_STARTED.remove();
+				}
+				synchronized (this) {
+					if (winner == null && !settled) {
+						winner = result;
+						return result;
+					}
+				}
+				discard.accept(result);
+				return result;
+			}));
+			return started;
+		}
+
+		/**
+		 * The result of the first attempt that succeeded, once one has.
+		 */
+		private synchronized T taken() {
+			return winner;
+		}
+	}
+
+	/**
+	 * Returns the timeout for a request to the given URL: a multiple of the
+	 * host's 99th percentile latency, or the default while there are too few
+	 * samples.
+	 */
+	long getTimeoutMillis(String url) {
+		long p99 = endpoint(url).latencies.percentile(0.99);
+		if (p99 < 0) {
+			return DEFAULT_TIMEOUT_MILLIS;
+		}
+		return Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, p99 * 5));
+	}
+
+	boolean isAvailable(String url) {
+		return !endpoint(url).breaker.isOpen();
+	}
+
+	/**
+	 * Returns the median latency of the URL's host in milliseconds, or -1 if
+	 * it isn't known yet.
+	 */
+	long getLatencyMillis(String url) {
+		return endpoint(url).latencies.percentile(0.5);
+	}
+
+	/**
+	 * @param timed whether to record the latency of each attempt, false for
+	 *        calls that take as long as their response is big
+	 */
+	private <T> T execute(String url, Call<T> call, boolean retry, boolean hedge, boolean timed)
+			throws IOException {
+		Endpoint endpoint = endpoint(url);
+		Call<T> single = timed ? () -> timed(endpoint, call) : call;
+		for (int attempt = 0;; attempt++) {
+			if (!endpoint.breaker.allowRequest()) {
+				throw new EndpointUnavailableException(host(url));
+			}
+			long retryAfter = -1;
+			try {
+				T result = hedge ? hedged(endpoint, single) : single.run();
+				if (!(result instanceof HttpResponse) || !isTransientFailure((HttpResponse) result)) {
+					endpoint.breaker.recordSuccess();
+					return result;
+				}
+				endpoint.breaker.recordFailure();
+				retryAfter = retryAfterMillis((HttpResponse) result);
+				if (!retry || attempt >= MAX_RETRIES || retryAfter > MAX_BACKOFF_MILLIS) {
+					return result;
+				}
+			} catch (IOException e) {
+				if (!isTransientFailure(e)) {
+					// The host answered just fine, asking again won't change its mind
+					endpoint.breaker.recordSuccess();
+					throw e;
+				}
+				endpoint.breaker.recordFailure();
+				if (!retry || attempt >= MAX_RETRIES || Thread.currentThread().isInterrupted()) {
+					throw e;
+				}
+			}
+			sleep(retryAfter >= 0 ? retryAfter : backoffMillis(attempt));
+		}
+	}
+
+	/**
+	 * Runs a single attempt and records how long it took to be answered.
+	 */
+	private static <T> T timed(Endpoint endpoint, Call<T> call) throws IOException {
+		long start = System.nanoTime();
+		T result = call.run();
+		endpoint.latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return result;
+	}
+
+	/**
+	 * Runs the call and, if it hasn't completed after the host's 95th
+	 * percentile latency, a second identical one. Returns the first
+	 * successful result.
+	 */
+	@SuppressWarnings("try")
+	private <T> T hedged(Endpoint endpoint, Call<T> call) throws IOException {
+		long p95 = endpoint.latencies.percentile(0.95);
+		if (p95 < 0) {
+			return call.run();
+		}
+		// The calls run on other threads, but on behalf of this one
+		RequestContext context = RequestContext.current();
+		CompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+		Future<T> primary = completion.submit(() -> {
+			try (RequestContext.Scope scope = context.enter()) {
+				return call.run();
+			}
+		});
+		Future<T> secondary = null;
+		try {
+			Future<T> done = completion.poll(Math.max(1, p95), TimeUnit.MILLISECONDS);
+			if (done == null) {
+				secondary = completion.submit(() -> {
+					try (RequestContext.Scope scope = context.enter()) {
+						return call.run();
+					}
+				});
+				done = completion.take();
+			}
+			try {
+				T result = get(done);
+				if (secondary == null || !(result instanceof HttpResponse)
+						|| !isTransientFailure((HttpResponse) result)) {
+					return result;
+				}
+			} catch (IOException e) {
+				if (secondary == null) {
+					throw e;
+				}
+			}
+			// The first one to finish failed, see if the other does better
+			return get(completion.take());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a response");
+		} finally {
+			primary.cancel(true);
+			if (secondary != null) {
+				secondary.cancel(true);
+			}
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	static boolean isTransientFailure(HttpResponse response) {
+		return isTransientStatus(response.getStatusCode());
+	}
+
+	/**
+	 * Whether the failure may go away by itself: the host couldn't be
+	 * reached, timed out or answered with a 429 or 5xx. A 404, or a 401 or
+	 * 403 for a bad token, comes back the same on every retry.
+	 */
+	static boolean isTransientFailure(IOException e) {
+		if (e instanceof FileNotFoundException) {
+			return false;
+		}
+		if (e instanceof HttpStatusException) {
+			return isTransientStatus(((HttpStatusException) e).getStatusCode());
+		}
+		return true;
+	}
+
+	private static boolean isTransientStatus(int status) {
+		return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * Returns the delay the server asked for in a Retry-After header, in
+	 * milliseconds, or -1 if there is none.
+	 */
+	private static long retryAfterMillis(HttpResponse response) {
+		String retryAfter = response.header("Retry-After");
+		if (retryAfter == null) {
+			return -1;
+		}
+		try {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Exponential backoff, randomized over the upper half of the interval so
+	 * clients that failed together don't retry together.
+	 */
+	static long backoffMillis(int attempt) {
+		long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+		return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off");
+		}
+	}
+
+	private Endpoint endpoint(String url) {
+		return endpoints.computeIfAbsent(host(url), h -> new Endpoint());
+	}
+
+	private static String host(String url) {
+		try {
+			String host = URI.create(url).getHost();
+			return host != null ? host : url;
+		} catch (IllegalArgumentException e) {
+			return url;
+		}
+	}
+}
@@ -1,22 +1,28 @@
 package dev.jbang.fs.github;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Simple HTTP client implementation using Java's built-in HttpURLConnection.
  */
 class SimpleHttpClient implements HttpClient {
 
+	private static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
 	@Override
 	public String downloadString(String url) throws IOException {
 		//ntln("Downloading string from URL: " + url);
@@ -24,15 +30,15 @@ class SimpleHttpClient implements HttpClient {
 		HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
 		connection.setRequestMethod("GET");
 		connection.setRequestProperty("Accept", "application/json");
-		connection.setConnectTimeout(10000);
-		connection.setReadTimeout(10000);
+		connection.setConnectTimeout(DEFAULT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(DEFAULT_TIMEOUT_MILLIS);
 
 		int responseCode = connection.getResponseCode();
 		if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
 			throw new FileNotFoundException("Resource not found: " + url);
 		}
 		if (responseCode != HttpURLConnection.HTTP_OK) {
-			throw new IOException("HTTP request failed with code " + responseCode + " for URL: " + url);
+			throw new HttpStatusException(responseCode, url);
 		}
 
 		try (BufferedReader reader = new BufferedReader(
@@ -48,27 +54,89 @@ class SimpleHttpClient implements HttpClient {
 
 	@Override
 	public Path downloadAndCacheFile(String url) throws IOException {
+		return download(HttpRequest.get(url));
+	}
+
+	@Override
+	public Path download(HttpRequest request) throws IOException {
 		// Simple implementation: download to temp file
 		// In a real implementation, this would use a cache
-		Path tempFile = Files.createTempFile("github-fs-", ".tmp");
+		String url = request.getUrl();
 		URL urlObj = new URL(url);
 		HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
 		connection.setRequestMethod("GET");
-		connection.setConnectTimeout(10000);
-		connection.setReadTimeout(10000);
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+		int timeout = request.getTimeoutMillis() > 0 ? (int) request.getTimeoutMillis() : DEFAULT_TIMEOUT_MILLIS;
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
 
 		int responseCode = connection.getResponseCode();
+		request.responseStarted();
 		if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
 			throw new FileNotFoundException("Resource not found: " + url);
 		}
 		if (responseCode != HttpURLConnection.HTTP_OK) {
-			throw new IOException("HTTP request failed with code " + responseCode + " for URL: " + url);
+			throw new HttpStatusException(responseCode, url);
 		}
 
+		Path tempFile = Files.createTempFile("github-fs-", ".tmp");
 		try (InputStream inputStream = connection.getInputStream()) {
 			Files.copy(inputStream, tempFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
 		}
 		return tempFile;
 	}
-}
 
+	@Override
+	public HttpResponse send(HttpRequest request) throws IOException {
+		URL urlObj = new URL(request.getUrl());
+		HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
+		connection.setRequestMethod(request.getMethod());
+		connection.setRequestProperty("Accept", "application/json");
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+		int timeout = request.getTimeoutMillis() > 0 ? (int) request.getTimeoutMillis() : DEFAULT_TIMEOUT_MILLIS;
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		if (request.getBody() != null) {
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(request.getBody());
+			}
+		}
+
+		int responseCode = connection.getResponseCode();
+		request.responseStarted();
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			if (header.getKey() != null && !header.getValue().isEmpty()) {
+				headers.put(header.getKey(), header.getValue().get(0));
+			}
+		}
+
+		if ("HEAD".equals(request.getMethod())) {
+			connection.disconnect();
+			return new HttpResponse(responseCode, headers, null);
+		}
+
+		byte[] body = null;
+		InputStream stream = responseCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		if (stream != null) {
+			try (InputStream in = stream) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+				body = out.toByteArray();
+			}
+		}
+		return new HttpResponse(responseCode, headers, body);
+	}
+}
@@ -0,0 +1,46 @@
+package dev.jbang.fs.github;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A file or directory published by {@link GitHubPublishers}.
+ */
+public final class GitHubEntry {
+
+	private final Path path;
+	private final BasicFileAttributes attributes;
+	private final byte @Nullable [] content;
+
+	GitHubEntry(Path path, BasicFileAttributes attributes, byte @Nullable [] content) {
+		this.path = path;
+		this.attributes = attributes;
+		this.content = content;
+	}
+
+	@NonNull
+	public Path getPath() {
+		return path;
+	}
+
+	@NonNull
+	public BasicFileAttributes getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * The content of a regular file, if it was requested; null for
+	 * directories and when only entries were requested.
+	 */
+	public byte @Nullable [] getContent() {
+		return content;
+	}
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+}
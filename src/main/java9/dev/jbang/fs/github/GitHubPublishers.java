@@ -0,0 +1,300 @@
+package dev.jbang.fs.github;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reactive access to a GitHub filesystem: a {@link Flow.Publisher} of the
+ * entries below a path, optionally with the content of the files. Entries
+ * are published in the order {@link Files#walk} returns them, and fetches
+ * are only started for entries the subscriber has requested, at most
+ * {@code maxInFlight} at a time. A subscriber that requests in batches thus
+ * keeps the connection busy while holding no more than a batch in memory,
+ * however large the repository.
+ *
+ * Only available on Java 9 and later, from the versioned part of the jar.
+ */
+public final class GitHubPublishers {
+
+	static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+	private GitHubPublishers() {
+	}
+
+	/**
+	 * Same as {@link #entries(Path, boolean, int)} with up to 8 fetches in
+	 * flight.
+	 */
+	public static Flow.@NonNull Publisher<GitHubEntry> entries(@NonNull Path start, boolean withContent) {
+		return entries(start, withContent, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Returns a cold publisher of the start path and everything below it.
+	 * Every subscription walks the tree anew.
+	 *
+	 * @param start a path of a GitHub filesystem
+	 * @param withContent whether to fetch the content of regular files
+	 * @param maxInFlight the most entries fetched ahead of the subscriber
+	 * @return the publisher
+	 */
+	public static Flow.@NonNull Publisher<GitHubEntry> entries(@NonNull Path start, boolean withContent,
+			int maxInFlight) {
+		if (!(start instanceof GitHubPath)) {
+			throw new ProviderMismatchException("Path is not a GitHub path: " + start);
+		}
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Invalid maxInFlight: " + maxInFlight);
+		}
+		GitHubPath path = (GitHubPath) start.toAbsolutePath();
+		return subscriber -> {
+			Objects.requireNonNull(subscriber, "subscriber");
+			subscriber.onSubscribe(new TreeSubscription(path, withContent, maxInFlight, subscriber));
+		};
+	}
+
+	private static final class Node {
+		final GitHubPath path;
+		/** Null until known, for the start path. */
+		final @Nullable Boolean directory;
+
+		Node(GitHubPath path, @Nullable Boolean directory) {
+			this.path = path;
+			this.directory = directory;
+		}
+	}
+
+	/**
+	 * Walks the tree as demand comes in. The frontier holds the paths known
+	 * but not fetched yet, in walk order. A directory's children go to the
+	 * front of it once listed, and nothing after the directory is started
+	 * until then, so the order stays the walk order. All signals to the
+	 * subscriber are sent from {@link #drain()}, one thread at a time.
+	 */
+	private static final class TreeSubscription implements Flow.Subscription {
+
+		private final GitHubFileSystem fs;
+		private final boolean withContent;
+		private final int maxInFlight;
+		private final Flow.Subscriber<? super GitHubEntry> subscriber;
+		private final ExecutorService executor;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		// Guarded by this
+		private final Deque<Node> frontier = new ArrayDeque<>();
+		private final Deque<CompletableFuture<GitHubEntry>> pending = new ArrayDeque<>();
+		private boolean expanding;
+		private boolean started;
+		private volatile @Nullable Throwable error;
+		private volatile boolean done;
+
+		TreeSubscription(GitHubPath start, boolean withContent, int maxInFlight,
+				Flow.Subscriber<? super GitHubEntry> subscriber) {
+			this.fs = start.getFileSystem();
+			this.withContent = withContent;
+			this.maxInFlight = maxInFlight;
+			this.subscriber = subscriber;
+			this.executor = Executors.newFixedThreadPool(maxInFlight, r -> {
+				Thread t = new Thread(r, "github-fs-publisher");
+				t.setDaemon(true);
+				return t;
+			});
+			frontier.add(new Node(start, null));
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("Non-positive request: " + n));
+			} else {
+				// Capped at Long.MAX_VALUE, which means unbounded
+				requested.accumulateAndGet(n,
+						(current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			done = true;
+			executor.shutdownNow();
+		}
+
+		private void fail(Throwable t) {
+			if (error == null) {
+				error = t;
+			}
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				if (done) {
+					return;
+				}
+				Throwable t = error;
+				if (t != null) {
+					cancel();
+					subscriber.onError(t);
+					return;
+				}
+				if (!emit() || !refill()) {
+					return;
+				}
+			} while (wip.decrementAndGet() != 0);
+		}
+
+		/**
+		 * Sends the fetched entries at the head of the queue, as far as
+		 * requested. Returns false once terminated.
+		 */
+		private boolean emit() {
+			while (requested.get() > 0) {
+				CompletableFuture<GitHubEntry> head;
+				synchronized (this) {
+					head = pending.peek();
+					if (head == null || !head.isDone()) {
+						return true;
+					}
+					pending.poll();
+				}
+				GitHubEntry entry;
+				try {
+					entry = head.join();
+				} catch (CompletionException e) {
+					cancel();
+					subscriber.onError(e.getCause() != null ? e.getCause() : e);
+					return false;
+				}
+				requested.decrementAndGet();
+				subscriber.onNext(entry);
+				if (done) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Starts fetches for the requested entries that aren't in flight yet,
+		 * or completes when there is nothing left. Returns false once
+		 * terminated.
+		 */
+		private boolean refill() {
+			boolean complete;
+			try {
+				synchronized (this) {
+					while (!expanding && !frontier.isEmpty()
+							&& pending.size() < Math.min(requested.get(), maxInFlight)) {
+						Node node = frontier.poll();
+						pending.add(fetch(node));
+						if (!Boolean.FALSE.equals(node.directory)) {
+							expanding = true;
+							expand(node);
+						}
+					}
+					complete = !expanding && frontier.isEmpty() && pending.isEmpty();
+				}
+			} catch (RejectedExecutionException e) {
+				// Cancelled meanwhile
+				return false;
+			}
+			if (complete) {
+				done = true;
+				executor.shutdown();
+				subscriber.onComplete();
+				return false;
+			}
+			return true;
+		}
+
+		@SuppressWarnings("try")
+		private CompletableFuture<GitHubEntry> fetch(Node node) {
+			CompletableFuture<GitHubEntry> entry = CompletableFuture.supplyAsync(() -> {
+				try (RequestContext.Scope scope = fs.requestScope()) {
+					GitHubFileAttributes attributes = new GitHubFileAttributes(node.path);
+					byte[] content = withContent && attributes.isRegularFile() ? Files.readAllBytes(node.path)
+							: null;
+					return new GitHubEntry(node.path, attributes, content);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+			entry.whenComplete((result, t) -> drain());
+			return entry;
+		}
+
+		@SuppressWarnings("try")
+		private void expand(Node node) {
+			CompletableFuture.runAsync(() -> {
+				List<Node> children;
+				try (RequestContext.Scope scope = fs.requestScope()) {
+					children = list(node.path);
+				} catch (IOException | RuntimeException e) {
+					fail(e);
+					children = new ArrayList<>();
+				}
+				synchronized (this) {
+					for (int i = children.size() - 1; i >= 0; i--) {
+						frontier.addFirst(children.get(i));
+					}
+					expanding = false;
+				}
+				drain();
+			}, executor);
+		}
+
+		private List<Node> list(GitHubPath dir) throws IOException {
+			boolean first;
+			synchronized (this) {
+				first = !started;
+				started = true;
+			}
+			if (first && fs.getLoadedIndex() == null
+					&& fs.provider().getAccessPlanner().planWalk(fs, dir) == AccessPlanner.Strategy.TREE) {
+				fs.getIndex();
+			}
+			List<Node> children = new ArrayList<>();
+			GitHubTreeIndex index = fs.getLoadedIndex();
+			if (index != null) {
+				GitTree tree = index.list(dir);
+				if (tree != null) {
+					for (GitTreeEntry entry : tree.getEntries()) {
+						children.add(new Node((GitHubPath) dir.resolve(entry.getName()), entry.isTree()));
+					}
+				}
+				return children;
+			}
+			ContentInfo info = fs.provider().stat(dir);
+			if (info == null || !info.isDirectory()) {
+				// A missing start path is reported by its own fetch
+				return children;
+			}
+			for (Path child : fs.provider().listDirectory(dir)) {
+				ContentInfo childInfo = fs.provider().stat((GitHubPath) child);
+				children.add(new Node((GitHubPath) child, childInfo != null && childInfo.isDirectory()));
+			}
+			return children;
+		}
+	}
+}
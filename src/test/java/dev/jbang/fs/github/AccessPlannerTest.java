@@ -0,0 +1,129 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AccessPlannerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static StubGitHub github() {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < 30; i++) {
+			files.put("dir" + i + "/file.txt", "content " + i);
+		}
+		github.commit("main", files);
+		return github;
+	}
+
+	private GitHubFileSystem newFileSystem(HttpClient github, Map<String, ?> env) throws IOException {
+		return (GitHubFileSystem) new GitHubFileSystemProvider(github, tempDir)
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+	}
+
+	/** Distinct ones, a slow request under load may be hedged with a second one. */
+	private static long contentsRequests(StubGitHub github) {
+		return github.getRequests().stream().filter(request -> request.contains("/contents")).distinct().count();
+	}
+
+	@Test
+	void testManyLookupsSwitchToTree() throws IOException {
+		StubGitHub github = github();
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			github.clearRequests();
+			for (int i = 0; i < 30; i++) {
+				assertThat(Files.exists(fs.getPath("/dir" + i + "/file.txt"))).isTrue();
+			}
+			assertThat(contentsRequests(github)).isEqualTo(AccessPlanner.TREE_AFTER_REQUESTS);
+			assertThat(fs.getLoadedIndex()).isNotNull();
+		}
+	}
+
+	@Test
+	void testTruncatedTreeFallsBackToContents() throws IOException {
+		StubGitHub github = github();
+		github.truncateRecursiveTrees(10);
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			github.clearRequests();
+			for (int i = 0; i < 30; i++) {
+				assertThat(Files.exists(fs.getPath("/dir" + i + "/file.txt"))).isTrue();
+			}
+			// One try at the recursive tree, then path by path again
+			assertThat(contentsRequests(github)).isEqualTo(30);
+			assertThat(github.getRequests().stream().filter(request -> request.contains("/git/trees")).distinct())
+				.hasSize(1);
+			assertThat(fs.getLoadedIndex()).isNull();
+			assertThat(fs.isTreeLoadableAtOnce()).isFalse();
+		}
+	}
+
+	@Test
+	void testLowRateLimitBudgetLoadsTree() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				HttpResponse response = super.send(request);
+				Map<String, String> headers = new HashMap<>();
+				headers.put("X-RateLimit-Remaining", "50");
+				headers.put("X-RateLimit-Limit", "60");
+				headers.putAll(response.getHeaders());
+				return new HttpResponse(response.getStatusCode(), headers, response.getBody());
+			}
+		};
+		Map<String, String> files = new HashMap<>();
+		files.put("a/b.txt", "b");
+		files.put("c/d.txt", "d");
+		github.commit("main", files);
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			github.clearRequests();
+			assertThat(Files.exists(fs.getPath("/a/b.txt"))).isTrue();
+			assertThat(Files.exists(fs.getPath("/c/d.txt"))).isTrue();
+			// At most the request that told about the budget
+			assertThat(contentsRequests(github)).isLessThanOrEqualTo(1);
+			assertThat(fs.getLoadedIndex()).isNotNull();
+		}
+	}
+
+	@Test
+	void testWalkLoadsTreeUnlessForced() throws IOException {
+		StubGitHub github = github();
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap());
+				Stream<Path> walk = fs.walk(fs.getPath("/"), 4)) {
+			assertThat(walk.count()).isEqualTo(61);
+			assertThat(github.countRequests("/contents")).isZero();
+		}
+
+		github.clearRequests();
+		try (GitHubFileSystem fs = newFileSystem(github,
+				Collections.singletonMap(GitHubFileSystem.ENV_WALK_STRATEGY, "contents"));
+				Stream<Path> walk = fs.walk(fs.getPath("/dir1"), 4)) {
+			assertThat(walk.count()).isEqualTo(2);
+			assertThat(fs.getLoadedIndex()).isNull();
+			assertThat(github.countRequests("/git/trees")).isZero();
+		}
+	}
+
+	@Test
+	void testSubdirectoryWalkStaysOnContents() throws IOException {
+		StubGitHub github = github();
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap());
+				Stream<Path> walk = fs.walk(fs.getPath("/dir1"), 4)) {
+			assertThat(walk.count()).isEqualTo(2);
+			assertThat(fs.getLoadedIndex()).isNull();
+			assertThat(github.countRequests("/git/trees")).isZero();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChunkedDownloadTest {
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	@TempDir
+	Path tempDir;
+
+	private static byte[] data() {
+		byte[] data = new byte[100 * 1024];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+
+	private static Map<String, Object> env() {
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_CHUNKED_DOWNLOAD_THRESHOLD, 32 * 1024);
+		env.put(GitHubFileSystem.ENV_DOWNLOAD_CHUNK_SIZE, CHUNK_SIZE);
+		return env;
+	}
+
+	private GitHubFileSystem newFileSystem(HttpClient github) throws IOException {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir.resolve("cache"));
+		GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env());
+		fs.refresh();
+		return fs;
+	}
+
+	@Test
+	void testLargeFileIsDownloadedInRanges() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commitBytes("main", Collections.singletonMap("data.bin", data()));
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			assertThat(Files.readAllBytes(fs.getPath("/data.bin"))).isEqualTo(data());
+			// 100 KiB in 16 KiB ranges
+			assertThat(github.countRequests("GET " + StubGitHub.RAW)).isEqualTo(7);
+			assertThat(github.countRequests("/git/blobs/")).isZero();
+		}
+	}
+
+	@Test
+	void testInterruptedDownloadResumes() throws IOException {
+		AtomicBoolean failing = new AtomicBoolean(true);
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				String range = request.getHeaders().get("Range");
+				if (failing.get() && range != null && !range.startsWith("bytes=0-")
+						&& !range.startsWith("bytes=" + CHUNK_SIZE + "-")) {
+					throw new ConnectException("Connection reset");
+				}
+				return super.send(request);
+			}
+		};
+		github.commitBytes("main", Collections.singletonMap("data.bin", data()));
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			github.clearRequests();
+			assertThatThrownBy(() -> Files.readAllBytes(fs.getPath("/data.bin"))).isInstanceOf(IOException.class);
+		}
+
+		// A new provider, like after a restart, only fetches what is missing
+		failing.set(false);
+		github.clearRequests();
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			assertThat(Files.readAllBytes(fs.getPath("/data.bin"))).isEqualTo(data());
+			assertThat(github.countRequests("GET " + StubGitHub.RAW)).isEqualTo(5);
+		}
+	}
+
+	@Test
+	void testCorruptDownloadIsRejected() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				HttpResponse response = super.send(request);
+				if (request.getHeaders().containsKey("Range") && response.getStatusCode() == 206) {
+					byte[] body = response.getBody().clone();
+					body[0] ^= 1;
+					Map<String, String> headers = new HashMap<>();
+					headers.put("Content-Range", response.header("Content-Range"));
+					return new HttpResponse(206, headers, body);
+				}
+				return response;
+			}
+		};
+		github.commitBytes("main", Collections.singletonMap("data.bin", data()));
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			assertThatThrownBy(() -> Files.readAllBytes(fs.getPath("/data.bin"))).hasMessageContaining("match");
+			String sha = StubGitHub.blobSha(data());
+			assertThat(new BlobCache(tempDir.resolve("cache")).get(sha)).isNull();
+		}
+	}
+
+	@Test
+	void testFallbackLeavesNoPartialFiles() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				// A proxy that ignores ranges and answers with the whole file
+				return super.send(request.getHeaders().containsKey("Range") ? HttpRequest.get(request.getUrl())
+						: request);
+			}
+		};
+		github.commitBytes("main", Collections.singletonMap("data.bin", data()));
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			assertThat(Files.readAllBytes(fs.getPath("/data.bin"))).isEqualTo(data());
+			try (Stream<Path> files = Files.walk(tempDir.resolve("cache"))) {
+				assertThat(files.map(Path::toString)).noneMatch(file -> file.contains(".part"));
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConcurrencyLimiterTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void testAdditiveIncreaseMultiplicativeDecrease() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 64);
+		for (int i = 0; i < 200; i++) {
+			limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.SUCCESS, 20 * MILLIS);
+		}
+		assertThat(limiter.getLimit()).isGreaterThan(16);
+
+		int before = limiter.getLimit();
+		limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.DROPPED, 20 * MILLIS);
+		assertThat(limiter.getLimit()).isEqualTo(before / 2);
+
+		// A burst of failures from the same round trip only halves once
+		for (int i = 0; i < 5; i++) {
+			limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.DROPPED, 20 * MILLIS);
+		}
+		assertThat(limiter.getLimit()).isEqualTo(before / 2);
+	}
+
+	@Test
+	void testLatencyRiseShrinksLimit() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 1, 64);
+		limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.SUCCESS, 20 * MILLIS);
+		int before = limiter.getLimit();
+		limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.SUCCESS, 500 * MILLIS);
+		assertThat(limiter.getLimit()).isLessThan(before);
+	}
+
+	@Test
+	void testThrottledResponsesShrinkSharedLimit() throws Exception {
+		AtomicBoolean throttle = new AtomicBoolean(true);
+		HttpClient client = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				return throttle.get() ? new HttpResponse(429, new HashMap<>(), null) : super.send(request);
+			}
+		};
+		LimitedHttpClient limited = new LimitedHttpClient(client, new ConcurrencyLimiter(8, 1, 64));
+		limited.send(HttpRequest.get(StubGitHub.API + "/owner/repo/commits/main"));
+		assertThat(limited.getLimiter().getLimit()).isEqualTo(4);
+		assertThat(limited.getLimiter().getInFlight()).isZero();
+	}
+
+	@Test
+	void testAcquireBlocksAtLimit() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		ConcurrencyLimiter.Permit permit = limiter.acquire(RequestContext.DEFAULT);
+		CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiter = new Thread(() -> {
+			try {
+				limiter.acquire(RequestContext.DEFAULT);
+				acquired.countDown();
+			} catch (IOException e) {
+				// ignore
+			}
+		});
+		waiter.start();
+		assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+		limiter.release(permit, ConcurrencyLimiter.Outcome.SUCCESS, MILLIS);
+		assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void testHigherPriorityAndOtherOwnersGoFirst() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		ConcurrencyLimiter.Permit held = limiter.acquire(RequestContext.DEFAULT);
+		Object bulk = new Object();
+		Object other = new Object();
+		List<String> order = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		// Queued in this order, but must be served as interactive, then round-robin per owner
+		threads.add(waiter(limiter, new RequestContext(bulk, RequestPriority.BACKGROUND, 8), "bulk-1", order));
+		threads.add(waiter(limiter, new RequestContext(bulk, RequestPriority.NORMAL, 8), "bulk-normal-1", order));
+		threads.add(waiter(limiter, new RequestContext(bulk, RequestPriority.NORMAL, 8), "bulk-normal-2", order));
+		threads.add(waiter(limiter, new RequestContext(other, RequestPriority.NORMAL, 8), "other-normal", order));
+		threads.add(waiter(limiter, new RequestContext(other, RequestPriority.INTERACTIVE, 8), "interactive",
+				order));
+
+		limiter.release(held, ConcurrencyLimiter.Outcome.IGNORED, MILLIS);
+		for (Thread thread : threads) {
+			thread.join(5000);
+		}
+		assertThat(order).containsExactly("interactive", "bulk-normal-1", "other-normal", "bulk-normal-2",
+				"bulk-1");
+	}
+
+	@Test
+	void testQuotaLimitsOwnerButNotOthers() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 4, 4);
+		RequestContext limited = new RequestContext(new Object(), RequestPriority.NORMAL, 1);
+		ConcurrencyLimiter.Permit first = limiter.acquire(limited);
+		List<String> order = new CopyOnWriteArrayList<>();
+		Thread second = waiter(limiter, limited, "second", order);
+		limiter.release(limiter.acquire(RequestContext.DEFAULT), ConcurrencyLimiter.Outcome.IGNORED, MILLIS);
+		assertThat(order).isEmpty();
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+
+		limiter.release(first, ConcurrencyLimiter.Outcome.IGNORED, MILLIS);
+		second.join(5000);
+		assertThat(order).containsExactly("second");
+	}
+
+	/**
+	 * Starts a thread that takes a slot, records its name and gives the slot
+	 * back, and waits until it is blocked in the queue.
+	 */
+	private static Thread waiter(ConcurrencyLimiter limiter, RequestContext context, String name, List<String> order)
+			throws InterruptedException {
+		Thread thread = new Thread(() -> {
+			try {
+				ConcurrencyLimiter.Permit permit = limiter.acquire(context);
+				order.add(name);
+				limiter.release(permit, ConcurrencyLimiter.Outcome.IGNORED, MILLIS);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, name);
+		thread.start();
+		while (thread.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testInteractiveLatencyStaysBoundedUnderBackgroundLoad() throws Exception {
+		long delayMillis = 50;
+		Map<String, String> bulkFiles = new HashMap<>();
+		for (int i = 0; i < 2000; i++) {
+			bulkFiles.put("data/file" + i + ".txt", "content " + i);
+		}
+		Map<String, String> scripts = new HashMap<>();
+		for (int i = 0; i < 5; i++) {
+			scripts.put("script" + i + ".java", "class Script" + i + " {}");
+		}
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				try {
+					// A link that can only carry a few requests per round trip
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.send(request);
+			}
+		};
+		github.commit("main", bulkFiles);
+		github.commit("scripts", scripts);
+
+		// A fixed limit, so the background job saturates it for the whole test
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir,
+				new ConcurrencyLimiter(4, 4, 4));
+		Map<String, Object> background = new HashMap<>();
+		background.put(GitHubFileSystem.ENV_REQUEST_PRIORITY, "background");
+		GitHubFileSystem bulkFs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), background);
+		GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/scripts"), Collections.emptyMap());
+
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicInteger bulkReads = new AtomicInteger();
+		AtomicInteger next = new AtomicInteger();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < 32; t++) {
+			Thread worker = new Thread(() -> {
+				int i;
+				while (!stop.get() && (i = next.getAndIncrement()) < bulkFiles.size()) {
+					try {
+						Files.readAllBytes(bulkFs.getPath("/data/file" + i + ".txt"));
+						bulkReads.incrementAndGet();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		try {
+			while (bulkReads.get() < 20) {
+				Thread.sleep(10);
+			}
+			long worst = 0;
+			for (int i = 0; i < 5; i++) {
+				long start = System.nanoTime();
+				assertThat(Files.readAllBytes(fs.getPath("/script" + i + ".java"))).isNotEmpty();
+				worst = Math.max(worst, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				assertThat(provider.getConcurrencyLimiter().getInFlight()).isGreaterThan(1);
+			}
+			// Without priorities each read would queue behind ~28 background requests, i.e. 7 round trips
+			assertThat(worst).isLessThan(4 * delayMillis);
+		} finally {
+			stop.set(true);
+			for (Thread worker : workers) {
+				worker.join(10000);
+			}
+		}
+	}
+}
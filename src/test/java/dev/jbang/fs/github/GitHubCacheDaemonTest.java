@@ -0,0 +1,118 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubCacheDaemonTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testClientsShareTheDaemonsCache() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("README.md", "readme");
+		files.put("src/App.java", "class App {}");
+		github.commit("main", files);
+		List<String> authorizations = new CopyOnWriteArrayList<>();
+		HttpClient upstream = new HttpClient() {
+			@Override
+			public String downloadString(String url) throws IOException {
+				return github.downloadString(url);
+			}
+
+			@Override
+			public Path downloadAndCacheFile(String url) throws IOException {
+				return github.downloadAndCacheFile(url);
+			}
+
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				if (request.getUrl().startsWith(StubGitHub.API)) {
+					authorizations.add(request.getHeaders().getOrDefault("Authorization", ""));
+				}
+				return github.send(request);
+			}
+		};
+
+		try (GitHubCacheDaemon daemon = new GitHubCacheDaemon(upstream, tempDir.resolve("daemon"),
+				Arrays.asList("pooled", "ghe.example.com=enterprise"), Collections.singletonList("ghe.example.com"))
+			.start(new InetSocketAddress("127.0.0.1", 0))) {
+			// Two JVMs, each with a cold cache of its own
+			for (String jvm : new String[] { "first", "second" }) {
+				github.clearRequests();
+				GitHubFileSystemProvider provider = new GitHubFileSystemProvider(
+						new DaemonHttpClient(daemon.getUrl()), tempDir.resolve(jvm));
+				try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(
+						URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap())) {
+					assertThat(fs.getIndex().lookup((GitHubPath) fs.getPath("/src/App.java"))).isNotNull();
+					assertThat(new String(Files.readAllBytes(fs.getPath("/src/App.java")))).isEqualTo("class App {}");
+				}
+			}
+			// Only the branch head was asked for again, with the ETag of the first answer
+			assertThat(github.getRequests()).containsExactly("GET " + StubGitHub.API + "/owner/repo/commits/main");
+			assertThat(authorizations).isNotEmpty().allMatch(header -> header.equals("Bearer pooled"));
+		}
+	}
+
+	@Test
+	void testDownloadsAreStreamedFromDiskAndRangesKeptApart() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		String commit = github.commit("main", Collections.singletonMap("big.bin", "0123456789"));
+		String url = StubGitHub.RAW + "/owner/repo/" + commit + "/big.bin";
+		try (GitHubCacheDaemon daemon = new GitHubCacheDaemon(github, tempDir.resolve("daemon"),
+				Collections.emptyList(), Collections.emptyList()).start(new InetSocketAddress("127.0.0.1", 0))) {
+			DaemonHttpClient client = new DaemonHttpClient(daemon.getUrl());
+			assertThat(new String(Files.readAllBytes(client.downloadAndCacheFile(url)))).isEqualTo("0123456789");
+			github.clearRequests();
+			assertThat(new String(Files.readAllBytes(client.downloadAndCacheFile(url)))).isEqualTo("0123456789");
+			assertThat(github.getRequests()).isEmpty();
+
+			// Not answered with the whole body once that is cached
+			assertThat(client.send(HttpRequest.get(url)).getStatusCode()).isEqualTo(200);
+			HttpResponse range = client.send(HttpRequest.get(url).header("Range", "bytes=2-4"));
+			assertThat(range.getStatusCode()).isEqualTo(206);
+			assertThat(range.getBodyAsString()).isEqualTo("234");
+
+			assertThatThrownBy(() -> client.downloadAndCacheFile(url.replace("big.bin", "missing.bin")))
+				.isInstanceOf(FileNotFoundException.class);
+		}
+	}
+
+	@Test
+	void testOnlyGitHubHostsAreProxied() throws Exception {
+		try (GitHubCacheDaemon daemon = new GitHubCacheDaemon(new StubGitHub("owner", "repo"), tempDir,
+				Arrays.asList("pooled", "ghe.example.com=enterprise"), Collections.singletonList("ghe.example.com"))
+			.start(new InetSocketAddress("127.0.0.1", 0))) {
+			HttpResponse response = new DaemonHttpClient(daemon.getUrl())
+				.send(HttpRequest.get("https://api.attacker.example/repos/owner/repo"));
+			assertThat(response.getStatusCode()).isEqualTo(403);
+
+			assertThat(daemon.isAllowed("https://ghe.example.com/api/v3/repos/owner/repo")).isTrue();
+			assertThat(daemon.isAllowed("https://user@api.github.com/repos/owner/repo")).isFalse();
+			assertThat(daemon.isAllowed("file:///etc/passwd")).isFalse();
+			// Tokens only go to the API of the host they were given for
+			assertThat(daemon.apiHost("https://api.github.com/repos/owner/repo")).isEqualTo("github.com");
+			assertThat(daemon.apiHost("https://ghe.example.com/api/v3/repos/owner/repo")).isEqualTo("ghe.example.com");
+			assertThat(daemon.apiHost("https://ghe.example.com/raw/owner/repo/main/README.md")).isNull();
+			assertThat(daemon.apiHost("https://other.example.com/api/v3/repos/owner/repo")).isNull();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubEndpointsTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testEnterpriseHostFromUri() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo", "https://ghe.example.com/api/v3/repos",
+				"https://ghe.example.com/raw");
+		github.commit("main", Collections.singletonMap("src/Main.java", "class Main {}"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		URI uri = URI.create("github://ghe.example.com/owner/repo/tree/main");
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(uri, Collections.emptyMap())) {
+			assertThat(fs.getRepoInfo().getHost()).isEqualTo("ghe.example.com");
+			assertThat(read(fs.getPath("/src/Main.java"))).isEqualTo("class Main {}");
+			assertThat(fs.getPath("/src").toUri())
+				.isEqualTo(URI.create("github://ghe.example.com/owner/repo/tree/main/src"));
+			assertThat(provider.getPath(fs.getPath("/src").toUri()).getFileSystem()).isSameAs(fs);
+			assertThat(github.getRequests()).allMatch(request -> request.contains("://ghe.example.com/"));
+		}
+	}
+
+	@Test
+	void testEndpointsFromEnv() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo", "http://localhost:8080/api/repos",
+				"http://localhost:8080/raw");
+		github.commit("main", Collections.singletonMap("README.md", "Hello"));
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_API_URL, "http://localhost:8080/api/");
+		env.put(GitHubFileSystem.ENV_RAW_URL, "http://localhost:8080/raw");
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env)) {
+			fs.refresh();
+			assertThat(read(fs.getPath("/README.md"))).isEqualTo("Hello");
+			assertThat(github.countRequests("http://localhost:8080/api/repos/owner/repo/git/trees/")).isEqualTo(1);
+			assertThat(github.countRequests("http://localhost:8080/raw/owner/repo/")).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void testMirrorFailover() throws IOException {
+		String[] lastMirrorRequest = new String[1];
+		int[] directRawRequests = new int[1];
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				String url = request.getUrl();
+				if (url.startsWith("https://mirror-a.example.com/")) {
+					throw new ConnectException("Connection refused");
+				}
+				if (url.startsWith("https://mirror-b.example.com/")) {
+					lastMirrorRequest[0] = url;
+					HttpRequest forwarded = new HttpRequest(request.getMethod(),
+							RAW + url.substring("https://mirror-b.example.com".length()));
+					request.getHeaders().forEach(forwarded::header);
+					return super.send(forwarded);
+				}
+				if (url.startsWith(RAW)) {
+					directRawRequests[0]++;
+				}
+				return super.send(request);
+			}
+		};
+		Map<String, String> files = new HashMap<>();
+		files.put("a.txt", "A");
+		files.put("b.txt", "B");
+		github.commit("main", files);
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_MIRRORS,
+				Arrays.asList("https://mirror-a.example.com/", "https://mirror-b.example.com"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env)) {
+			fs.refresh();
+			assertThat(read(fs.getPath("/a.txt"))).isEqualTo("A");
+			assertThat(lastMirrorRequest[0]).isEqualTo("https://mirror-b.example.com/owner/repo/"
+					+ github.head("main") + "/a.txt");
+			assertThat(directRawRequests[0]).isZero();
+
+			// The failing mirror is out of the rotation now
+			assertThat(read(fs.getPath("/b.txt"))).isEqualTo("B");
+			assertThat(lastMirrorRequest[0]).endsWith("/b.txt");
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubFileAttributesTest {
+
+	@TempDir
+	Path tempDir;
+
+	private GitHubFileSystem newFileSystem(HttpClient github, Map<String, ?> env) throws IOException {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		return (GitHubFileSystem) provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+	}
+
+	@Test
+	void testAttributesFollowContentAndHistory() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("a.txt", "A");
+		files.put("b.txt", "B");
+		files.put("copy.txt", "A");
+		String first = github.commit("main", files);
+		String second = github.change("main", Collections.singletonMap("b.txt", "B2"));
+
+		try (GitHubFileSystem fs = newFileSystem(github,
+				Collections.singletonMap(GitHubFileSystem.ENV_COMMIT_TIMES, true))) {
+			fs.refresh();
+			Path a = fs.getPath("/a.txt");
+			Path b = fs.getPath("/b.txt");
+			BasicFileAttributes attributes = Files.readAttributes(a, BasicFileAttributes.class);
+			assertThat(attributes.fileKey()).isEqualTo(StubGitHub.blobSha("A".getBytes(StandardCharsets.UTF_8)));
+			assertThat(attributes.lastModifiedTime()).isEqualTo(FileTime.from(github.commitDate(first)));
+			assertThat(Files.getLastModifiedTime(b)).isEqualTo(FileTime.from(github.commitDate(second)));
+			assertThat(Files.getLastModifiedTime(fs.getPath("/"))).isEqualTo(FileTime.from(github.commitDate(second)));
+
+			github.clearRequests();
+			assertThat(Files.getLastModifiedTime(a)).isEqualTo(FileTime.from(github.commitDate(first)));
+			assertThat(github.countRequests("/commits?")).isZero();
+
+			assertThat(Files.isSameFile(a, fs.getPath("/copy.txt"))).isTrue();
+			assertThat(Files.isSameFile(a, b)).isFalse();
+		}
+	}
+
+	@Test
+	void testTimesOfADirectoryAreFetchedTogether() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("dir/a.txt", "A");
+		files.put("dir/b.txt", "B");
+		files.put("dir/c.txt", "C");
+		files.put("other.txt", "O");
+		String first = github.commit("main", files);
+		String second = github.change("main", Collections.singletonMap("dir/b.txt", "B2"));
+
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_TOKEN, "secret");
+		env.put(GitHubFileSystem.ENV_COMMIT_TIMES, true);
+		try (GitHubFileSystem fs = newFileSystem(github, env)) {
+			Map<String, FileTime> times = new HashMap<>();
+			try (Stream<Path> list = Files.list(fs.getPath("/dir"))) {
+				github.clearRequests();
+				list.forEach(p -> {
+					try {
+						times.put(p.getFileName().toString(), Files.getLastModifiedTime(p));
+					} catch (IOException e) {
+						throw new java.io.UncheckedIOException(e);
+					}
+				});
+			}
+			assertThat(github.countRequests("/graphql")).isEqualTo(1);
+			assertThat(github.countRequests("/commits?")).isZero();
+			// The head of the branch is only looked up for the first path
+			assertThat(github.countRequests("/commits/main")).isEqualTo(1);
+			assertThat(times).containsEntry("a.txt", FileTime.from(github.commitDate(first)))
+				.containsEntry("b.txt", FileTime.from(github.commitDate(second)))
+				.containsEntry("c.txt", FileTime.from(github.commitDate(first)));
+		}
+	}
+
+	@Test
+	void testCommitTimesAreOptIn() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		String first = github.commit("main", Collections.singletonMap("a.txt", "A"));
+		String second = github.change("main", Collections.singletonMap("b.txt", "B"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			assertThat(Files.exists(fs.getPath("/a.txt"))).isTrue();
+			github.clearRequests();
+			// The head commit's date, stable from run to run
+			FileTime head = FileTime.from(github.commitDate(second));
+			assertThat(Files.getLastModifiedTime(fs.getPath("/a.txt"))).isEqualTo(head)
+				.isNotEqualTo(FileTime.from(github.commitDate(first)));
+			assertThat(Files.getLastModifiedTime(fs.getPath("/b.txt"))).isEqualTo(head);
+			assertThat(github.countRequests("/commits?")).isEqualTo(1);
+			assertThat(github.countRequests("/graphql")).isZero();
+		}
+	}
+
+	@Test
+	void testGitHubView() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("run.sh", "#!/bin/sh");
+		files.put("link", "run.sh");
+		files.put("big.bin", "version https://git-lfs.github.com/spec/v1\noid sha256:4d7a\nsize 12345\n");
+		github.mode("run.sh", "100755");
+		github.mode("link", "120000");
+		github.submodule("lib", "0123456789abcdef0123456789abcdef01234567");
+		github.commit("main", files);
+
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			fs.refresh();
+			assertThat(fs.supportedFileAttributeViews()).contains("github");
+			github.clearRequests();
+
+			Map<String, Object> script = Files.readAttributes(fs.getPath("/run.sh"), "github:sha,mode,executable");
+			assertThat(script).containsOnlyKeys("sha", "mode", "executable")
+				.containsEntry("sha", StubGitHub.blobSha("#!/bin/sh".getBytes(StandardCharsets.UTF_8)))
+				.containsEntry("mode", "100755")
+				.containsEntry("executable", true);
+			Map<String, Object> submodule = Files.readAttributes(fs.getPath("/lib"), "github:*");
+			assertThat(submodule).containsEntry("submoduleCommit", "0123456789abcdef0123456789abcdef01234567")
+				.containsEntry("symlinkTarget", null)
+				.containsEntry("lfsPointer", false);
+			assertThat(Files.readAttributes(fs.getPath("/run.sh"), "size,isDirectory")).containsOnlyKeys("size",
+					"isDirectory");
+			assertThat(github.getRequests()).isEmpty();
+
+			assertThat(Files.getAttribute(fs.getPath("/link"), "github:symlinkTarget")).isEqualTo("run.sh");
+			assertThat(Files.getAttribute(fs.getPath("/big.bin"), "github:lfsPointer")).isEqualTo(true);
+			assertThat(Files.getAttribute(fs.getPath("/run.sh"), "github:lfsPointer")).isEqualTo(false);
+		}
+	}
+
+	@Test
+	void testGitHubViewWithoutIndexLooksUpTheHeadOnce() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("a.txt", "A");
+		files.put("dir/b.txt", "B");
+		github.commit("main", files);
+
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			assertThat(Files.getAttribute(fs.getPath("/a.txt"), "github:sha"))
+				.isEqualTo(StubGitHub.blobSha("A".getBytes(StandardCharsets.UTF_8)));
+			assertThat(Files.getAttribute(fs.getPath("/dir/b.txt"), "github:sha"))
+				.isEqualTo(StubGitHub.blobSha("B".getBytes(StandardCharsets.UTF_8)));
+			assertThat(fs.getLoadedIndex()).isNull();
+			assertThat(github.countRequests("/commits/main")).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void testStatAllListsEachParentOnce() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("a/one.txt", "1");
+		files.put("a/two.txt", "2");
+		files.put("b/three.txt", "3");
+		github.commit("main", files);
+
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			List<Path> paths = Arrays.asList(fs.getPath("/a/one.txt"), fs.getPath("/a/two.txt"),
+					fs.getPath("/a/missing.txt"), fs.getPath("/b/three.txt"), fs.getPath("/b"),
+					fs.getPath("/c/missing.txt"));
+			Map<Path, BasicFileAttributes> stats = fs.statAll(paths);
+			assertThat(stats).containsOnlyKeys(paths.get(0), paths.get(1), paths.get(3), paths.get(4));
+			assertThat(stats.get(paths.get(1)).size()).isEqualTo(1);
+			assertThat(stats.get(paths.get(4)).isDirectory()).isTrue();
+			// One listing each for /, /a, /b and /c
+			assertThat(github.countRequests("/contents")).isEqualTo(4);
+
+			github.clearRequests();
+			assertThat(Files.exists(paths.get(2))).isFalse();
+			assertThat(Files.exists(paths.get(5))).isFalse();
+			assertThat(fs.statAll(paths)).hasSize(4);
+			assertThat(github.getRequests()).isEmpty();
+		}
+	}
+}
@@ -1,18 +1,25 @@
 package dev.jbang.fs.github;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 public class GitHubFileSystemProviderTest {
@@ -112,4 +119,88 @@ public class GitHubFileSystemProviderTest {
 		assertThat(repoInfo1).isEqualTo(repoInfo2);
 	}
 
+	@Test
+	void testFileChannel(@TempDir Path tempDir) throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", Collections.singletonMap("data/big.bin", "0123456789abcdef"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir.resolve("cache"));
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(
+				URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap())) {
+			fs.refresh();
+			Path file = fs.getPath("/data/big.bin");
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				assertThat(channel.size()).isEqualTo(16);
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 10, 6);
+				assertThat(StandardCharsets.UTF_8.decode(mapped).toString()).isEqualTo("abcdef");
+
+				Path target = tempDir.resolve("copy.bin");
+				try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE)) {
+					assertThat(channel.transferTo(0, channel.size(), out)).isEqualTo(16);
+				}
+				assertThat(Files.readAllBytes(target)).isEqualTo("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+			}
+
+			// Opening again is served from the cache
+			github.clearRequests();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.allocate(4);
+				channel.position(4).read(buffer);
+				assertThat(new String(buffer.array(), StandardCharsets.UTF_8)).isEqualTo("4567");
+			}
+			assertThat(github.getRequests()).isEmpty();
+
+			assertThatThrownBy(() -> FileChannel.open(file, StandardOpenOption.WRITE))
+				.isInstanceOf(UnsupportedOperationException.class);
+		}
+	}
+
+	@Test
+	void testSmallFileAfterStatCostsOneRequest(@TempDir Path tempDir) throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", Collections.singletonMap("scripts/hello.java", "class hello {}"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				Collections.emptyMap())) {
+			Path script = fs.getPath("/scripts/hello.java");
+			assertThat(Files.exists(script)).isTrue();
+			assertThat(Files.isRegularFile(script)).isTrue();
+			assertThat(Files.size(script)).isEqualTo(14);
+			assertThat(new String(Files.readAllBytes(script), StandardCharsets.UTF_8)).isEqualTo("class hello {}");
+			try (FileChannel channel = FileChannel.open(script)) {
+				assertThat(channel.size()).isEqualTo(14);
+			}
+			assertThat(github.getRequests()).hasSize(1);
+
+			Path missing = fs.getPath("/scripts/missing.java");
+			assertThat(Files.exists(missing)).isFalse();
+			assertThat(Files.isRegularFile(missing)).isFalse();
+			assertThat(github.getRequests()).hasSize(2);
+		}
+	}
+
+	@Test
+	void testRawAccessMode(@TempDir Path tempDir) throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", Collections.singletonMap("scripts/hello.java", "class hello {}"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				Collections.singletonMap(GitHubFileSystem.ENV_ACCESS_MODE, GitHubFileSystem.ACCESS_MODE_RAW))) {
+			Path script = fs.getPath("/scripts/hello.java");
+			assertThat(Files.isRegularFile(script)).isTrue();
+			assertThat(Files.size(script)).isEqualTo(14);
+			assertThat(new String(Files.readAllBytes(script), StandardCharsets.UTF_8)).isEqualTo("class hello {}");
+			assertThat(github.countRequests("api.github.com")).isZero();
+			assertThat(github.getRequests()).containsExactly(
+					"HEAD https://raw.githubusercontent.com/owner/repo/main/scripts/hello.java",
+					"GET https://raw.githubusercontent.com/owner/repo/main/scripts/hello.java");
+
+			// Directories still go through the API
+			assertThat(Files.isDirectory(fs.getPath("/scripts"))).isTrue();
+			assertThat(github.countRequests("api.github.com")).isEqualTo(1);
+		}
+	}
 }
@@ -0,0 +1,325 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubFileSystemRefreshTest {
+
+	@TempDir
+	Path cacheDir;
+
+	private static Map<String, String> files(String... pathsAndContents) {
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < pathsAndContents.length; i += 2) {
+			files.put(pathsAndContents[i], pathsAndContents[i + 1]);
+		}
+		return files;
+	}
+
+	private GitHubFileSystem newFileSystem(StubGitHub github, String uri) throws IOException {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+		return (GitHubFileSystem) provider.newFileSystem(URI.create(uri), Collections.emptyMap());
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	private static List<String> names(List<Path> paths) {
+		return paths.stream().map(Path::toString).collect(Collectors.toList());
+	}
+
+	@Test
+	void testFirstRefreshLoadsIndex() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "src/util/B.java", "b", "README.md", "readme"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, "github://github.com/owner/repo/tree/main")) {
+			assertThat(fs.refresh()).isEmpty();
+			// Head plus a single recursive tree fetch
+			assertThat(github.getRequests()).hasSize(2);
+			assertThat(github.countRequests("recursive=1")).isEqualTo(1);
+
+			github.clearRequests();
+			assertThat(Files.isDirectory(fs.getPath("/src/util"))).isTrue();
+			assertThat(Files.exists(fs.getPath("/src/missing"))).isFalse();
+			List<String> children = Files.list(fs.getPath("/src"))
+				.map(Path::toString)
+				.collect(Collectors.toList());
+			assertThat(children).containsExactlyInAnyOrder("/src/A.java", "/src/util");
+			assertThat(github.getRequests()).isEmpty();
+		}
+	}
+
+	@Test
+	void testRefreshPatchesIndexAcrossCommits() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "src/B.java", "b", "lib/big/L1.java", "l1",
+				"lib/big/L2.java", "l2", "docs/index.md", "docs"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, "github://github.com/owner/repo/tree/main")) {
+			fs.refresh();
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a");
+			assertThat(read(fs.getPath("/src/B.java"))).isEqualTo("b");
+
+			// Second commit: modify one file, add one, leave lib/ untouched
+			String second = github.change("main", files("src/B.java", "b2", "docs/guide.md", "guide"));
+			github.clearRequests();
+			assertThat(names(fs.refresh())).containsExactlyInAnyOrder("/src/B.java", "/docs/guide.md");
+			assertThat(github.countRequests("recursive=1")).isZero();
+			assertThat(github.countRequests("git/trees/" + second)).isEqualTo(1);
+			// Head, new root, and the two changed subtrees
+			assertThat(github.getRequests()).hasSize(4);
+
+			github.clearRequests();
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a");
+			assertThat(github.getRequests()).isEmpty();
+			assertThat(read(fs.getPath("/src/B.java"))).isEqualTo("b2");
+			assertThat(github.getRequests()).hasSize(1);
+			assertThat(read(fs.getPath("/lib/big/L1.java"))).isEqualTo("l1");
+
+			// Third commit: delete a whole directory
+			github.change("main", files("lib/big/L1.java", null, "lib/big/L2.java", null));
+			assertThat(names(fs.refresh())).containsExactlyInAnyOrder("/lib/big/L1.java", "/lib/big/L2.java");
+			assertThat(Files.exists(fs.getPath("/lib"))).isFalse();
+			assertThat(Files.exists(fs.getPath("/docs/guide.md"))).isTrue();
+
+			// Nothing moved: only the conditional head request
+			github.clearRequests();
+			assertThat(fs.refresh()).isEmpty();
+			assertThat(github.getRequests()).hasSize(1);
+		}
+	}
+
+	@Test
+	void testRefreshWithBasePath() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/main/App.java", "app", "other/X.java", "x"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, "github://github.com/owner/repo/tree/main/src")) {
+			fs.refresh();
+			assertThat(read(fs.getPath("/main/App.java"))).isEqualTo("app");
+
+			github.change("main", files("other/X.java", "x2"));
+			assertThat(fs.refresh()).isEmpty();
+
+			github.change("main", files("src/main/App.java", "app2"));
+			assertThat(names(fs.refresh())).containsExactly("/main/App.java");
+			assertThat(read(fs.getPath("/main/App.java"))).isEqualTo("app2");
+		}
+	}
+
+	@Test
+	void testTruncatedTreeIsFetchedTreeByTree() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < 4; i++) {
+			files.put("module" + i + "/src/Main.java", "main " + i);
+			files.put("module" + i + "/src/Util.java", "util " + i);
+			// The same content in every module, so the same tree
+			files.put("module" + i + "/config/settings.properties", "shared");
+		}
+		github.commit("main", files);
+		github.truncateRecursiveTrees(5);
+
+		try (GitHubFileSystem fs = newFileSystem(github, "github://github.com/owner/repo/tree/main")) {
+			fs.refresh();
+			// Root, 4 modules, 4 src trees and one shared config tree
+			assertThat(github.countRequests("/git/trees/") - github.countRequests("recursive=1")).isEqualTo(10);
+
+			github.clearRequests();
+			List<String> all;
+			try (java.util.stream.Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+				all = walk.filter(Files::isRegularFile).map(Path::toString).collect(Collectors.toList());
+			}
+			assertThat(all).hasSize(12).contains("/module3/config/settings.properties");
+			assertThat(read(fs.getPath("/module2/src/Util.java"))).isEqualTo("util 2");
+			assertThat(github.countRequests("/git/trees/")).isZero();
+		}
+	}
+
+	@Test
+	void testRefsOfOneRepositoryShareTrees() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < 4; i++) {
+			files.put("module" + i + "/src/Main.java", "main " + i);
+		}
+		github.commit("main", files);
+		files.put("module0/src/Main.java", "changed");
+		github.commit("feature", files);
+
+		try (GitHubFileSystem main = newFileSystem(github, "github://github.com/owner/repo/tree/main")) {
+			main.refresh();
+			github.clearRequests();
+			try (GitHubFileSystem feature = main.withRef("feature")) {
+				feature.refresh();
+				// The commit's root tree, module0 and module0/src, the other modules are shared
+				assertThat(github.countRequests("recursive=1")).isZero();
+				assertThat(github.countRequests("/git/trees/")).isEqualTo(3);
+				assertThat(read(feature.getPath("/module0/src/Main.java"))).isEqualTo("changed");
+				assertThat(read(feature.getPath("/module1/src/Main.java"))).isEqualTo("main 1");
+			}
+			assertThat(read(main.getPath("/module0/src/Main.java"))).isEqualTo("main 0");
+		}
+	}
+
+	@Test
+	void testTreeStoreEvictsLeastRecentlyUsedTrees() throws IOException {
+		List<String> fetched = new ArrayList<>();
+		GitTreeStore store = new GitTreeStore(sha -> {
+			fetched.add(sha);
+			return new GitTree(sha, Collections.singletonList(new GitTreeEntry("f", "100644", "blob", sha + "f", 1)),
+					false);
+		}, Runnable::run, 6);
+		// Two entries each, with the tree itself
+		store.get("a");
+		store.get("b");
+		store.get("a");
+		store.get("c");
+		assertThat(store.size()).isEqualTo(3);
+		store.get("d");
+		assertThat(store.size()).isEqualTo(3);
+		assertThat(store.getIfPresent("b")).isNull();
+		assertThat(store.getIfPresent("a")).isNotNull();
+		store.get("b");
+		assertThat(fetched).containsExactly("a", "b", "c", "d", "b");
+	}
+
+	@Test
+	void testIncludeAndExcludeFilters() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < 4; i++) {
+			files.put("module" + i + "/src/Main.java", "main " + i);
+			files.put("module" + i + "/build/Main.class", "class " + i);
+		}
+		files.put("README.md", "readme");
+		github.commit("main", files);
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_INCLUDE, java.util.Arrays.asList("module1/**", "module2/**"));
+		env.put(GitHubFileSystem.ENV_EXCLUDE, "**/build/**");
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env)) {
+			fs.refresh();
+			// The root, module1, module2 and their src trees
+			assertThat(github.countRequests("recursive=1")).isZero();
+			assertThat(github.countRequests("/git/trees/")).isEqualTo(5);
+
+			List<String> all;
+			try (java.util.stream.Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+				all = walk.map(Path::toString).collect(Collectors.toList());
+			}
+			assertThat(all).containsExactlyInAnyOrder("/", "/module1", "/module1/src", "/module1/src/Main.java",
+					"/module2", "/module2/src", "/module2/src/Main.java");
+			assertThat(Files.exists(fs.getPath("/README.md"))).isFalse();
+			assertThat(Files.exists(fs.getPath("/module1/build"))).isFalse();
+			assertThatThrownBy(() -> read(fs.getPath("/module0/src/Main.java")))
+				.isInstanceOf(java.nio.file.NoSuchFileException.class);
+			assertThat(read(fs.getPath("/module2/src/Main.java"))).isEqualTo("main 2");
+		}
+
+		github.clearRequests();
+		env.remove(GitHubFileSystem.ENV_INCLUDE);
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env)) {
+			try (java.util.stream.Stream<Path> list = Files.list(fs.getPath("/module0"))) {
+				assertThat(list.map(Path::toString)).containsExactly("/module0/src");
+			}
+			assertThat(Files.exists(fs.getPath("/module3/build/Main.class"))).isFalse();
+			assertThat(github.countRequests("/contents/module3")).isZero();
+		}
+	}
+
+	private GitHubFileSystem newFileSystem(StubGitHub github, String maxAge, String staleWhileRevalidate)
+			throws IOException {
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_MAX_AGE, maxAge);
+		env.put(GitHubFileSystem.ENV_STALE_WHILE_REVALIDATE, staleWhileRevalidate);
+		return (GitHubFileSystem) new GitHubFileSystemProvider(github, cacheDir)
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+	}
+
+	@Test
+	void testStaleReadsAreServedWhileRevalidatingInTheBackground() throws Exception {
+		AtomicReference<CountDownLatch> heldHead = new AtomicReference<>(new CountDownLatch(0));
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				if (request.getUrl().endsWith("/commits/main")) {
+					try {
+						heldHead.get().await();
+					} catch (InterruptedException e) {
+						throw new java.io.InterruptedIOException();
+					}
+				}
+				return super.send(request);
+			}
+		};
+		github.commit("main", files("src/A.java", "a", "src/B.java", "b"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, "0", "PT1H")) {
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a");
+			assertThat(read(fs.getPath("/src/B.java"))).isEqualTo("b");
+			github.change("main", files("src/A.java", "a2"));
+
+			// Past its max age but within the stale window: cached, then checked in the background
+			heldHead.set(new CountDownLatch(1));
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a");
+			heldHead.get().countDown();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!read(fs.getPath("/src/A.java")).equals("a2") && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a2");
+			github.clearRequests();
+			assertThat(read(fs.getPath("/src/B.java"))).isEqualTo("b");
+			assertThat(github.getRequests()).noneMatch(request -> request.contains("B.java"));
+		}
+	}
+
+	@Test
+	void testExpiredIndexIsRevalidatedBeforeReading() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "docs/index.md", "docs"));
+
+		try (GitHubFileSystem fs = newFileSystem(github, "PT1H", "0")) {
+			fs.refresh();
+			github.change("main", files("src/A.java", "a2"));
+			// Still fresh
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a");
+		}
+		try (GitHubFileSystem fs = newFileSystem(github, "0", "0")) {
+			fs.refresh();
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a2");
+			github.change("main", files("src/A.java", "a3"));
+			github.clearRequests();
+			assertThat(read(fs.getPath("/src/A.java"))).isEqualTo("a3");
+			// Head, new root and the changed subtree, no recursive reload
+			assertThat(github.countRequests("recursive=1")).isZero();
+			github.clearRequests();
+			assertThat(read(fs.getPath("/docs/index.md"))).isEqualTo("docs");
+			// Only the conditional check of the head, which didn't move
+			assertThat(github.getRequests()).hasSize(2);
+		}
+	}
+}
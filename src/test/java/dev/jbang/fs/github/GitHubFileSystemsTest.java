@@ -0,0 +1,74 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+public class GitHubFileSystemsTest {
+
+	private static Map<String, String> files(String... pathsAndContents) {
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < pathsAndContents.length; i += 2) {
+			files.put(pathsAndContents[i], pathsAndContents[i + 1]);
+		}
+		return files;
+	}
+
+	@Test
+	void testDiffBetweenRefs() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("v1", files("src/A.java", "a", "src/B.java", "b", "src/unchanged/U.java", "u",
+				"docs/index.md", "docs"));
+		github.commit("main", files("src/A.java", "a2", "src/C.java", "c", "src/unchanged/U.java", "u",
+				"docs/index.md", "new docs"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+
+		try (FileSystem v1 = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/v1"),
+				Collections.emptyMap());
+				FileSystem main = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+						Collections.emptyMap())) {
+			github.clearRequests();
+			try (Stream<GitHubDiffEntry> diff = GitHubFileSystems.diff(v1.getPath("/src"), main.getPath("/src"))) {
+				List<String> entries = diff.map(GitHubDiffEntry::toString).collect(Collectors.toList());
+				assertThat(entries).containsExactlyInAnyOrder("MODIFIED A.java", "REMOVED B.java", "ADDED C.java");
+			}
+			// No content downloads, no recursive listings and the unchanged subtree is never fetched
+			assertThat(github.countRequests("raw.githubusercontent.com")).isZero();
+			assertThat(github.countRequests("contents")).isZero();
+			assertThat(github.countRequests("recursive")).isZero();
+			assertThat(github.getRequests()).hasSize(2 + 2 + 2);
+		}
+	}
+
+	@Test
+	void testDiffIsLazy() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("v1", files("a/1.txt", "1", "b/2.txt", "2"));
+		github.commit("main", files("a/1.txt", "1!", "b/2.txt", "2!"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+
+		try (FileSystem v1 = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/v1"),
+				Collections.emptyMap());
+				FileSystem main = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+						Collections.emptyMap())) {
+			github.clearRequests();
+			try (Stream<GitHubDiffEntry> diff = GitHubFileSystems.diff(v1.getPath("/"), main.getPath("/"))) {
+				GitHubDiffEntry first = diff.findFirst().get();
+				assertThat(first.getType()).isEqualTo(GitHubDiffEntry.Type.MODIFIED);
+				assertThat(first.getOldSha()).isNotEqualTo(first.getNewSha());
+			}
+			// Two heads, two roots and only one of the two changed subtree pairs
+			assertThat(github.getRequests()).hasSize(2 + 2 + 2);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubMaterializerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private GitHubFileSystem newFileSystem(StubGitHub github) throws IOException {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir.resolve("cache"));
+		return (GitHubFileSystem) provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				Collections.emptyMap());
+	}
+
+	private static StubGitHub templates() {
+		Map<String, String> files = new HashMap<>();
+		files.put("templates/foo/build.gradle", "plugins {}");
+		files.put("templates/foo/src/Main.java", "class Main {}");
+		files.put("templates/foo/src/Util.java", "class Util {}");
+		files.put("templates/bar/README.md", "bar");
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files);
+		return github;
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testMaterializeFiles() throws IOException {
+		StubGitHub github = templates();
+		Path target = tempDir.resolve("out");
+		List<Boolean> skipped = new CopyOnWriteArrayList<>();
+		MaterializeOptions options = MaterializeOptions.defaults()
+			.mode(MaterializeOptions.Mode.FILES)
+			.parallelism(2)
+			.progressListener((file, completed, total, wasSkipped) -> {
+				assertThat(total).isEqualTo(3);
+				skipped.add(wasSkipped);
+			});
+
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			fs.materialize(fs.getPath("/templates/foo"), target, options);
+			assertThat(read(target.resolve("build.gradle"))).isEqualTo("plugins {}");
+			assertThat(read(target.resolve("src/Main.java"))).isEqualTo("class Main {}");
+			assertThat(target.resolve("README.md")).doesNotExist();
+			assertThat(skipped).containsExactly(false, false, false);
+			assertThat(github.countRequests("raw.githubusercontent.com")).isEqualTo(3);
+
+			// Second run finds everything up to date except the locally modified file
+			Files.write(target.resolve("src/Util.java"), "local change".getBytes(StandardCharsets.UTF_8));
+			skipped.clear();
+			github.clearRequests();
+			fs.materialize(fs.getPath("/templates/foo"), target, options);
+			assertThat(read(target.resolve("src/Util.java"))).isEqualTo("class Util {}");
+			assertThat(skipped).containsExactlyInAnyOrder(true, true, false);
+			// Content is served from the blob cache
+			assertThat(github.getRequests()).isEmpty();
+		}
+	}
+
+	@Test
+	void testMaterializeFromArchive() throws IOException {
+		StubGitHub github = templates();
+		Path target = tempDir.resolve("out");
+
+		try (GitHubFileSystem fs = newFileSystem(github)) {
+			fs.materialize(fs.getPath("/templates"), target,
+					MaterializeOptions.defaults().mode(MaterializeOptions.Mode.AUTO).archiveThreshold(2));
+			assertThat(read(target.resolve("foo/src/Util.java"))).isEqualTo("class Util {}");
+			assertThat(read(target.resolve("bar/README.md"))).isEqualTo("bar");
+			assertThat(github.countRequests("zipball")).isEqualTo(1);
+			assertThat(github.countRequests("raw.githubusercontent.com")).isZero();
+		}
+	}
+}
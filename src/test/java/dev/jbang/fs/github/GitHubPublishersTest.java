@@ -0,0 +1,123 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubPublishersTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static class RecordingSubscriber implements Flow.Subscriber<GitHubEntry> {
+		final List<GitHubEntry> entries = new CopyOnWriteArrayList<>();
+		final CountDownLatch completed = new CountDownLatch(1);
+		volatile Flow.Subscription subscription;
+		volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(GitHubEntry item) {
+			entries.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		void awaitEntries(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (entries.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(entries).hasSize(count);
+		}
+	}
+
+	@Test
+	void testPublishesInWalkOrderAsFarAsRequested() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new TreeMap<>();
+		for (int i = 0; i < 5; i++) {
+			files.put("dir" + i + "/file.txt", "content " + i);
+		}
+		files.put("README.md", "readme");
+		github.commit("main", files);
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap())) {
+			fs.refresh();
+			github.clearRequests();
+			RecordingSubscriber subscriber = new RecordingSubscriber();
+			GitHubPublishers.entries(fs.getPath("/"), true, 4).subscribe(subscriber);
+
+			subscriber.subscription.request(4);
+			subscriber.awaitEntries(4);
+			Thread.sleep(100);
+			// Nothing beyond the demand is fetched: "/", README.md, "/dir0" and dir0/file.txt
+			assertThat(subscriber.entries).hasSize(4);
+			assertThat(github.getRequests()).hasSizeLessThanOrEqualTo(2);
+
+			subscriber.subscription.request(Long.MAX_VALUE);
+			assertThat(subscriber.completed.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(subscriber.error).isNull();
+			List<Path> expected;
+			try (Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+				expected = walk.collect(Collectors.toList());
+			}
+			assertThat(subscriber.entries.stream().map(GitHubEntry::getPath)).containsExactlyElementsOf(expected);
+			GitHubEntry file = subscriber.entries.stream()
+				.filter(e -> e.getPath().toString().equals("/dir3/file.txt"))
+				.findFirst()
+				.get();
+			assertThat(new String(file.getContent(), StandardCharsets.UTF_8)).isEqualTo("content 3");
+			assertThat(subscriber.entries.get(0).getContent()).isNull();
+		}
+	}
+
+	@Test
+	void testMissingStartPathIsAnError() throws IOException, InterruptedException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", Collections.singletonMap("a.txt", "A"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap())) {
+			RecordingSubscriber subscriber = new RecordingSubscriber();
+			GitHubPublishers.entries(fs.getPath("/missing"), false).subscribe(subscriber);
+			subscriber.subscription.request(1);
+			assertThat(subscriber.completed.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(subscriber.error).isInstanceOf(java.nio.file.NoSuchFileException.class);
+			assertThat(subscriber.entries).isEmpty();
+		}
+	}
+}
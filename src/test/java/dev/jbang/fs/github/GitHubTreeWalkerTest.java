@@ -0,0 +1,101 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubTreeWalkerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static Map<String, String> files() {
+		Map<String, String> files = new TreeMap<>();
+		for (int i = 0; i < 8; i++) {
+			files.put("dir" + i + "/file.txt", "content " + i);
+			files.put("dir" + i + "/sub/nested.txt", "nested " + i);
+		}
+		files.put("README.md", "readme");
+		return files;
+	}
+
+	private GitHubFileSystem newFileSystem(HttpClient github, Map<String, ?> env) throws IOException {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		return (GitHubFileSystem) provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+	}
+
+	@Test
+	void testListsSiblingDirectoriesConcurrently() throws IOException {
+		AtomicInteger listing = new AtomicInteger();
+		AtomicInteger maxListing = new AtomicInteger();
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				if (!request.getUrl().contains("/contents")) {
+					return super.send(request);
+				}
+				maxListing.accumulateAndGet(listing.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(50);
+					return super.send(request);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new java.io.InterruptedIOException();
+				} finally {
+					listing.decrementAndGet();
+				}
+			}
+		};
+		github.commit("main", files());
+		Map<String, String> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_WALK_STRATEGY, "contents");
+		env.put(GitHubFileSystem.ENV_STAT_STRATEGY, "contents");
+
+		try (GitHubFileSystem fs = newFileSystem(github, env)) {
+			List<Path> walked;
+			try (Stream<Path> stream = fs.walk(fs.getPath("/"), 8)) {
+				walked = stream.collect(Collectors.toList());
+			}
+			List<Path> expected;
+			try (Stream<Path> stream = Files.walk(fs.getPath("/"))) {
+				expected = stream.collect(Collectors.toList());
+			}
+			assertThat(walked).isEqualTo(expected).hasSize(34);
+			assertThat(maxListing.get()).isGreaterThan(1);
+		}
+	}
+
+	@Test
+	void testParallelStreamSplitsBySubtree() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files());
+
+		try (GitHubFileSystem fs = newFileSystem(github, Collections.emptyMap())) {
+			fs.refresh();
+			try (Stream<Path> stream = fs.walk(fs.getPath("/"), 4)) {
+				Spliterator<Path> spliterator = stream.spliterator();
+				Spliterator<Path> prefix = spliterator.trySplit();
+				assertThat(prefix).isNotNull();
+				assertThat(prefix.trySplit()).isNotNull();
+			}
+			try (Stream<Path> stream = fs.walk(fs.getPath("/"), 4)) {
+				assertThat(stream.parallel().filter(Files::isRegularFile).count()).isEqualTo(17);
+			}
+		}
+	}
+}
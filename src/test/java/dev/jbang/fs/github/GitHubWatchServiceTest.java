@@ -0,0 +1,177 @@
+package dev.jbang.fs.github;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class GitHubWatchServiceTest {
+
+	private static Map<String, String> files(String... pathsAndContents) {
+		Map<String, String> files = new HashMap<>();
+		for (int i = 0; i < pathsAndContents.length; i += 2) {
+			files.put(pathsAndContents[i], pathsAndContents[i + 1]);
+		}
+		return files;
+	}
+
+	@Test
+	void testEventsForWatchedDirectory() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "src/C.java", "c", "docs/index.md", "docs"));
+
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_WATCH_POLL_INTERVAL, 20);
+		env.put(GitHubFileSystem.ENV_WATCH_MAX_POLL_INTERVAL, 40);
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+				WatchService watcher = fs.newWatchService()) {
+			Path src = fs.getPath("/src");
+			WatchKey key = src.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+			github.change("main", files("src/A.java", "changed", "src/B.java", "b", "src/C.java", null));
+
+			WatchKey signalled = watcher.poll(5, TimeUnit.SECONDS);
+			assertThat(signalled).isSameAs(key);
+			assertThat(signalled.watchable()).isEqualTo(src);
+			List<String> events = describe(signalled.pollEvents());
+			assertThat(events).containsExactlyInAnyOrder("ENTRY_MODIFY A.java", "ENTRY_CREATE B.java",
+					"ENTRY_DELETE C.java");
+			assertThat(signalled.reset()).isTrue();
+		}
+	}
+
+	@Test
+	void testUnchangedSubtreesAreNotFetched() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "docs/index.md", "docs"));
+
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				manualPolling()); GitHubWatchService watcher = (GitHubWatchService) fs.newWatchService()) {
+			WatchKey key = fs.getPath("/src").register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+			// Nothing changed: only the conditional head request
+			github.clearRequests();
+			assertThat(watcher.pollHead()).isFalse();
+			assertThat(github.getRequests()).hasSize(1);
+
+			// A change outside the watched directory only fetches the new root
+			String docsCommit = github.change("main", files("docs/index.md", "new docs"));
+			github.clearRequests();
+			assertThat(watcher.pollHead()).isTrue();
+			assertThat(github.getRequests()).hasSize(2);
+			assertThat(github.countRequests("git/trees/" + docsCommit)).isEqualTo(1);
+			assertThat(watcher.poll()).isNull();
+
+			github.change("main", files("src/D.java", "d"));
+			assertThat(watcher.pollHead()).isTrue();
+			assertThat(watcher.poll()).isSameAs(key);
+			assertThat(describe(key.pollEvents())).containsExactly("ENTRY_CREATE D.java");
+		}
+	}
+
+	@Test
+	void testDeletedDirectoryInvalidatesKey() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "README.md", "readme"));
+
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				manualPolling()); GitHubWatchService watcher = (GitHubWatchService) fs.newWatchService()) {
+			WatchKey key = fs.getPath("/src").register(watcher, ENTRY_DELETE);
+			github.change("main", files("src/A.java", null));
+			watcher.pollHead();
+			assertThat(watcher.poll()).isSameAs(key);
+			assertThat(key.isValid()).isFalse();
+		}
+	}
+
+	@Test
+	void testExcludedPathsHaveNoEvents() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", files("src/A.java", "a", "src/gen/G.java", "g"));
+
+		Map<String, Object> env = manualPolling();
+		env.put(GitHubFileSystem.ENV_EXCLUDE, "**/*.class,src/gen");
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env);
+				GitHubWatchService watcher = (GitHubWatchService) fs.newWatchService()) {
+			WatchKey key = fs.getPath("/src").register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			github.change("main", files("src/A.class", "class", "src/gen/G.java", "g2", "src/B.java", "b"));
+			assertThat(watcher.pollHead()).isTrue();
+			assertThat(watcher.poll()).isSameAs(key);
+			assertThat(describe(key.pollEvents())).containsExactly("ENTRY_CREATE B.java");
+		}
+	}
+
+	@Test
+	void testFailedDispatchIsRetriedByTheNextPoll() throws IOException {
+		// Set to the commit whose root tree can still be fetched, but none of its subtrees
+		AtomicReference<String> subtreesDown = new AtomicReference<>();
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				String commit = subtreesDown.get();
+				if (commit != null && request.getUrl().contains("/git/trees/")
+						&& !request.getUrl().endsWith("/git/trees/" + commit)) {
+					return new HttpResponse(404, Collections.emptyMap(), null);
+				}
+				return super.send(request);
+			}
+		};
+		github.commit("main", files("src/A.java", "a", "README.md", "readme"));
+
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github);
+		try (FileSystem fs = provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				manualPolling()); GitHubWatchService watcher = (GitHubWatchService) fs.newWatchService()) {
+			WatchKey key = fs.getPath("/src").register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			subtreesDown.set(github.change("main", files("src/B.java", "b")));
+			assertThatThrownBy(watcher::pollHead).isInstanceOf(IOException.class);
+			assertThat(watcher.poll()).isNull();
+
+			subtreesDown.set(null);
+			assertThat(watcher.pollHead()).isTrue();
+			assertThat(watcher.poll()).isSameAs(key);
+			assertThat(describe(key.pollEvents())).containsExactly("ENTRY_CREATE B.java");
+		}
+	}
+
+	@Test
+	void testPollIntervalMustBePositive() {
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(new StubGitHub("owner", "repo"));
+		assertThatThrownBy(() -> provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				Collections.singletonMap(GitHubFileSystem.ENV_WATCH_POLL_INTERVAL, 0)))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static Map<String, Object> manualPolling() {
+		// Keep the background poller out of the way so the test drives polling
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_WATCH_POLL_INTERVAL, "PT1H");
+		env.put(GitHubFileSystem.ENV_WATCH_MAX_POLL_INTERVAL, "PT1H");
+		return env;
+	}
+
+	private static List<String> describe(List<WatchEvent<?>> events) {
+		return events.stream().map(e -> e.kind().name() + " " + e.context()).collect(Collectors.toList());
+	}
+}
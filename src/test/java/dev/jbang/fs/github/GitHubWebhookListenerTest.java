@@ -0,0 +1,153 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubWebhookListenerTest {
+
+	private static final String SECRET = "It's a Secret to Everybody";
+
+	@TempDir
+	Path cacheDir;
+
+	/** A push delivery as GitHub sends it, trimmed to the fields that are read. */
+	private static String pushPayload(String before, String after, String modified) {
+		return "{\n"
+				+ "  \"ref\": \"refs/heads/main\",\n"
+				+ "  \"before\": \"" + before + "\",\n"
+				+ "  \"after\": \"" + after + "\",\n"
+				+ "  \"created\": false,\n"
+				+ "  \"deleted\": false,\n"
+				+ "  \"forced\": false,\n"
+				+ "  \"repository\": {\n"
+				+ "    \"name\": \"repo\",\n"
+				+ "    \"full_name\": \"owner/repo\",\n"
+				+ "    \"html_url\": \"https://github.com/owner/repo\"\n"
+				+ "  },\n"
+				+ "  \"commits\": [\n"
+				+ "    {\n"
+				+ "      \"id\": \"" + after + "\",\n"
+				+ "      \"message\": \"Update\",\n"
+				+ "      \"added\": [],\n"
+				+ "      \"removed\": [],\n"
+				+ "      \"modified\": [\"" + modified + "\"]\n"
+				+ "    }\n"
+				+ "  ]\n"
+				+ "}\n";
+	}
+
+	private static HttpResponse post(GitHubWebhookListener listener, String payload, String signature)
+			throws IOException {
+		return new SimpleHttpClient().send(HttpRequest.post(listener.getUrl(), payload.getBytes(StandardCharsets.UTF_8))
+			.header("Content-Type", "application/json")
+			.header(GitHubWebhookListener.EVENT_HEADER, "push")
+			.header(GitHubWebhookListener.SIGNATURE_HEADER, signature));
+	}
+
+	@Test
+	void testSignedPushMovesTheRefAndEvictsOnlyTheChangedPaths() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("src/A.java", "a");
+		files.put("src/B.java", "b");
+		String before = github.commit("main", files);
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(
+				URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap());
+				GitHubWebhookListener listener = new GitHubWebhookListener(provider, SECRET)
+					.start(new InetSocketAddress("127.0.0.1", 0))) {
+			fs.refresh();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/src/A.java")))).isEqualTo("a");
+			assertThat(new String(Files.readAllBytes(fs.getPath("/src/B.java")))).isEqualTo("b");
+			String after = github.change("main", Collections.singletonMap("src/B.java", "b2"));
+			String payload = pushPayload(before, after, "src/B.java");
+
+			assertThat(post(listener, payload, "sha256=" + new GitHubWebhookListener(provider, "guess")
+				.sign(payload.getBytes(StandardCharsets.UTF_8))).getStatusCode()).isEqualTo(401);
+			assertThat(new String(Files.readAllBytes(fs.getPath("/src/B.java")))).isEqualTo("b");
+
+			github.clearRequests();
+			HttpResponse response = post(listener, payload,
+					"sha256=" + listener.sign(payload.getBytes(StandardCharsets.UTF_8)));
+			assertThat(response.getStatusCode()).isEqualTo(200);
+			// The new root and the changed subtree, but not the head of the branch
+			assertThat(github.countRequests("/commits/")).isZero();
+
+			github.clearRequests();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/src/A.java")))).isEqualTo("a");
+			assertThat(github.getRequests()).isEmpty();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/src/B.java")))).isEqualTo("b2");
+		}
+	}
+
+	@Test
+	void testMissedPushFallsBackToComparingTrees() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		github.commit("main", Collections.singletonMap("A.java", "a"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(
+				URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap());
+				GitHubWebhookListener listener = new GitHubWebhookListener(provider, SECRET)
+					.start(new InetSocketAddress("127.0.0.1", 0))) {
+			fs.refresh();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/A.java")))).isEqualTo("a");
+			// The delivery of this push got lost
+			String second = github.change("main", Collections.singletonMap("B.java", "b"));
+			String third = github.change("main", Collections.singletonMap("A.java", "a3"));
+			String payload = pushPayload(second, third, "A.java");
+
+			assertThat(post(listener, payload, "sha256=" + listener.sign(payload.getBytes(StandardCharsets.UTF_8)))
+				.getStatusCode()).isEqualTo(200);
+			assertThat(new String(Files.readAllBytes(fs.getPath("/A.java")))).isEqualTo("a3");
+			assertThat(Files.exists(fs.getPath("/B.java"))).isTrue();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	void testOversizedAndOddPayloadsAreAnswered() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		String before = github.commit("main", Collections.singletonMap("A.java", "a"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider.newFileSystem(
+				URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap());
+				GitHubWebhookListener listener = new GitHubWebhookListener(provider, SECRET)
+					.start(new InetSocketAddress("127.0.0.1", 0))) {
+			// Turned away before the body is read
+			URI url = URI.create(listener.getUrl());
+			try (Socket socket = new Socket(url.getHost(), url.getPort())) {
+				socket.getOutputStream()
+					.write(("POST " + url.getPath() + " HTTP/1.1\r\nHost: " + url.getHost() + "\r\nContent-Length: "
+							+ (GitHubWebhookListener.MAX_PAYLOAD_BYTES + 1) + "\r\n\r\n")
+						.getBytes(StandardCharsets.US_ASCII));
+				String status = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+				assertThat(status).contains(" 413 ");
+			}
+
+			String after = github.change("main", Collections.singletonMap("A.java", "a2"));
+			String payload = pushPayload(before, after, "A.java").replace("\"forced\": false", "\"forced\": \"no\"")
+				.replace("\"deleted\": false", "\"deleted\": {}");
+			assertThat(post(listener, payload, "sha256=" + listener.sign(payload.getBytes(StandardCharsets.UTF_8)))
+				.getStatusCode()).isEqualTo(200);
+		}
+	}
+}
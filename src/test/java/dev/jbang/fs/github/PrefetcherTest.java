@@ -0,0 +1,142 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PrefetcherTest {
+
+	@TempDir
+	Path cacheDir;
+
+	private GitHubFileSystem newFileSystem(GitHubFileSystemProvider provider) throws IOException {
+		return (GitHubFileSystem) provider.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"),
+				Collections.singletonMap(GitHubFileSystem.ENV_PREFETCH, true));
+	}
+
+	private static void awaitAtLeast(LongSupplier value, long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (value.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(value.getAsLong()).isGreaterThanOrEqualTo(expected);
+	}
+
+	@Test
+	void testLearnedSequenceIsPrefetchedAfterRestart() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("build.gradle", "plugins {}");
+		files.put("settings.gradle", "rootProject.name = 'repo'");
+		files.put("README.md", "readme");
+		github.commit("main", files);
+
+		for (int i = 0; i < 2; i++) {
+			try (GitHubFileSystem fs = newFileSystem(new GitHubFileSystemProvider(github, cacheDir))) {
+				Files.readAllBytes(fs.getPath("/build.gradle"));
+				Files.readAllBytes(fs.getPath("/settings.gradle"));
+				Files.readAllBytes(fs.getPath("/README.md"));
+			}
+		}
+		assertThat(cacheDir.resolve("prefetch")).isNotEmptyDirectory();
+
+		try (GitHubFileSystem fs = newFileSystem(new GitHubFileSystemProvider(github, cacheDir))) {
+			Files.readAllBytes(fs.getPath("/build.gradle"));
+			awaitAtLeast(() -> fs.getPrefetchStats().getPrefetched(), 1);
+			github.clearRequests();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/settings.gradle")))).contains("rootProject");
+			// What is read next may already be prefetching, but settings.gradle was there
+			assertThat(github.getRequests()).noneMatch(request -> request.contains("settings.gradle"));
+			PrefetchStats stats = fs.getPrefetchStats();
+			assertThat(stats.getHits()).isEqualTo(1);
+			assertThat(stats.getHitRate()).isGreaterThan(0);
+		}
+	}
+
+	@Test
+	void testSiblingsWithTheSamePatternArePrefetched() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		for (String name : new String[] { "A", "B", "C", "D", "E" }) {
+			files.put("src/pkg/" + name + ".java", "class " + name + " {}");
+		}
+		github.commit("main", files);
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, cacheDir);
+
+		try (GitHubFileSystem fs = newFileSystem(provider)) {
+			Files.readAllBytes(fs.getPath("/src/pkg/A.java"));
+			Files.readAllBytes(fs.getPath("/src/pkg/B.java"));
+			Files.readAllBytes(fs.getPath("/src/pkg/C.java"));
+			// After two sibling reads in a row, *.java predicts the rest of the package
+			awaitAtLeast(() -> fs.getPrefetchStats().getPrefetched(), 2);
+			Files.readAllBytes(fs.getPath("/src/pkg/D.java"));
+			Files.readAllBytes(fs.getPath("/src/pkg/E.java"));
+			assertThat(fs.getPrefetchStats().getHits()).isEqualTo(2);
+			assertThat(fs.getPrefetchStats().getReads()).isEqualTo(5);
+		}
+	}
+
+	@Test
+	void testNothingIsPrefetchedWithoutBlobShas() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("build.gradle", "plugins {}");
+		files.put("README.md", "readme");
+		github.commit("main", files);
+		Map<String, Object> env = new HashMap<>();
+		env.put(GitHubFileSystem.ENV_PREFETCH, true);
+		env.put(GitHubFileSystem.ENV_ACCESS_MODE, GitHubFileSystem.ACCESS_MODE_RAW);
+
+		for (int i = 0; i < 3; i++) {
+			try (GitHubFileSystem fs = (GitHubFileSystem) new GitHubFileSystemProvider(github, cacheDir)
+				.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), env)) {
+				Files.readAllBytes(fs.getPath("/build.gradle"));
+				// A prefetch would only download to a temporary file, and the read would download again
+				Thread.sleep(200);
+				Files.readAllBytes(fs.getPath("/README.md"));
+				assertThat(fs.getPrefetchStats().getPrefetched()).isZero();
+				assertThat(fs.getPrefetchStats().getHits()).isZero();
+			}
+		}
+	}
+
+	@Test
+	void testConcurrentModelsAreMergedOnSave() throws Exception {
+		StubGitHub github = new StubGitHub("owner", "repo");
+		Map<String, String> files = new HashMap<>();
+		files.put("build.gradle", "plugins {}");
+		files.put("settings.gradle", "rootProject.name = 'repo'");
+		files.put("README.md", "readme");
+		files.put("LICENSE", "license");
+		github.commit("main", files);
+
+		// Two providers stand in for two JVMs that loaded the model before either saved it
+		GitHubFileSystem first = newFileSystem(new GitHubFileSystemProvider(github, cacheDir));
+		GitHubFileSystem second = newFileSystem(new GitHubFileSystemProvider(github, cacheDir));
+		Files.readAllBytes(first.getPath("/build.gradle"));
+		Files.readAllBytes(first.getPath("/settings.gradle"));
+		Files.readAllBytes(second.getPath("/README.md"));
+		Files.readAllBytes(second.getPath("/LICENSE"));
+		first.close();
+		second.close();
+
+		try (Stream<Path> models = Files.list(cacheDir.resolve("prefetch"))) {
+			String model = new String(Files.readAllBytes(models
+					.filter(file -> !file.getFileName().toString().endsWith(".lock"))
+					.findFirst()
+					.get()));
+			assertThat(model).contains("build.gradle\tsettings.gradle").contains("README.md\tLICENSE");
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package dev.jbang.fs.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResilientHttpClientTest {
+
+	private static final String URL = StubGitHub.API + "/owner/repo/commits/main";
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * A client whose responses are decided by the test, per call number.
+	 */
+	private abstract static class ScriptedClient implements HttpClient {
+		final AtomicInteger calls = new AtomicInteger();
+		volatile long timeoutMillis;
+
+		abstract HttpResponse respond(int call) throws IOException;
+
+		@Override
+		public String downloadString(String url) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Path downloadAndCacheFile(String url) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public HttpResponse send(HttpRequest request) throws IOException {
+			timeoutMillis = request.getTimeoutMillis();
+			return respond(calls.getAndIncrement());
+		}
+	}
+
+	private static HttpResponse ok() {
+		return new HttpResponse(200, Collections.emptyMap(), "ok".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testRetriesTransientFailures() throws IOException {
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) {
+				return call < 2 ? new HttpResponse(503, new HashMap<>(), null) : ok();
+			}
+		};
+		HttpRequest request = HttpRequest.get(URL);
+		assertThat(new ResilientHttpClient(delegate).send(request).getStatusCode()).isEqualTo(200);
+		assertThat(delegate.calls.get()).isEqualTo(3);
+		assertThat(delegate.timeoutMillis).isEqualTo(ResilientHttpClient.DEFAULT_TIMEOUT_MILLIS);
+		// The caller's request is left as it was
+		assertThat(request.getTimeoutMillis()).isZero();
+	}
+
+	@Test
+	void testClientErrorsAreNeitherRetriedNorCounted() {
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) throws IOException {
+				throw new HttpStatusException(401, URL);
+			}
+		};
+		ResilientHttpClient client = new ResilientHttpClient(delegate);
+		for (int i = 0; i < 10; i++) {
+			assertThatThrownBy(() -> client.downloadString(URL)).isInstanceOf(HttpStatusException.class);
+		}
+		assertThat(delegate.calls.get()).isEqualTo(10);
+		assertThat(client.isAvailable(URL)).isTrue();
+	}
+
+	@Test
+	void testHedgesSlowRequest() throws Exception {
+		CountDownLatch stuck = new CountDownLatch(1);
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) throws IOException {
+				if (call == 30) {
+					// An edge node that hangs
+					try {
+						stuck.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new ConnectException("too late");
+				}
+				return ok();
+			}
+		};
+		ResilientHttpClient client = new ResilientHttpClient(delegate);
+		for (int i = 0; i < 30; i++) {
+			client.send(HttpRequest.get(URL));
+		}
+		assertThat(client.getTimeoutMillis(URL)).isEqualTo(ResilientHttpClient.MIN_TIMEOUT_MILLIS);
+
+		long start = System.nanoTime();
+		assertThat(client.send(HttpRequest.get(URL)).getStatusCode()).isEqualTo(200);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+		assertThat(delegate.calls.get()).isEqualTo(32);
+		stuck.countDown();
+	}
+
+	@Test
+	void testDownloadsAreTimedToTheirFirstByte() throws IOException {
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Path download(HttpRequest request) throws IOException {
+				timeoutMillis = request.getTimeoutMillis();
+				request.responseStarted();
+				// The body takes its time, that isn't latency
+				calls.incrementAndGet();
+				return tempDir.resolve("download");
+			}
+		};
+		ResilientHttpClient client = new ResilientHttpClient(delegate);
+		String url = StubGitHub.RAW + "/owner/repo/main/big.bin";
+		client.downloadAndCacheFile(url);
+		assertThat(delegate.timeoutMillis).isEqualTo(ResilientHttpClient.DEFAULT_TIMEOUT_MILLIS);
+		for (int i = 0; i < 30; i++) {
+			client.downloadAndCacheFile(url);
+		}
+		assertThat(delegate.timeoutMillis).isEqualTo(ResilientHttpClient.MIN_TIMEOUT_MILLIS);
+	}
+
+	@Test
+	void testSlowSourceIsHedgedWithTheNextOne() throws Exception {
+		String raw = StubGitHub.RAW + "/owner/repo/main/big.bin";
+		String api = StubGitHub.API + "/owner/repo/git/blobs/abc";
+		CountDownLatch stuck = new CountDownLatch(1);
+		CountDownLatch discarded = new CountDownLatch(1);
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Path download(HttpRequest request) throws IOException {
+				if (calls.getAndIncrement() == 30) {
+					// A raw edge node that doesn't answer
+					try {
+						stuck.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				request.responseStarted();
+				return Files.createTempFile(tempDir, "download", ".tmp");
+			}
+		};
+		ResilientHttpClient client = new ResilientHttpClient(delegate);
+		for (int i = 0; i < 30; i++) {
+			client.downloadAndCacheFile(raw);
+		}
+
+		long start = System.nanoTime();
+		Path downloaded = client.firstAvailable(Arrays.asList(raw, api), client::downloadAndCacheFile,
+				file -> discarded.countDown());
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+		assertThat(downloaded).exists();
+		assertThat(delegate.calls.get()).isEqualTo(32);
+		// The raw download that came in second is cleaned up
+		stuck.countDown();
+		assertThat(discarded.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void testCircuitBreakerFailsFast() throws IOException {
+		ScriptedClient delegate = new ScriptedClient() {
+			@Override
+			HttpResponse respond(int call) throws IOException {
+				throw new ConnectException("Connection refused");
+			}
+		};
+		ResilientHttpClient client = new ResilientHttpClient(delegate);
+		assertThatThrownBy(() -> client.send(HttpRequest.get(URL))).isInstanceOf(ConnectException.class);
+		assertThat(delegate.calls.get()).isEqualTo(ResilientHttpClient.MAX_RETRIES + 1);
+		assertThatThrownBy(() -> client.send(HttpRequest.get(URL)))
+			.isInstanceOf(ResilientHttpClient.EndpointUnavailableException.class);
+		assertThat(client.isAvailable(URL)).isFalse();
+
+		int calls = delegate.calls.get();
+		assertThatThrownBy(() -> client.send(HttpRequest.get(URL)))
+			.isInstanceOf(ResilientHttpClient.EndpointUnavailableException.class);
+		assertThat(delegate.calls.get()).isEqualTo(calls);
+	}
+
+	@Test
+	void testBlobFallsBackToApiWhenRawIsDown() throws IOException {
+		StubGitHub github = new StubGitHub("owner", "repo") {
+			@Override
+			public HttpResponse send(HttpRequest request) throws IOException {
+				if (request.getUrl().startsWith(RAW)) {
+					throw new ConnectException("Connection refused");
+				}
+				return super.send(request);
+			}
+		};
+		github.commit("main", Collections.singletonMap("hello.txt", "Hello"));
+		GitHubFileSystemProvider provider = new GitHubFileSystemProvider(github, tempDir);
+		try (GitHubFileSystem fs = (GitHubFileSystem) provider
+			.newFileSystem(URI.create("github://github.com/owner/repo/tree/main"), Collections.emptyMap())) {
+			fs.refresh();
+			assertThat(new String(Files.readAllBytes(fs.getPath("/hello.txt")), StandardCharsets.UTF_8))
+				.isEqualTo("Hello");
+			assertThat(github.countRequests("/git/blobs/")).isEqualTo(1);
+		}
+	}
+}
@@ -0,0 +1,590 @@
+package dev.jbang.fs.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * In-memory stand-in for the parts of the GitHub REST and GraphQL APIs and the
+ * raw content endpoint used by the filesystem. Branches can be moved by committing new
+ * snapshots, and all SHAs are computed the way git does so they can be
+ * verified against content.
+ */
+class StubGitHub implements HttpClient {
+
+	static final String API = "https://api.github.com/repos";
+	static final String RAW = "https://raw.githubusercontent.com";
+
+	private final String owner;
+	private final String repo;
+	private final String api;
+	private final String raw;
+	private final Map<String, String> refs = new ConcurrentHashMap<>();
+	private final Map<String, String> commitTrees = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, byte[]>> commitFiles = new ConcurrentHashMap<>();
+	private final Map<String, List<Entry>> trees = new ConcurrentHashMap<>();
+	private final Map<String, String> parents = new ConcurrentHashMap<>();
+	private final Map<String, Instant> commitDates = new ConcurrentHashMap<>();
+	private final Map<String, String> modes = new ConcurrentHashMap<>();
+	private final Map<String, String> submodules = new ConcurrentHashMap<>();
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private int commitCounter;
+	private volatile int maxRecursiveEntries = Integer.MAX_VALUE;
+
+	static class Entry {
+		final String name;
+		final String mode;
+		final String type;
+		final String sha;
+		final long size;
+
+		Entry(String name, String mode, String type, String sha, long size) {
+			this.name = name;
+			this.mode = mode;
+			this.type = type;
+			this.sha = sha;
+			this.size = size;
+		}
+	}
+
+	StubGitHub(String owner, String repo) {
+		this(owner, repo, API, RAW);
+	}
+
+	/**
+	 * Creates a stub serving the API (including the "/repos" segment) and the
+	 * raw content under the given base URLs.
+	 */
+	StubGitHub(String owner, String repo, String api, String raw) {
+		this.owner = owner;
+		this.repo = repo;
+		this.api = api;
+		this.raw = raw;
+	}
+
+	/**
+	 * Commits a complete snapshot of the repository to a branch.
+	 */
+	synchronized String commit(String branch, Map<String, String> files) {
+		Map<String, byte[]> content = new TreeMap<>();
+		files.forEach((path, text) -> content.put(path, text.getBytes(StandardCharsets.UTF_8)));
+		return commitBytes(branch, content);
+	}
+
+	synchronized String commitBytes(String branch, Map<String, byte[]> files) {
+		String treeSha = writeTree("", new TreeMap<>(files));
+		String commitSha = sha1(("commit " + (++commitCounter) + " " + treeSha).getBytes(StandardCharsets.UTF_8));
+		commitTrees.put(commitSha, treeSha);
+		commitFiles.put(commitSha, new TreeMap<>(files));
+		// One commit an hour
+		commitDates.put(commitSha, Instant.parse("2020-01-01T00:00:00Z").plusSeconds(3600L * commitCounter));
+		String parent = refs.put(branch, commitSha);
+		if (parent != null) {
+			parents.put(commitSha, parent);
+		}
+		return commitSha;
+	}
+
+	Instant commitDate(String commitSha) {
+		return commitDates.get(commitSha);
+	}
+
+	/**
+	 * Commits the current state of the branch with the given changes applied.
+	 * A null content deletes the file.
+	 */
+	synchronized String change(String branch, Map<String, String> changes) {
+		Map<String, byte[]> files = new TreeMap<>(commitFiles.get(refs.get(branch)));
+		changes.forEach((path, text) -> {
+			if (text == null) {
+				files.remove(path);
+			} else {
+				files.put(path, text.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		return commitBytes(branch, files);
+	}
+
+	/**
+	 * Sets the git mode of a file in later commits, e.g. "100755" or
+	 * "120000" for a symlink whose content is its target.
+	 */
+	void mode(String path, String mode) {
+		modes.put(path, mode);
+	}
+
+	/**
+	 * Adds a submodule at the given commit to the root of later commits.
+	 */
+	void submodule(String name, String commitSha) {
+		submodules.put(name, commitSha);
+	}
+
+	/**
+	 * Makes recursive tree responses with more entries than given truncated,
+	 * like GitHub does for very large trees.
+	 */
+	void truncateRecursiveTrees(int maxEntries) {
+		maxRecursiveEntries = maxEntries;
+	}
+
+	String head(String branch) {
+		return refs.get(branch);
+	}
+
+	String treeOf(String commitSha) {
+		return commitTrees.get(commitSha);
+	}
+
+	List<String> getRequests() {
+		return requests;
+	}
+
+	long countRequests(String fragment) {
+		return requests.stream().filter(r -> r.contains(fragment)).count();
+	}
+
+	void clearRequests() {
+		requests.clear();
+	}
+
+	private String writeTree(String prefix, Map<String, byte[]> files) {
+		Map<String, Map<String, byte[]>> subdirs = new TreeMap<>();
+		List<Entry> entries = new ArrayList<>();
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			String path = file.getKey();
+			int slash = path.indexOf('/');
+			if (slash < 0) {
+				entries.add(new Entry(path, modes.getOrDefault(prefix + path, "100644"), "blob",
+						blobSha(file.getValue()), file.getValue().length));
+			} else {
+				subdirs.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+					.put(path.substring(slash + 1), file.getValue());
+			}
+		}
+		subdirs.forEach((name, content) -> entries
+			.add(new Entry(name, "040000", "tree", writeTree(prefix + name + "/", content), -1)));
+		if (prefix.isEmpty()) {
+			submodules.forEach((name, commit) -> entries.add(new Entry(name, "160000", "commit", commit, -1)));
+		}
+		// git sorts tree entries by name, with directories compared as "name/"
+		entries.sort((a, b) -> sortKey(a).compareTo(sortKey(b)));
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (Entry entry : entries) {
+			byte[] header = ((entry.type.equals("tree") ? "40000" : entry.mode) + " " + entry.name + "\0")
+				.getBytes(StandardCharsets.UTF_8);
+			body.write(header, 0, header.length);
+			byte[] raw = hexToBytes(entry.sha);
+			body.write(raw, 0, raw.length);
+		}
+		String sha = gitSha("tree", body.toByteArray());
+		trees.put(sha, entries);
+		return sha;
+	}
+
+	private static String sortKey(Entry entry) {
+		return entry.type.equals("tree") ? entry.name + "/" : entry.name;
+	}
+
+	static String blobSha(byte[] content) {
+		return gitSha("blob", content);
+	}
+
+	private static String gitSha(String type, byte[] content) {
+		byte[] header = (type + " " + content.length + "\0").getBytes(StandardCharsets.UTF_8);
+		byte[] all = new byte[header.length + content.length];
+		System.arraycopy(header, 0, all, 0, header.length);
+		System.arraycopy(content, 0, all, header.length, content.length);
+		return sha1(all);
+	}
+
+	private static String sha1(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] hexToBytes(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	@Override
+	public String downloadString(String url) throws IOException {
+		HttpResponse response = send(HttpRequest.get(url));
+		if (response.getStatusCode() == 404) {
+			throw new FileNotFoundException("Resource not found: " + url);
+		}
+		return response.getBodyAsString();
+	}
+
+	@Override
+	public Path downloadAndCacheFile(String url) throws IOException {
+		HttpResponse response = send(HttpRequest.get(url));
+		if (response.getStatusCode() == 404) {
+			throw new FileNotFoundException("Resource not found: " + url);
+		}
+		Path file = Files.createTempFile("stub-github-", ".tmp");
+		file.toFile().deleteOnExit();
+		Files.write(file, response.getBody());
+		return file;
+	}
+
+	@Override
+	public HttpResponse send(HttpRequest request) throws IOException {
+		requests.add(request.getMethod() + " " + request.getUrl());
+		String url = request.getUrl();
+		String apiPrefix = api + "/" + owner + "/" + repo + "/";
+		String rawPrefix = raw + "/" + owner + "/" + repo + "/";
+		if (url.startsWith(apiPrefix)) {
+			return api(request, url.substring(apiPrefix.length()));
+		}
+		if (url.equals(graphqlUrl())) {
+			return graphql(request);
+		}
+		if (url.startsWith(rawPrefix)) {
+			String rest = url.substring(rawPrefix.length());
+			int slash = rest.indexOf('/');
+			byte[] content = file(rest.substring(0, slash), rest.substring(slash + 1));
+			return content == null ? notFound() : raw(request, content);
+		}
+		return notFound();
+	}
+
+	private HttpResponse api(HttpRequest request, String path) {
+		String query = "";
+		int q = path.indexOf('?');
+		if (q >= 0) {
+			query = path.substring(q + 1);
+			path = path.substring(0, q);
+		}
+		if (path.startsWith("commits/")) {
+			String sha = resolve(path.substring("commits/".length()));
+			if (sha == null) {
+				return notFound();
+			}
+			String etag = "\"" + sha + "\"";
+			if (etag.equals(request.getHeaders().get("If-None-Match"))) {
+				return new HttpResponse(304, Collections.singletonMap("ETag", etag), null);
+			}
+			return new HttpResponse(200, Collections.singletonMap("ETag", etag),
+					sha.getBytes(StandardCharsets.UTF_8));
+		}
+		if (path.equals("commits")) {
+			Map<String, String> params = params(query);
+			String commit = resolve(params.getOrDefault("sha", "main"));
+			String last = commit == null ? null : lastCommitTouching(commit, params.getOrDefault("path", ""));
+			JsonArray array = new JsonArray();
+			if (last != null) {
+				array.add(commitJson(last));
+			}
+			return json(array);
+		}
+		if (path.startsWith("git/trees/")) {
+			String treeIsh = path.substring("git/trees/".length());
+			String sha = commitTrees.getOrDefault(treeIsh, treeIsh);
+			if (!trees.containsKey(sha)) {
+				return notFound();
+			}
+			return json(treeJson(sha, query.contains("recursive=1")));
+		}
+		if (path.startsWith("git/blobs/")) {
+			String sha = path.substring("git/blobs/".length());
+			for (Map<String, byte[]> files : commitFiles.values()) {
+				for (byte[] content : files.values()) {
+					if (blobSha(content).equals(sha)) {
+						JsonObject blob = new JsonObject();
+						blob.addProperty("sha", sha);
+						blob.addProperty("size", content.length);
+						blob.addProperty("encoding", "base64");
+						blob.addProperty("content", Base64.getMimeEncoder().encodeToString(content));
+						return json(blob);
+					}
+				}
+			}
+			return notFound();
+		}
+		if (path.startsWith("zipball/")) {
+			String commit = resolve(path.substring("zipball/".length()));
+			return commit == null ? notFound() : ok(zip(commit));
+		}
+		if (path.startsWith("contents")) {
+			String ref = query.startsWith("ref=") ? query.substring(4) : "main";
+			return contents(ref, path.substring("contents".length()).replaceAll("^/+", ""));
+		}
+		return notFound();
+	}
+
+	/**
+	 * The GraphQL endpoint next to the REST API, like GitHubEndpoints.
+	 */
+	private String graphqlUrl() {
+		String base = api.substring(0, api.length() - "/repos".length());
+		return (base.endsWith("/v3") ? base.substring(0, base.length() - "/v3".length()) : base) + "/graphql";
+	}
+
+	/**
+	 * Answers the commit history queries of the filesystem: aliased
+	 * {@code history(first: 1, path: ...)} fields on a commit object.
+	 */
+	private HttpResponse graphql(HttpRequest request) {
+		JsonObject body = com.google.gson.JsonParser
+			.parseString(new String(request.getBody(), StandardCharsets.UTF_8))
+			.getAsJsonObject();
+		String query = body.get("query").getAsString();
+		Matcher expression = Pattern.compile("object\\(expression: \"([^\"]+)\"\\)").matcher(query);
+		String commit = expression.find() ? resolve(expression.group(1)) : null;
+		JsonObject data = new JsonObject();
+		JsonObject repository = new JsonObject();
+		data.add("repository", repository);
+		if (commit == null) {
+			repository.add("object", com.google.gson.JsonNull.INSTANCE);
+		} else {
+			JsonObject object = new JsonObject();
+			Matcher history = Pattern
+				.compile("(\\w+): history\\(first: 1(?:, path: (\"(?:[^\"\\\\]|\\\\.)*\"))?\\)")
+				.matcher(query);
+			while (history.find()) {
+				String path = history.group(2) == null ? ""
+						: com.google.gson.JsonParser.parseString(history.group(2)).getAsString();
+				String last = lastCommitTouching(commit, path);
+				JsonArray nodes = new JsonArray();
+				if (last != null) {
+					JsonObject node = new JsonObject();
+					node.addProperty("committedDate", commitDates.get(last).toString());
+					nodes.add(node);
+				}
+				JsonObject connection = new JsonObject();
+				connection.add("nodes", nodes);
+				object.add(history.group(1), connection);
+			}
+			repository.add("object", object);
+		}
+		JsonObject response = new JsonObject();
+		response.add("data", data);
+		return json(response);
+	}
+
+	/**
+	 * Follows the first parents of a commit back to the last one that
+	 * changed the path (or anything below it), null if it doesn't exist.
+	 */
+	private String lastCommitTouching(String commit, String path) {
+		String state = pathState(commit, path);
+		if (state.isEmpty()) {
+			return null;
+		}
+		String last = commit;
+		for (String parent = parents.get(last); parent != null
+				&& pathState(parent, path).equals(state); parent = parents.get(last)) {
+			last = parent;
+		}
+		return last;
+	}
+
+	private String pathState(String commit, String path) {
+		String prefix = path.isEmpty() ? "" : path + "/";
+		StringBuilder state = new StringBuilder();
+		for (Map.Entry<String, byte[]> file : commitFiles.get(commit).entrySet()) {
+			if (file.getKey().equals(path) || file.getKey().startsWith(prefix)) {
+				state.append(file.getKey()).append('=').append(blobSha(file.getValue())).append('\n');
+			}
+		}
+		return state.toString();
+	}
+
+	private JsonObject commitJson(String sha) {
+		JsonObject committer = new JsonObject();
+		committer.addProperty("date", commitDates.get(sha).toString());
+		JsonObject commit = new JsonObject();
+		commit.add("committer", committer);
+		JsonObject json = new JsonObject();
+		json.addProperty("sha", sha);
+		json.add("commit", commit);
+		return json;
+	}
+
+	private static Map<String, String> params(String query) {
+		Map<String, String> params = new HashMap<>();
+		for (String param : query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0) {
+				try {
+					params.put(param.substring(0, eq), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+				} catch (java.io.UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return params;
+	}
+
+	private byte[] zip(String commit) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		String prefix = owner + "-" + repo + "-" + commit.substring(0, 7) + "/";
+		try (java.util.zip.ZipOutputStream zip = new java.util.zip.ZipOutputStream(bytes)) {
+			zip.putNextEntry(new java.util.zip.ZipEntry(prefix));
+			for (Map.Entry<String, byte[]> file : commitFiles.get(commit).entrySet()) {
+				zip.putNextEntry(new java.util.zip.ZipEntry(prefix + file.getKey()));
+				zip.write(file.getValue());
+			}
+		} catch (IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static HttpResponse raw(HttpRequest request, byte[] content) {
+		Map<String, String> headers = new HashMap<>();
+		if ("HEAD".equals(request.getMethod())) {
+			headers.put("Content-Length", String.valueOf(content.length));
+			return new HttpResponse(200, headers, null);
+		}
+		String range = request.getHeaders().get("Range");
+		if (range != null && range.startsWith("bytes=")) {
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			int start = Integer.parseInt(bounds[0]);
+			int end = bounds.length > 1 ? Math.min(Integer.parseInt(bounds[1]), content.length - 1) : content.length - 1;
+			headers.put("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+			return new HttpResponse(206, headers, java.util.Arrays.copyOfRange(content, start, end + 1));
+		}
+		return new HttpResponse(200, headers, content);
+	}
+
+	private JsonObject treeJson(String sha, boolean recursive) {
+		JsonObject json = new JsonObject();
+		json.addProperty("sha", sha);
+		JsonArray array = new JsonArray();
+		addEntries(array, "", sha, recursive);
+		boolean truncated = recursive && array.size() > maxRecursiveEntries;
+		if (truncated) {
+			JsonArray first = new JsonArray();
+			for (int i = 0; i < maxRecursiveEntries; i++) {
+				first.add(array.get(i));
+			}
+			array = first;
+		}
+		json.add("tree", array);
+		json.addProperty("truncated", truncated);
+		return json;
+	}
+
+	private void addEntries(JsonArray array, String prefix, String treeSha, boolean recursive) {
+		for (Entry entry : trees.get(treeSha)) {
+			JsonObject item = new JsonObject();
+			item.addProperty("path", prefix + entry.name);
+			item.addProperty("mode", entry.mode);
+			item.addProperty("type", entry.type);
+			item.addProperty("sha", entry.sha);
+			if (entry.size >= 0) {
+				item.addProperty("size", entry.size);
+			}
+			array.add(item);
+			if (recursive && entry.type.equals("tree")) {
+				addEntries(array, prefix + entry.name + "/", entry.sha, true);
+			}
+		}
+	}
+
+	private HttpResponse contents(String ref, String path) {
+		String commit = resolve(ref);
+		if (commit == null) {
+			return notFound();
+		}
+		Map<String, byte[]> files = commitFiles.get(commit);
+		byte[] content = files.get(path);
+		if (content != null) {
+			return json(contentItem(path, "file", blobSha(content), content.length, content));
+		}
+		String prefix = path.isEmpty() ? "" : path + "/";
+		Map<String, JsonObject> children = new TreeMap<>();
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			if (file.getKey().startsWith(prefix)) {
+				String rest = file.getKey().substring(prefix.length());
+				int slash = rest.indexOf('/');
+				if (slash < 0) {
+					children.put(rest, contentItem(file.getKey(), "file", blobSha(file.getValue()),
+							file.getValue().length, null));
+				} else {
+					String name = rest.substring(0, slash);
+					children.putIfAbsent(name, contentItem(prefix + name, "dir", "", 0, null));
+				}
+			}
+		}
+		if (children.isEmpty()) {
+			return notFound();
+		}
+		JsonArray array = new JsonArray();
+		children.values().forEach(array::add);
+		return json(array);
+	}
+
+	private static JsonObject contentItem(String path, String type, String sha, long size, byte[] content) {
+		JsonObject item = new JsonObject();
+		item.addProperty("name", path.substring(path.lastIndexOf('/') + 1));
+		item.addProperty("path", path);
+		item.addProperty("type", type);
+		item.addProperty("sha", sha);
+		item.addProperty("size", size);
+		if (content != null) {
+			item.addProperty("encoding", "base64");
+			item.addProperty("content", java.util.Base64.getMimeEncoder().encodeToString(content));
+		}
+		return item;
+	}
+
+	private byte[] file(String ref, String path) {
+		String commit = resolve(ref);
+		return commit == null ? null : commitFiles.get(commit).get(path);
+	}
+
+	private String resolve(String ref) {
+		if (refs.containsKey(ref)) {
+			return refs.get(ref);
+		}
+		return commitTrees.containsKey(ref) ? ref : null;
+	}
+
+	private static HttpResponse ok(byte[] body) {
+		return new HttpResponse(200, new HashMap<>(), body);
+	}
+
+	private static HttpResponse json(com.google.gson.JsonElement json) {
+		return ok(json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static HttpResponse notFound() {
+		return new HttpResponse(404, new HashMap<>(), null);
+	}
+}